@@ -51,6 +51,36 @@ public class ArrayStack<E> implements Stack<E> {
 		return topLoc == -1;
 	}
 	
+	//number of items in stack
+	public int size() {
+		return topLoc + 1;
+	}
+	
+	//items the array can hold before doubling
+	public int capacity() {
+		return data.length;
+	}
+	
+	//fraction of the array in use
+	public double loadFactor() {
+		return MemoryLayout.ratio(size(), data.length);
+	}
+	
+	//bytes of the stack and its array, not the items
+	public long estimatedBytes() {
+		return MemoryLayout.shallowSize(getClass()) + MemoryLayout.referenceArray(data.length);
+	}
+	
+	//shrinks array down to the items in it
+	public void trimToSize() {
+		E[] copyList = (E[]) new Object[Math.max(size(), 1)];
+		
+		for (int i = 0; i <= topLoc; i++) {
+			copyList[i] = data[i];
+		}
+		data = copyList;
+	}
+	
 	public class ListNode {
 		private E data;
 		private ListNode next;
@@ -0,0 +1,493 @@
+/*
+ * Derek Hu
+ * Period 6
+ * Benchmark Compare keeps JMH JSON results as named baselines and tells whether a new run is slower or
+ * allocates more than a baseline. Runs are matched by benchmark, parameters and threads. For each match it
+ * finds the change and a confidence interval on that change from the iteration scores of both runs, using
+ * Welch's t test since the two runs need not have the same spread. A change is only flagged when it is past
+ * the threshold and the interval shows it is not just noise. It reads results from DataStructuresBenchmark
+ * or from JMH itself, and it works entirely from files.
+ *
+ * java BenchmarkCompare save <name> <results.json>
+ * java BenchmarkCompare list
+ * java BenchmarkCompare compare <baseline name or file> <results.json> [-threshold 5] [-alloc 10] [-confidence 0.99]
+ * every command also takes -dir <baseline folder>, and compare exits with 1 when something regressed
+ */
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+public class BenchmarkCompare {
+
+	private static final String ALLOCATION = "\u00b7gc.alloc.rate.norm";
+	private static final double MIN_ALLOCATION_CHANGE = 1.0;		//bytes per op smaller than this is rounding
+
+	public enum Verdict { REGRESSION, IMPROVED, UNSURE, SAME }
+
+	private double threshold = 0.05;			//fraction slower before it counts
+	private double allocationThreshold = 0.10;	//fraction more allocation before it counts
+	private double confidence = 0.99;
+
+	//one metric of one benchmark run
+	public static class Measurement {
+		private String key;					//benchmark, parameters and threads
+		private String mode;
+		private String unit;
+		private double score;
+		private double error;
+		private double[] raw;				//iteration scores, may be empty
+
+		//throughput is better higher, times are better lower
+		public boolean higherIsBetter() {
+			return "thrpt".equals(mode);
+		}
+	}
+
+	//how one metric changed between the baseline and the new run
+	public static class Change {
+		private Measurement before;
+		private Measurement after;
+		private double relative;			//change as a fraction of before
+		private double low;					//confidence interval of relative
+		private double high;
+		private Verdict verdict;
+
+		public Verdict verdict() {
+			return verdict;
+		}
+	}
+
+	//compares every benchmark in both runs, throughput first then allocation
+	public List<Change> compare(Map<String, Measurement> baseline, Map<String, Measurement> current,
+			Map<String, Measurement> baselineAllocation, Map<String, Measurement> currentAllocation) {
+		List<Change> changes = new ArrayList<Change>();
+
+		for (String key : current.keySet()) {
+			if (baseline.containsKey(key))
+				changes.add(change(baseline.get(key), current.get(key), threshold, 0));
+			if (baselineAllocation.containsKey(key) && currentAllocation.containsKey(key))
+				changes.add(change(baselineAllocation.get(key), currentAllocation.get(key), allocationThreshold,
+						MIN_ALLOCATION_CHANGE));
+		}
+		return changes;
+	}
+
+	private Change change(Measurement before, Measurement after, double limit, double minimum) {
+		Change c = new Change();
+		c.before = before;
+		c.after = after;
+
+		double difference = after.score - before.score;
+		double margin = differenceMargin(before, after);
+		double base = Math.abs(before.score);
+
+		//a zero baseline only happens for allocation, any growth there is relative infinity
+		if (base == 0) {
+			c.relative = difference == 0 ? 0 : Math.signum(difference) * Double.POSITIVE_INFINITY;
+			c.low = c.relative;
+			c.high = c.relative;
+		}
+		else {
+			c.relative = difference / base;
+			c.low = (difference - margin) / base;
+			c.high = (difference + margin) / base;
+		}
+
+		//flips signs so worse is always positive
+		double worse = before.higherIsBetter() ? -c.relative : c.relative;
+		boolean significant = c.low > 0 || c.high < 0 || base == 0;
+		boolean large = Math.abs(worse) > limit && Math.abs(difference) >= minimum;
+
+		if (!large)
+			c.verdict = Verdict.SAME;
+		else if (!significant)
+			c.verdict = Verdict.UNSURE;
+		else
+			c.verdict = worse > 0 ? Verdict.REGRESSION : Verdict.IMPROVED;
+		return c;
+	}
+
+	//half width of the confidence interval of after minus before
+	private double differenceMargin(Measurement before, Measurement after) {
+		int n1 = before.raw.length;
+		int n2 = after.raw.length;
+
+		//without iteration scores the reported errors are all there is, combined like independent errors
+		if (n1 < 2 || n2 < 2) {
+			double e1 = Double.isNaN(before.error) ? 0 : before.error;
+			double e2 = Double.isNaN(after.error) ? 0 : after.error;
+			return Math.sqrt(e1 * e1 + e2 * e2);
+		}
+
+		double v1 = Math.pow(BenchmarkStats.stdDev(before.raw), 2) / n1;
+		double v2 = Math.pow(BenchmarkStats.stdDev(after.raw), 2) / n2;
+		if (v1 + v2 == 0)
+			return 0;
+
+		//welch satterthwaite degrees of freedom
+		double df = (v1 + v2) * (v1 + v2) / (v1 * v1 / (n1 - 1) + v2 * v2 / (n2 - 1));
+		return BenchmarkStats.tQuantile(confidence, Math.max(1, (int) Math.floor(df))) * Math.sqrt(v1 + v2);
+	}
+
+	//writes one line per benchmark that changed and a summary, gives the number of regressions
+	public int report(List<Change> changes, Set<String> baselineKeys, Set<String> currentKeys, PrintStream out) {
+		EnumMap<Verdict, Integer> counts = new EnumMap<Verdict, Integer>(Verdict.class);
+		for (Verdict v : Verdict.values())
+			counts.put(v, 0);
+
+		out.printf("%-70s %-8s %16s %16s %9s %21s  %s%n", "benchmark", "unit", "baseline", "current", "change",
+				(int) Math.round(confidence * 100) + "% interval", "verdict");
+
+		for (Change c : changes) {
+			counts.put(c.verdict, counts.get(c.verdict) + 1);
+			out.printf("%-70s %-8s %16s %16s %9s %21s  %s%n", c.after.key, c.after.unit, withError(c.before),
+					withError(c.after), percent(c.relative), "[" + percent(c.low) + ", " + percent(c.high) + "]",
+					c.verdict == Verdict.SAME ? "" : c.verdict.name());
+		}
+
+		//benchmarks only one run has
+		for (String key : baselineKeys) {
+			if (!currentKeys.contains(key))
+				out.println("missing from current run: " + key);
+		}
+		for (String key : currentKeys) {
+			if (!baselineKeys.contains(key))
+				out.println("not in baseline: " + key);
+		}
+
+		out.println();
+		out.printf("%d regressions, %d improvements, %d unsure, %d unchanged (threshold %s throughput, %s allocation)%n",
+				counts.get(Verdict.REGRESSION), counts.get(Verdict.IMPROVED), counts.get(Verdict.UNSURE),
+				counts.get(Verdict.SAME), percent(threshold), percent(allocationThreshold));
+		return counts.get(Verdict.REGRESSION);
+	}
+
+	private static String withError(Measurement m) {
+		if (Double.isNaN(m.error))
+			return format(m.score);
+		return format(m.score) + "+-" + format(m.error);
+	}
+
+	private static String format(double value) {
+		if (Math.abs(value) >= 1e6)
+			return String.format("%.3g", value);
+		if (Math.abs(value) >= 100)
+			return String.format("%.0f", value);
+		return String.format("%.2f", value);
+	}
+
+	private static String percent(double fraction) {
+		if (Double.isInfinite(fraction))
+			return fraction > 0 ? "+inf" : "-inf";
+		return String.format("%+.1f%%", fraction * 100);
+	}
+
+	//reads a jmh result file into primary metrics and allocation metrics by benchmark key
+	public static void load(Path file, Map<String, Measurement> primary, Map<String, Measurement> allocation)
+			throws IOException {
+		Object root = new Parser(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)).parse();
+		if (!(root instanceof List))
+			throw new IOException(file + " is not a list of JMH results");
+
+		for (Object item : (List<?>) root) {
+			Map<?, ?> run = (Map<?, ?>) item;
+			String key = key(run);
+			String mode = String.valueOf(run.get("mode"));
+
+			primary.put(key, measurement(key, mode, (Map<?, ?>) run.get("primaryMetric")));
+
+			Map<?, ?> secondary = (Map<?, ?>) run.get("secondaryMetrics");
+			if (secondary != null && secondary.get(ALLOCATION) != null)
+				allocation.put(key, measurement(key, "avgt", (Map<?, ?>) secondary.get(ALLOCATION)));
+		}
+	}
+
+	//benchmark name, then sorted parameters, then threads
+	private static String key(Map<?, ?> run) {
+		StringBuilder key = new StringBuilder(String.valueOf(run.get("benchmark")));
+		Map<?, ?> params = (Map<?, ?>) run.get("params");
+
+		if (params != null) {
+			TreeMap<String, Object> sorted = new TreeMap<String, Object>();
+			for (Map.Entry<?, ?> e : params.entrySet())
+				sorted.put(String.valueOf(e.getKey()), e.getValue());
+
+			String separator = " (";
+			for (Map.Entry<String, Object> e : sorted.entrySet()) {
+				key.append(separator).append(e.getKey()).append('=').append(e.getValue());
+				separator = ", ";
+			}
+			key.append(')');
+		}
+		return key.append(" t=").append((int) number(run.get("threads"))).toString();
+	}
+
+	private static Measurement measurement(String key, String mode, Map<?, ?> metric) {
+		Measurement m = new Measurement();
+		m.key = key;
+		m.mode = mode;
+		m.unit = String.valueOf(metric.get("scoreUnit"));
+		m.score = number(metric.get("score"));
+		m.error = number(metric.get("scoreError"));
+
+		//every fork's iterations pooled together
+		List<Double> raw = new ArrayList<Double>();
+		Object forks = metric.get("rawData");
+		if (forks instanceof List) {
+			for (Object fork : (List<?>) forks) {
+				for (Object value : (List<?>) fork)
+					raw.add(number(value));
+			}
+		}
+
+		m.raw = new double[raw.size()];
+		for (int i = 0; i < m.raw.length; i++)
+			m.raw[i] = raw.get(i);
+		return m;
+	}
+
+	//jmh writes NaN and infinity as strings
+	private static double number(Object value) {
+		if (value instanceof Double)
+			return (Double) value;
+		if (value instanceof String)
+			return Double.parseDouble((String) value);
+		return Double.NaN;
+	}
+
+	//just enough json for result files: objects, arrays, strings, numbers, true, false and null
+	private static class Parser {
+		private String text;
+		private int pos;
+
+		private Parser(String t) {
+			text = t;
+		}
+
+		private Object parse() throws IOException {
+			Object value = value();
+			skipSpace();
+			if (pos != text.length())
+				throw error("Extra text after JSON");
+			return value;
+		}
+
+		private Object value() throws IOException {
+			skipSpace();
+			if (pos >= text.length())
+				throw error("Unexpected end of JSON");
+
+			char c = text.charAt(pos);
+			if (c == '{')
+				return object();
+			if (c == '[')
+				return array();
+			if (c == '"')
+				return string();
+			if (text.startsWith("true", pos)) {
+				pos += 4;
+				return Boolean.TRUE;
+			}
+			if (text.startsWith("false", pos)) {
+				pos += 5;
+				return Boolean.FALSE;
+			}
+			if (text.startsWith("null", pos)) {
+				pos += 4;
+				return null;
+			}
+			return number();
+		}
+
+		private Map<String, Object> object() throws IOException {
+			LinkedHashMap<String, Object> map = new LinkedHashMap<String, Object>();
+			pos++;
+			skipSpace();
+
+			if (peek() == '}') {
+				pos++;
+				return map;
+			}
+
+			while (true) {
+				skipSpace();
+				if (peek() != '"')
+					throw error("Expected a name");
+				String name = string();
+				expect(':');
+				map.put(name, value());
+				skipSpace();
+
+				char c = next();
+				if (c == '}')
+					return map;
+				if (c != ',')
+					throw error("Expected , or }");
+			}
+		}
+
+		private List<Object> array() throws IOException {
+			ArrayList<Object> list = new ArrayList<Object>();
+			pos++;
+			skipSpace();
+
+			if (peek() == ']') {
+				pos++;
+				return list;
+			}
+
+			while (true) {
+				list.add(value());
+				skipSpace();
+
+				char c = next();
+				if (c == ']')
+					return list;
+				if (c != ',')
+					throw error("Expected , or ]");
+			}
+		}
+
+		private String string() throws IOException {
+			StringBuilder s = new StringBuilder();
+			pos++;
+
+			while (true) {
+				char c = next();
+				if (c == '"')
+					return s.toString();
+				if (c != '\\') {
+					s.append(c);
+					continue;
+				}
+
+				c = next();
+				switch (c) {
+					case 'n': s.append('\n'); break;
+					case 't': s.append('\t'); break;
+					case 'r': s.append('\r'); break;
+					case 'b': s.append('\b'); break;
+					case 'f': s.append('\f'); break;
+					case 'u':
+						if (pos + 4 > text.length())
+							throw error("Bad escape");
+						s.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+						pos += 4;
+						break;
+					default: s.append(c);
+				}
+			}
+		}
+
+		private Double number() throws IOException {
+			int start = pos;
+			while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0)
+				pos++;
+
+			try {
+				return Double.valueOf(text.substring(start, pos));
+			} catch (NumberFormatException e) {
+				throw error("Bad value");
+			}
+		}
+
+		private void expect(char c) throws IOException {
+			skipSpace();
+			if (next() != c)
+				throw error("Expected " + c);
+		}
+
+		private char peek() throws IOException {
+			if (pos >= text.length())
+				throw error("Unexpected end of JSON");
+			return text.charAt(pos);
+		}
+
+		private char next() throws IOException {
+			char c = peek();
+			pos++;
+			return c;
+		}
+
+		private void skipSpace() {
+			while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+				pos++;
+		}
+
+		private IOException error(String message) {
+			return new IOException(message + " at character " + pos);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		BenchmarkCompare tool = new BenchmarkCompare();
+		Path dir = Paths.get("benchmark-baselines");
+		List<String> words = new ArrayList<String>();
+
+		for (int i = 0; i < args.length; i++) {
+			if (!args[i].startsWith("-") || i + 1 == args.length) {
+				words.add(args[i]);
+				continue;
+			}
+
+			String value = args[++i];
+			switch (args[i - 1]) {
+				case "-dir": dir = Paths.get(value); break;
+				case "-threshold": tool.threshold = Double.parseDouble(value) / 100; break;
+				case "-alloc": tool.allocationThreshold = Double.parseDouble(value) / 100; break;
+				case "-confidence": tool.confidence = Double.parseDouble(value); break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+			}
+		}
+
+		String command = words.isEmpty() ? "" : words.get(0);
+
+		if (command.equals("save") && words.size() == 3) {
+			Path results = Paths.get(words.get(2));
+			load(results, new HashMap<String, Measurement>(), new HashMap<String, Measurement>());
+
+			Files.createDirectories(dir);
+			Path saved = dir.resolve(words.get(1) + ".json");
+			Files.copy(results, saved, StandardCopyOption.REPLACE_EXISTING);
+			System.out.println("saved baseline " + words.get(1) + " to " + saved);
+		}
+		else if (command.equals("list")) {
+			if (!Files.isDirectory(dir))
+				return;
+
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.json")) {
+				for (Path file : files) {
+					String name = file.getFileName().toString();
+					System.out.println(name.substring(0, name.length() - 5) + "  " + Files.getLastModifiedTime(file));
+				}
+			}
+		}
+		else if (command.equals("compare") && words.size() == 3) {
+			//a saved name, or else a path to a result file
+			Path baselineFile = dir.resolve(words.get(1) + ".json");
+			if (!Files.exists(baselineFile))
+				baselineFile = Paths.get(words.get(1));
+
+			Map<String, Measurement> baseline = new LinkedHashMap<String, Measurement>();
+			Map<String, Measurement> baselineAllocation = new LinkedHashMap<String, Measurement>();
+			Map<String, Measurement> current = new LinkedHashMap<String, Measurement>();
+			Map<String, Measurement> currentAllocation = new LinkedHashMap<String, Measurement>();
+			load(baselineFile, baseline, baselineAllocation);
+			load(Paths.get(words.get(2)), current, currentAllocation);
+
+			List<Change> changes = tool.compare(baseline, current, baselineAllocation, currentAllocation);
+			int regressions = tool.report(changes, baseline.keySet(), current.keySet(), System.out);
+			if (regressions > 0)
+				System.exit(1);
+		}
+		else {
+			System.out.println("java BenchmarkCompare save <name> <results.json>");
+			System.out.println("java BenchmarkCompare list");
+			System.out.println("java BenchmarkCompare compare <baseline> <results.json> [-threshold 5] [-alloc 10]"
+					+ " [-confidence 0.99]");
+			System.out.println("options: -dir <baseline folder>, default benchmark-baselines");
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,113 @@
+/*
+ * Derek Hu
+ * Period 6
+ * Benchmark Stats has the math the benchmarks need to say how sure they are of a result: means, standard
+ * deviations, percentiles, and confidence intervals from the Student t distribution, which is what fits
+ * when there are only a handful of measured iterations.
+ */
+
+import java.util.*;
+
+public class BenchmarkStats {
+
+	public static double mean(double[] values) {
+		double sum = 0;
+		for (double v : values)
+			sum += v;
+		return values.length == 0 ? Double.NaN : sum / values.length;
+	}
+
+	//sample standard deviation, 0 for fewer than 2 values
+	public static double stdDev(double[] values) {
+		if (values.length < 2)
+			return 0;
+
+		double mean = mean(values);
+		double sum = 0;
+		for (double v : values)
+			sum += (v - mean) * (v - mean);
+		return Math.sqrt(sum / (values.length - 1));
+	}
+
+	//half the width of the confidence interval around the mean, NaN for fewer than 2 values
+	public static double errorMargin(double[] values, double confidence) {
+		if (values.length < 2)
+			return Double.NaN;
+		return tQuantile(confidence, values.length - 1) * stdDev(values) / Math.sqrt(values.length);
+	}
+
+	//value at fraction p of a sorted array, nearest rank
+	public static double percentile(long[] sorted, int count, double p) {
+		if (count == 0)
+			return Double.NaN;
+
+		int rank = (int) Math.ceil(p * count) - 1;
+		return sorted[Math.max(0, Math.min(count - 1, rank))];
+	}
+
+	//t such that the middle confidence fraction of a t distribution with df degrees of freedom is within +-t
+	//Hill's 1970 approximation, good to about 6 digits
+	public static double tQuantile(double confidence, int df) {
+		double p = 1 - confidence;		//two tailed
+
+		if (df == 1)
+			return Math.cos(p * Math.PI / 2) / Math.sin(p * Math.PI / 2);
+		if (df == 2)
+			return Math.sqrt(2 / (p * (2 - p)) - 2);
+
+		double n = df;
+		double a = 1 / (n - 0.5);
+		double b = 48 / (a * a);
+		double c = ((20700 * a / b - 98) * a - 16) * a + 96.36;
+		double d = ((94.5 / (b + c) - 3) / b + 1) * Math.sqrt(a * Math.PI / 2) * n;
+		double x = d * p;
+		double y = Math.pow(x, 2 / n);
+
+		//tail is close to normal
+		if (y > 0.05 + a) {
+			x = normalQuantile(p / 2);
+			y = x * x;
+			if (df < 5)
+				c += 0.3 * (n - 4.5) * (x + 0.6);
+			c = (((0.05 * d * x - 5) * x - 7) * x - 2) * x + b + c;
+			y = (((((0.4 * y + 6.3) * y + 36) * y + 94.5) / c - y - 3) / b + 1) * x;
+			y = a * y * y;
+			y = y > 0.002 ? Math.exp(y) - 1 : 0.5 * y * y + y;
+		}
+		else
+			y = ((1 / (((n + 6) / (n * y) - 0.089 * d - 0.822) * (n + 2) * 3) + 0.5 / (n + 4)) * y - 1)
+					* (n + 1) / (n + 2) + 1 / y;
+
+		return Math.sqrt(n * y);
+	}
+
+	//x such that a standard normal is below x with probability p, Acklam's approximation
+	public static double normalQuantile(double p) {
+		double[] a = {-39.69683028665376, 220.9460984245205, -275.9285104469687, 138.3577518672690,
+				-30.66479806614716, 2.506628277459239};
+		double[] b = {-54.47609879822406, 161.5858368580409, -155.6989798598866, 66.80131188771972,
+				-13.28068155288572};
+		double[] c = {-0.007784894002430293, -0.3223964580411365, -2.400758277161838, -2.549732539343734,
+				4.374664141464968, 2.938163982698783};
+		double[] d = {0.007784695709041462, 0.3224671290700398, 2.445134137142996, 3.754408661907416};
+
+		//lower tail
+		if (p < 0.02425) {
+			double q = Math.sqrt(-2 * Math.log(p));
+			return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+					/ ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+		}
+		//upper tail
+		if (p > 1 - 0.02425) {
+			double q = Math.sqrt(-2 * Math.log(1 - p));
+			return -(((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+					/ ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+		}
+
+		//middle
+		double q = p - 0.5;
+		double r = q * q;
+		return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+				/ (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,222 @@
+/*
+ * Derek Hu
+ * Period 6
+ * Bulk Load lets the hash tables add a whole batch of items on several threads at once without locks. The
+ * table is cut into regions of neighboring buckets, more regions than threads so a thread that finishes
+ * early takes another. A fork/join pass groups the items by the region their bucket falls in, like a
+ * counting sort: each chunk of items counts how many go to each region, the counts give every chunk its
+ * own place to write, and then each chunk copies its items there. After that every region is filled by
+ * one thread touching only its own buckets. Items keep their order within a region, so a chained table
+ * ends up the same as adding them one at a time.
+ * Usage: java -Xmx6g BulkLoad [items] [parallelism...]      default is 10000000 items at 1 2 4 8
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+public class BulkLoad {
+
+	private static final int MIN_CHUNK = 1 << 14;		//items one task groups, smaller is not worth a task
+	private static final int REGIONS_PER_THREAD = 8;
+
+	//items put in order of their region, region r is items[start[r]] up to items[start[r + 1]]
+	public static class Groups {
+		private Object[] items;
+		private int[] start;
+
+		public Object item(int index) {
+			return items[index];
+		}
+
+		//takes an item out so later passes skip it
+		public void drop(int index) {
+			items[index] = null;
+		}
+
+		//every item still here in region order, dropped ones are null
+		public Object[] items() {
+			return items;
+		}
+
+		public int start(int region) {
+			return start[region];
+		}
+
+		public int end(int region) {
+			return start[region + 1];
+		}
+
+		//items grouped, counting ones dropped since
+		public int size() {
+			return items.length;
+		}
+	}
+
+	//a pool of exactly parallelism threads, the caller shuts it down
+	public static ForkJoinPool pool(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		return new ForkJoinPool(parallelism);
+	}
+
+	//enough regions that work can be shared out evenly, but never more than the table has buckets
+	public static int regions(int parallelism, int length) {
+		return Math.max(1, Math.min(length, parallelism * REGIONS_PER_THREAD));
+	}
+
+	//region bucket index falls in, regions are nearly the same size
+	public static int regionOf(int index, int regions, int length) {
+		return (int) ((long) index * regions / length);
+	}
+
+	//first bucket of region, the one after the last region is length
+	public static int regionStart(int region, int regions, int length) {
+		return (int) (((long) region * length + regions - 1) / regions);
+	}
+
+	//groups the non null items by region, regionOf must be safe to call from many threads
+	public static Groups partition(Object[] items, int regions, ToIntFunction<Object> regionOf, ForkJoinPool pool) {
+		int chunks = Math.max(1, Math.min(pool.getParallelism() * 4, items.length / MIN_CHUNK));
+		int[][] counts = new int[chunks][regions];
+		int[] regionIds = new int[items.length];
+
+		//each chunk counts its items per region
+		forEach(chunks, chunk -> {
+			int[] count = counts[chunk];
+			for (int i = chunkStart(chunk, chunks, items.length); i < chunkStart(chunk + 1, chunks, items.length); i++) {
+				if (items[i] != null) {
+					regionIds[i] = regionOf.applyAsInt(items[i]);
+					count[regionIds[i]]++;
+				}
+			}
+		}, pool);
+
+		//turns counts into where each chunk writes each region, chunks in order so items keep their order
+		Groups groups = new Groups();
+		groups.start = new int[regions + 1];
+		int next = 0;
+		for (int region = 0; region < regions; region++) {
+			groups.start[region] = next;
+			for (int chunk = 0; chunk < chunks; chunk++) {
+				int count = counts[chunk][region];
+				counts[chunk][region] = next;
+				next += count;
+			}
+		}
+		groups.start[regions] = next;
+		groups.items = new Object[next];
+
+		forEach(chunks, chunk -> {
+			int[] offset = counts[chunk];
+			for (int i = chunkStart(chunk, chunks, items.length); i < chunkStart(chunk + 1, chunks, items.length); i++) {
+				if (items[i] != null)
+					groups.items[offset[regionIds[i]]++] = items[i];
+			}
+		}, pool);
+		return groups;
+	}
+
+	//runs work for 0 up to tasks - 1 on the pool and waits for all of them
+	public static void forEach(int tasks, IntConsumer work, ForkJoinPool pool) {
+		if (tasks > 0)
+			pool.invoke(new Split(0, tasks, work));
+	}
+
+	private static int chunkStart(int chunk, int chunks, int length) {
+		return (int) ((long) chunk * length / chunks);
+	}
+
+	//halves the range of tasks until each is one, so idle threads can steal the other half
+	private static class Split extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private int low;
+		private int high;
+		private IntConsumer work;
+
+		private Split(int l, int h, IntConsumer w) {
+			low = l;
+			high = h;
+			work = w;
+		}
+
+		protected void compute() {
+			if (high - low == 1) {
+				work.accept(low);
+				return;
+			}
+
+			int middle = (low + high) >>> 1;
+			invokeAll(new Split(low, middle, work), new Split(middle, high, work));
+		}
+	}
+
+	//both tables have no filter or filters with the same counters
+	private static boolean sameFilter(DerekHuBloomFilter<?> a, DerekHuBloomFilter<?> b) {
+		return a == null ? b == null : b != null && Arrays.equals(a.counters(), b.counters());
+	}
+
+	//times adding one at a time against addAll at each parallelism and checks they hold the same items
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+		int[] threads = {1, 2, 4, 8};
+		if (args.length > 1) {
+			threads = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++)
+				threads[i - 1] = Integer.parseInt(args[i]);
+		}
+
+		Random rand = new Random(42);
+		Integer[] keys = new Integer[n];
+		for (int i = 0; i < n; i++)
+			keys[i] = rand.nextInt();
+
+		System.out.println(n + " items, " + Runtime.getRuntime().availableProcessors() + " cpus");
+		System.out.printf("%-22s %12s", "structure", "add (ms)");
+		for (int t : threads)
+			System.out.printf(" %12s", "addAll x" + t);
+		System.out.println();
+
+		BiPredicate<HashChaining<Integer>, HashChaining<Integer>> sameChains = (a, b) ->
+				Arrays.equals(a.buckets(), b.buckets()) && sameFilter(a.filter(), b.filter());
+		BiPredicate<HashProbing<Integer>, HashProbing<Integer>> sameItems = (a, b) -> {
+			for (Integer key : keys) {
+				if (!b.contains(key))
+					return false;
+			}
+			return a.size() == b.size() && sameFilter(a.filter(), b.filter());
+		};
+
+		time("HashChaining", keys, threads, () -> new HashChaining<Integer>(n),
+				(table, key) -> table.add(key), (table, t) -> table.addAll(keys, t), sameChains);
+		time("HashChaining+filter", keys, threads, () -> new HashChaining<Integer>(n, n, 0.01),
+				(table, key) -> table.add(key), (table, t) -> table.addAll(keys, t), sameChains);
+		time("HashProbing", keys, threads, () -> new HashProbing<Integer>(n * 2, index -> index + 1),
+				(table, key) -> table.add(key), (table, t) -> table.addAll(keys, t), sameItems);
+		time("HashProbing+filter", keys, threads, () -> new HashProbing<Integer>(n * 2, index -> index + 1, 0.01),
+				(table, key) -> table.add(key), (table, t) -> table.addAll(keys, t), sameItems);
+	}
+
+	private static <T> void time(String name, Integer[] keys, int[] threads, Supplier<T> make,
+			BiConsumer<T, Integer> add, BiConsumer<T, Integer> addAll, BiPredicate<T, T> same) {
+		System.out.printf("%-22s", name);
+
+		long start = System.nanoTime();
+		T table = make.get();
+		for (Integer key : keys)
+			add.accept(table, key);
+		System.out.printf(" %12.1f", (System.nanoTime() - start) / 1e6);
+
+		for (int t : threads) {
+			System.gc();
+			start = System.nanoTime();
+			T bulk = make.get();
+			addAll.accept(bulk, t);
+			System.out.printf(" %12.1f", (System.nanoTime() - start) / 1e6);
+
+			if (!same.test(table, bulk))
+				throw new IllegalStateException(name + " addAll x" + t + " does not match adding one at a time");
+		}
+		System.out.println();
+	}
+}
\ No newline at end of file
@@ -6,6 +6,7 @@ import java.util.*;
 public class CircularQueue<E> {
 	
 	private ListNode end;
+	private int numElements;
 	
 	// checks to see if the list is empty
 	public boolean isEmpty()
@@ -31,6 +32,7 @@ public class CircularQueue<E> {
 			end.next = newNode;
 			end = newNode;
 		}
+		numElements++;
 	}
 	
 	// looks at the front of the list if possible
@@ -69,10 +71,34 @@ public class CircularQueue<E> {
 		}
 		
 		front.next = null;
+		numElements--;
 		
 		return dataRemoved;
 	}
 	
+	// number of elements in the queue
+	public int size()
+	{
+		return numElements;
+	}
+	
+	// a node is made for every element so nothing extra is held
+	public int capacity()
+	{
+		return numElements;
+	}
+	
+	public double loadFactor()
+	{
+		return MemoryLayout.ratio(numElements, capacity());
+	}
+	
+	// bytes of the queue and its nodes, not the elements
+	public long estimatedBytes()
+	{
+		return MemoryLayout.shallowSize(getClass()) + numElements * MemoryLayout.shallowSize(ListNode.class);
+	}
+	
 	public class ListNode {
 		
 		private E data;
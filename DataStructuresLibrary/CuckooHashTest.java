@@ -0,0 +1,145 @@
+/*
+ * Derek Hu
+ * Period 6
+ * Cuckoo Hash Test checks the cuckoo hash table against java.util.HashSet, including keys that all have the
+ * same hashCode. Strings made of "Aa" and "BB" blocks all hash the same, so they share both buckets under
+ * every hash function the table picks and only fit once the stash grows. It adds them alone and mixed in
+ * with ordinary keys, runs random adds, removes and lookups next to a HashSet, and checks the table did
+ * not grow out of proportion on the way. Only keys that share a hashCode may keep the stash past its
+ * usual 4, so ordinary keys must never take more than that, even in small tables filled close to the load
+ * limit where kicking goes in cycles. Any mismatch throws.
+ *
+ * java CuckooHashTest [colliding keys] [random operations]      default is 256 1000000
+ */
+
+import java.util.*;
+
+public class CuckooHashTest {
+
+	public static void main(String[] args) {
+		int colliding = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+		int operations = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+
+		ArrayList<String> same = sameHashCode(colliding);
+		collidingOnly(same);
+		mixed(same, operations);
+		smallTables(same);
+	}
+
+	//strings of "Aa" and "BB" blocks, every one with the same hashCode
+	private static ArrayList<String> sameHashCode(int count) {
+		int blocks = 1;
+		while ((1 << blocks) < count)
+			blocks++;
+
+		ArrayList<String> keys = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			StringBuilder key = new StringBuilder();
+			for (int b = 0; b < blocks; b++)
+				key.append((i >> b & 1) == 0 ? "Aa" : "BB");
+			keys.add(key.toString());
+		}
+
+		for (String key : keys) {
+			if (key.hashCode() != keys.get(0).hashCode())
+				throw new IllegalStateException("Key " + key + " hashes differently");
+		}
+		return keys;
+	}
+
+	//every key collides, they all have to end up in their two buckets or the stash
+	private static void collidingOnly(ArrayList<String> same) {
+		DerekHuCuckooHash<String> table = new DerekHuCuckooHash<String>();
+		for (String key : same) {
+			if (!table.add(key))
+				throw new IllegalStateException("New key " + key + " not added");
+		}
+		for (String key : same) {
+			if (table.add(key) || !table.contains(key))
+				throw new IllegalStateException("Key " + key + " lost or added twice");
+		}
+		if (table.size() != same.size())
+			throw new IllegalStateException("Size " + table.size() + " but " + same.size() + " added");
+
+		//rebuilds stop after a few tries, so the table stays small
+		if (table.capacity() > 4 * same.size())
+			throw new IllegalStateException("Table grew to " + table.capacity() + " slots for " + same.size() + " keys");
+
+		for (int i = 0; i < same.size(); i += 2)
+			table.remove(same.get(i));
+		for (int i = 0; i < same.size(); i++) {
+			if (table.contains(same.get(i)) != (i % 2 == 1))
+				throw new IllegalStateException("Wrong membership for " + same.get(i) + " after removes");
+		}
+
+		System.out.println(same.size() + " keys with one hashCode: " + table.capacity() + " slots, stash "
+				+ table.stashSize() + " after removing half, " + table.rehashCount() + " rehashes");
+	}
+
+	//random operations on ordinary keys and colliding ones, compared with a HashSet
+	private static void mixed(ArrayList<String> same, int operations) {
+		DerekHuCuckooHash<String> table = new DerekHuCuckooHash<String>();
+		HashSet<String> expected = new HashSet<String>();
+		HashSet<String> sharing = new HashSet<String>(same);
+		Random rand = new Random(42);
+		int colliding = 0;
+
+		for (int i = 0; i < operations; i++) {
+			String key = rand.nextInt(4) == 0 ? same.get(rand.nextInt(same.size())) : "k" + rand.nextInt(50000);
+			int op = rand.nextInt(3);
+
+			boolean got;
+			boolean want;
+			if (op == 0) {
+				got = table.add(key);
+				want = expected.add(key);
+			}
+			else if (op == 1) {
+				got = table.remove(key);
+				want = expected.remove(key);
+			}
+			else {
+				got = table.contains(key);
+				want = expected.contains(key);
+			}
+			if (got != want)
+				throw new IllegalStateException("Operation " + op + " on " + key + " gave " + got + " at step " + i);
+
+			//past the usual stash only keys that share both buckets, 2 * 4 of them fit in the buckets
+			if (op < 2 && got && sharing.contains(key))
+				colliding += op == 0 ? 1 : -1;
+			if (table.stashSize() > 4 + Math.max(0, colliding - 8))
+				throw new IllegalStateException("Stash " + table.stashSize() + " for " + colliding + " colliding keys at step " + i);
+		}
+
+		if (table.size() != expected.size())
+			throw new IllegalStateException("Size " + table.size() + " but HashSet has " + expected.size());
+		for (String key : expected) {
+			if (!table.contains(key))
+				throw new IllegalStateException("Missing " + key);
+		}
+
+		System.out.println(operations + " random operations match HashSet: " + table.size() + " keys in "
+				+ table.capacity() + " slots, stash " + table.stashSize() + " for " + colliding + " colliding keys");
+	}
+
+	//small tables near full with colliding keys stashed, where kicking goes in cycles now and then. Those
+	//ordinary keys must make the table rebuild, not take the room the colliding keys made in the stash
+	private static void smallTables(ArrayList<String> same) {
+		Random rand = new Random(7);
+		int sharing = Math.min(20, same.size());
+		int most = 0;
+		for (int t = 0; t < 5000; t++) {
+			DerekHuCuckooHash<String> table = new DerekHuCuckooHash<String>();
+			for (int i = 0; i < sharing; i++)
+				table.add(same.get(i));
+			for (int i = 0; i < 400; i++) {
+				table.add("t" + t + "k" + rand.nextInt(1000));
+				most = Math.max(most, table.stashSize() - Math.max(0, sharing - 8));
+			}
+		}
+		if (most > 4)
+			throw new IllegalStateException("Stash held " + most + " ordinary keys");
+		System.out.println("5000 small tables with " + sharing + " colliding keys: at most " + most + " ordinary keys stashed");
+	}
+}
\ No newline at end of file
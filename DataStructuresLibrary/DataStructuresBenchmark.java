@@ -0,0 +1,680 @@
+/*
+ * Derek Hu
+ * Period 6
+ * Data Structures Benchmark measures each structure in the library next to the java.util class that does
+ * the same job, the way JMH would: a few warmup iterations to let the JIT settle, then timed iterations
+ * whose spread gives a 99.9% confidence interval. For every structure, operation, size, key distribution
+ * and thread count it reports throughput, latency percentiles from sampled operations, and bytes
+ * allocated per operation, which is what JMH's -prof gc calls gc.alloc.rate.norm. Each thread gets its own
+ * copy of the structure since none of them are thread safe, so more threads shows how well a structure
+ * scales when it competes only for memory and cache. Results can be written as JMH style JSON.
+ *
+ * java DataStructuresBenchmark -size 1000,100000 -dist uniform,zipf,sequential -t 1,4 -op lookup
+ *     -s Hash -wi 3 -i 5 -w 500 -r 500 -rff results.json
+ */
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.IntFunction;
+
+public class DataStructuresBenchmark {
+
+	private static final double CONFIDENCE = 0.999;
+	private static final int PICKS = 1 << 16;			//access pattern length, a power of two
+	private static final int SAMPLE_EVERY = 64;			//times one operation in this many
+	private static final int MAX_SAMPLES = 1 << 14;		//latency samples kept per thread per iteration
+
+	//which keys get used, inserted in order, in random order, or in random order with a few keys used most
+	public enum Distribution { UNIFORM, ZIPF, SEQUENTIAL }
+
+	//remove takes out an item then puts it back so the size stays the same, miss looks up items not there
+	public enum Operation { ADD, LOOKUP, MISS, REMOVE, ITERATE }
+
+	//results are stored here so the jit cannot throw away the work
+	public static volatile long sink;
+
+	//cost of reading the clock twice, taken off each single operation sample
+	private static final long TIMER_OVERHEAD = timerOverhead();
+
+	private int warmupIterations = 3;
+	private int iterations = 5;
+	private long warmupNanos = 500_000_000L;
+	private long iterationNanos = 500_000_000L;
+	private Workload workload;			//reused while size and distribution stay the same
+
+	//the operations a structure supports, the rest throw
+	public static abstract class Target {
+		public abstract void add(Integer key);
+
+		public boolean lookup(Integer key, int index) {
+			throw new UnsupportedOperationException();
+		}
+
+		public void removeAndRestore(Integer key) {
+			throw new UnsupportedOperationException();
+		}
+
+		public long iterate() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	//a structure to measure and how to make an empty one big enough for a size
+	public static class Subject {
+		private String name;
+		private EnumSet<Operation> operations;
+		private IntFunction<Target> create;
+
+		public Subject(String n, EnumSet<Operation> ops, IntFunction<Target> c) {
+			name = n;
+			operations = ops;
+			create = c;
+		}
+	}
+
+	//every library structure followed by its java.util counterpart
+	public static List<Subject> subjects() {
+		EnumSet<Operation> set = EnumSet.of(Operation.ADD, Operation.LOOKUP, Operation.MISS, Operation.REMOVE);
+		//lists are looked up by index, a key that is not there has none
+		EnumSet<Operation> list = EnumSet.complementOf(EnumSet.of(Operation.MISS));
+		List<Subject> subjects = new ArrayList<Subject>();
+
+		subjects.add(new Subject("HashProbing", set, size -> new Target() {
+			HashProbing<Integer> table = new HashProbing<Integer>(size * 2, index -> index + 1);
+			public void add(Integer key) { table.add(key); }
+			public boolean lookup(Integer key, int index) { return table.contains(key); }
+			public void removeAndRestore(Integer key) { table.remove(key); table.add(key); }
+		}));
+		subjects.add(new Subject("HashChaining", set, size -> new Target() {
+			HashChaining<Integer> table = new HashChaining<Integer>(size);
+			public void add(Integer key) { table.add(key); }
+			public boolean lookup(Integer key, int index) { return table.contains(key); }
+			public void removeAndRestore(Integer key) { table.remove(key); table.add(key); }
+		}));
+		subjects.add(new Subject("HashProbing+filter", set, size -> new Target() {
+			HashProbing<Integer> table = new HashProbing<Integer>(size * 2, index -> index + 1, 0.01);
+			public void add(Integer key) { table.add(key); }
+			public boolean lookup(Integer key, int index) { return table.contains(key); }
+			public void removeAndRestore(Integer key) { table.remove(key); table.add(key); }
+		}));
+		subjects.add(new Subject("HashChaining+filter", set, size -> new Target() {
+			HashChaining<Integer> table = new HashChaining<Integer>(size, size, 0.01);
+			public void add(Integer key) { table.add(key); }
+			public boolean lookup(Integer key, int index) { return table.contains(key); }
+			public void removeAndRestore(Integer key) { table.remove(key); table.add(key); }
+		}));
+		subjects.add(new Subject("DerekHuCuckooHash", set, size -> new Target() {
+			DerekHuCuckooHash<Integer> table = new DerekHuCuckooHash<Integer>(size);
+			public void add(Integer key) { table.add(key); }
+			public boolean lookup(Integer key, int index) { return table.contains(key); }
+			public void removeAndRestore(Integer key) { table.remove(key); table.add(key); }
+		}));
+		subjects.add(new Subject("DerekHuLockFreeHashSet", set, size -> new Target() {
+			DerekHuLockFreeHashSet<Integer> table = new DerekHuLockFreeHashSet<Integer>(size);
+			public void add(Integer key) { table.add(key); }
+			public boolean lookup(Integer key, int index) { return table.contains(key); }
+			public void removeAndRestore(Integer key) { table.remove(key); table.add(key); }
+		}));
+		subjects.add(new Subject("java.util.HashSet", set, size -> new Target() {
+			HashSet<Integer> table = new HashSet<Integer>();
+			public void add(Integer key) { table.add(key); }
+			public boolean lookup(Integer key, int index) { return table.contains(key); }
+			public void removeAndRestore(Integer key) { table.remove(key); table.add(key); }
+		}));
+
+		subjects.add(new Subject("DerekHuBalancedBST", set, size -> new Target() {
+			DerekHuBalancedBST<Integer> tree = new DerekHuBalancedBST<Integer>();
+			public void add(Integer key) { tree.insert(key); }
+			public boolean lookup(Integer key, int index) { return tree.contains(key); }
+			public void removeAndRestore(Integer key) { tree.remove(key); tree.insert(key); }
+		}));
+		subjects.add(new Subject("java.util.TreeMap", set, size -> new Target() {
+			TreeMap<Integer, Integer> tree = new TreeMap<Integer, Integer>();
+			public void add(Integer key) { tree.merge(key, 1, Integer::sum); }
+			public boolean lookup(Integer key, int index) { return tree.containsKey(key); }
+
+			public void removeAndRestore(Integer key) {
+				tree.computeIfPresent(key, (k, count) -> count == 1 ? null : count - 1);
+				tree.merge(key, 1, Integer::sum);
+			}
+		}));
+
+		//queues look at the front and take from it, so the key is ignored
+		EnumSet<Operation> queue = EnumSet.of(Operation.ADD, Operation.LOOKUP, Operation.REMOVE);
+		subjects.add(new Subject("DerekHuArrayHeap", queue, size -> new Target() {
+			DerekHuArrayHeap<Integer> heap = new DerekHuArrayHeap<Integer>();
+			public void add(Integer key) { heap.add(key); }
+			public boolean lookup(Integer key, int index) { return heap.peek() != null; }
+			public void removeAndRestore(Integer key) { heap.add(heap.remove()); }
+		}));
+		subjects.add(new Subject("java.util.PriorityQueue", queue, size -> new Target() {
+			java.util.PriorityQueue<Integer> heap = new java.util.PriorityQueue<Integer>();
+			public void add(Integer key) { heap.add(key); }
+			public boolean lookup(Integer key, int index) { return heap.peek() != null; }
+			public void removeAndRestore(Integer key) { heap.add(heap.remove()); }
+		}));
+		subjects.add(new Subject("CircularQueue", queue, size -> new Target() {
+			CircularQueue<Integer> fifo = new CircularQueue<Integer>();
+			public void add(Integer key) { fifo.add(key); }
+			public boolean lookup(Integer key, int index) { return fifo.peek() != null; }
+			public void removeAndRestore(Integer key) { fifo.add(fifo.remove()); }
+		}));
+		subjects.add(new Subject("java.util.ArrayDeque(queue)", queue, size -> new Target() {
+			ArrayDeque<Integer> fifo = new ArrayDeque<Integer>();
+			public void add(Integer key) { fifo.addLast(key); }
+			public boolean lookup(Integer key, int index) { return fifo.peekFirst() != null; }
+			public void removeAndRestore(Integer key) { fifo.addLast(fifo.removeFirst()); }
+		}));
+		subjects.add(new Subject("ArrayStack", queue, size -> new Target() {
+			ArrayStack<Integer> stack = new ArrayStack<Integer>();
+			public void add(Integer key) { stack.push(key); }
+			public boolean lookup(Integer key, int index) { return stack.peek() != null; }
+			public void removeAndRestore(Integer key) { stack.push(stack.pop()); }
+		}));
+		subjects.add(new Subject("java.util.ArrayDeque(stack)", queue, size -> new Target() {
+			ArrayDeque<Integer> stack = new ArrayDeque<Integer>();
+			public void add(Integer key) { stack.push(key); }
+			public boolean lookup(Integer key, int index) { return stack.peek() != null; }
+			public void removeAndRestore(Integer key) { stack.push(stack.pop()); }
+		}));
+
+		//lists look up by index and remove from the front then add to the end
+		subjects.add(new Subject("DerekHuDoublyLinkedList", list, size -> new Target() {
+			DerekHuDoublyLinkedList<Integer> items = new DerekHuDoublyLinkedList<Integer>();
+			public void add(Integer key) { items.addLast(key); }
+			public boolean lookup(Integer key, int index) { return items.get(index) != null; }
+			public void removeAndRestore(Integer key) { items.removeFirst(); items.addLast(key); }
+
+			public long iterate() {
+				long sum = 0;
+				for (Integer item : items)
+					sum += item;
+				return sum;
+			}
+		}));
+		subjects.add(new Subject("java.util.LinkedList", list, size -> new Target() {
+			LinkedList<Integer> items = new LinkedList<Integer>();
+			public void add(Integer key) { items.addLast(key); }
+			public boolean lookup(Integer key, int index) { return items.get(index) != null; }
+			public void removeAndRestore(Integer key) { items.removeFirst(); items.addLast(key); }
+
+			public long iterate() {
+				long sum = 0;
+				for (Integer item : items)
+					sum += item;
+				return sum;
+			}
+		}));
+		return subjects;
+	}
+
+	//one structure, operation and set of parameters measured
+	public static class Result {
+		private String structure;
+		private Operation operation;
+		private int size;
+		private Distribution distribution;
+		private int threads;
+		private double[] throughput;		//ops per second, one per iteration
+		private double[] allocation;		//bytes per op, one per iteration
+		private long[] latencies;			//sampled ns per op, sorted
+		private int numLatencies;
+
+		public double score() {
+			return BenchmarkStats.mean(throughput);
+		}
+
+		public double scoreError() {
+			return BenchmarkStats.errorMargin(throughput, CONFIDENCE);
+		}
+
+		public double bytesPerOp() {
+			return BenchmarkStats.mean(allocation);
+		}
+
+		public double latency(double p) {
+			return BenchmarkStats.percentile(latencies, numLatencies, p);
+		}
+
+		public String benchmarkName() {
+			return "DataStructuresBenchmark." + structure + "." + operation.name().toLowerCase();
+		}
+	}
+
+	//keys in the structure and the order they are used in
+	private static class Workload {
+		private Integer[] data;
+		private int[] picks;			//indexes into data
+		private Integer[] absent;		//keys not in data
+		private Distribution distribution;
+
+		private Workload(int size, Distribution d) {
+			distribution = d;
+			Random rand = new Random(size * 31L + distribution.ordinal());
+			data = new Integer[size];
+			picks = new int[PICKS];
+
+			for (int i = 0; i < size; i++)
+				data[i] = distribution == Distribution.UNIFORM ? rand.nextInt() : i;
+
+			//zipf keys go in random order so the popular ones are spread out
+			if (distribution == Distribution.ZIPF) {
+				for (int i = size - 1; i > 0; i--) {
+					int j = rand.nextInt(i + 1);
+					Integer temp = data[i];
+					data[i] = data[j];
+					data[j] = temp;
+				}
+			}
+
+			Zipf zipf = distribution == Distribution.ZIPF ? new Zipf(size, 0.99, rand) : null;
+			for (int i = 0; i < PICKS; i++) {
+				if (distribution == Distribution.SEQUENTIAL)
+					picks[i] = i % size;
+				else if (zipf != null)
+					picks[i] = zipf.next();
+				else
+					picks[i] = rand.nextInt(size);
+			}
+
+			//other distributions use 0 to size - 1 so anything above is missing
+			HashSet<Integer> present = distribution == Distribution.UNIFORM ? new HashSet<Integer>(Arrays.asList(data)) : null;
+			absent = new Integer[PICKS];
+			for (int i = 0; i < PICKS; i++) {
+				int key = present == null ? size + rand.nextInt(Integer.MAX_VALUE - size) : rand.nextInt();
+				if (present != null && present.contains(key))
+					i--;
+				else
+					absent[i] = key;
+			}
+		}
+	}
+
+	//zipf ranks in constant time each, from Gray et al. "Quickly Generating Billion-Record Synthetic Databases"
+	private static class Zipf {
+		private int n;
+		private double theta;
+		private double alpha;
+		private double zetaN;
+		private double eta;
+		private Random rand;
+
+		private Zipf(int items, double skew, Random r) {
+			n = items;
+			theta = skew;
+			rand = r;
+			alpha = 1 / (1 - theta);
+			zetaN = zeta(n);
+			eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta(2) / zetaN);
+		}
+
+		private double zeta(int count) {
+			double sum = 0;
+			for (int i = 1; i <= count; i++)
+				sum += 1 / Math.pow(i, theta);
+			return sum;
+		}
+
+		//rank 0 is the most common
+		private int next() {
+			double u = rand.nextDouble();
+			double uz = u * zetaN;
+
+			if (uz < 1)
+				return 0;
+			if (uz < 1 + Math.pow(0.5, theta))
+				return Math.min(1, n - 1);
+			return (int) Math.min(n - 1, (long) (n * Math.pow(eta * u - eta + 1, alpha)));
+		}
+	}
+
+	//one thread's structure and counts for the current iteration
+	private static class Worker implements Runnable {
+		private Subject subject;
+		private Operation operation;
+		private Workload workload;
+		private Target target;
+		private int cursor;
+		private long deadline;
+		private CountDownLatch start;
+
+		private long ops;
+		private long elapsed;
+		private long allocated;
+		private long[] samples = new long[MAX_SAMPLES];
+		private int numSamples;
+
+		private Worker(Subject s, Operation op, Workload w, int thread) {
+			subject = s;
+			operation = op;
+			workload = w;
+			cursor = thread * 7919;
+
+			//everything but add works on a full structure
+			if (operation != Operation.ADD)
+				target = fill();
+		}
+
+		private Target fill() {
+			Target t = subject.create.apply(workload.data.length);
+			for (Integer key : workload.data)
+				t.add(key);
+			return t;
+		}
+
+		public void run() {
+			try {
+				start.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+
+			ops = 0;
+			numSamples = 0;
+			long sum = 0;
+			long allocatedBefore = allocatedBytes();
+			long begin = System.nanoTime();
+			long now = begin;
+			int size = workload.data.length;
+
+			while (now < begin + deadline) {
+				//whole structure at once, each one is a sample
+				if (operation == Operation.ADD || operation == Operation.ITERATE) {
+					if (operation == Operation.ADD)
+						sum += fill().hashCode();
+					else
+						sum += target.iterate();
+
+					long end = System.nanoTime();
+					sample((end - now) / size);
+					ops += size;
+					now = end;
+					continue;
+				}
+
+				//the first of each batch is timed by itself
+				for (int i = 0; i < SAMPLE_EVERY; i++) {
+					int index = workload.picks[cursor & (PICKS - 1)];
+					Integer key = operation == Operation.MISS ? workload.absent[cursor & (PICKS - 1)] : workload.data[index];
+					cursor++;
+					long opStart = i == 0 ? System.nanoTime() : 0;
+
+					if (operation == Operation.LOOKUP || operation == Operation.MISS)
+						sum += target.lookup(key, index) ? 1 : 0;
+					else
+						target.removeAndRestore(key);
+
+					if (i == 0)
+						sample(System.nanoTime() - opStart - TIMER_OVERHEAD);
+				}
+				ops += SAMPLE_EVERY;
+				now = System.nanoTime();
+			}
+
+			elapsed = now - begin;
+			allocated = allocatedBytes() - allocatedBefore;
+			sink += sum;
+		}
+
+		private void sample(long nanos) {
+			if (numSamples < MAX_SAMPLES)
+				samples[numSamples++] = Math.max(0, nanos);
+		}
+	}
+
+	//median of back to back clock reads
+	private static long timerOverhead() {
+		long[] gaps = new long[10001];
+		for (int i = 0; i < gaps.length; i++) {
+			long t = System.nanoTime();
+			gaps[i] = System.nanoTime() - t;
+		}
+		Arrays.sort(gaps);
+		return gaps[gaps.length / 2];
+	}
+
+	//heap bytes this thread has allocated so far, 0 if the jvm cannot tell
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		if (threads instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return 0;
+	}
+
+	//warms up then measures one structure and operation
+	public Result run(Subject subject, Operation operation, int size, Distribution distribution, int threads) {
+		if (workload == null || workload.data.length != size || workload.distribution != distribution)
+			workload = new Workload(size, distribution);
+
+		Worker[] workers = new Worker[threads];
+		for (int i = 0; i < threads; i++)
+			workers[i] = new Worker(subject, operation, workload, i);
+
+		for (int i = 0; i < warmupIterations; i++)
+			iteration(workers, warmupNanos);
+
+		Result result = new Result();
+		result.structure = subject.name;
+		result.operation = operation;
+		result.size = size;
+		result.distribution = distribution;
+		result.threads = threads;
+		result.throughput = new double[iterations];
+		result.allocation = new double[iterations];
+		result.latencies = new long[iterations * threads * MAX_SAMPLES];
+
+		for (int i = 0; i < iterations; i++) {
+			iteration(workers, iterationNanos);
+			long ops = 0;
+			long bytes = 0;
+
+			//each thread's rate adds to the total
+			for (Worker w : workers) {
+				result.throughput[i] += w.ops * 1e9 / w.elapsed;
+				ops += w.ops;
+				bytes += w.allocated;
+				System.arraycopy(w.samples, 0, result.latencies, result.numLatencies, w.numSamples);
+				result.numLatencies += w.numSamples;
+			}
+			result.allocation[i] = (double) bytes / ops;
+		}
+
+		Arrays.sort(result.latencies, 0, result.numLatencies);
+		return result;
+	}
+
+	//runs every worker on its own thread for one iteration, all starting together
+	private void iteration(Worker[] workers, long nanos) {
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] running = new Thread[workers.length];
+
+		for (int i = 0; i < workers.length; i++) {
+			workers[i].start = start;
+			workers[i].deadline = nanos;
+			running[i] = new Thread(workers[i], "benchmark-" + i);
+			running[i].start();
+		}
+		start.countDown();
+
+		for (Thread t : running) {
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		DataStructuresBenchmark bench = new DataStructuresBenchmark();
+		int[] sizes = {1000, 100000};
+		int[] threadCounts = {1};
+		List<Distribution> distributions = Arrays.asList(Distribution.values());
+		List<Operation> operations = Arrays.asList(Operation.values());
+		String filter = null;
+		String resultFile = null;
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+				case "-size": sizes = parseInts(value); break;
+				case "-t": threadCounts = parseInts(value); break;
+				case "-dist": distributions = parseEnums(Distribution.class, value); break;
+				case "-op": operations = parseEnums(Operation.class, value); break;
+				case "-s": filter = value; break;
+				case "-wi": bench.warmupIterations = Integer.parseInt(value); break;
+				case "-i": bench.iterations = Integer.parseInt(value); break;
+				case "-w": bench.warmupNanos = Long.parseLong(value) * 1_000_000L; break;
+				case "-r": bench.iterationNanos = Long.parseLong(value) * 1_000_000L; break;
+				case "-rff": resultFile = value; break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		if (bench.iterations < 1)
+			throw new IllegalArgumentException("Need at least one measured iteration");
+
+		System.out.printf("%-60s %8s %-10s %3s %14s %12s %9s %9s %9s %9s%n", "benchmark", "size", "dist", "thr",
+				"ops/s", "error", "p50 ns", "p99 ns", "p99.9 ns", "B/op");
+
+		List<Result> results = new ArrayList<Result>();
+		for (int size : sizes) {
+			for (Distribution distribution : distributions) {
+				for (Operation operation : operations) {
+					for (int threads : threadCounts) {
+						for (Subject subject : subjects()) {
+							if (!subject.operations.contains(operation)
+									|| (filter != null && !subject.name.contains(filter)))
+								continue;
+
+							Result r = bench.run(subject, operation, size, distribution, threads);
+							results.add(r);
+							print(r);
+						}
+					}
+				}
+			}
+		}
+
+		if (resultFile != null) {
+			try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(resultFile), "UTF-8"))) {
+				bench.writeJson(results, out);
+			}
+			System.out.println("results written to " + resultFile);
+		}
+	}
+
+	private static void print(Result r) {
+		System.out.printf("%-60s %8d %-10s %3d %14.0f %12.0f %9.0f %9.0f %9.0f %9.1f%n", r.benchmarkName(), r.size,
+				r.distribution.name().toLowerCase(), r.threads, r.score(), r.scoreError(), r.latency(0.5),
+				r.latency(0.99), r.latency(0.999), r.bytesPerOp());
+	}
+
+	//same layout as jmh -rf json, so tools that read jmh results can read these
+	public void writeJson(List<Result> results, Writer out) throws IOException {
+		out.write("[\n");
+
+		for (int i = 0; i < results.size(); i++) {
+			Result r = results.get(i);
+			out.write("    {\n");
+			out.write("        \"benchmark\" : " + quote(r.benchmarkName()) + ",\n");
+			out.write("        \"mode\" : \"thrpt\",\n");
+			out.write("        \"threads\" : " + r.threads + ",\n");
+			out.write("        \"forks\" : 1,\n");
+			out.write("        \"warmupIterations\" : " + warmupIterations + ",\n");
+			out.write("        \"warmupTime\" : \"" + warmupNanos / 1_000_000 + " ms\",\n");
+			out.write("        \"measurementIterations\" : " + iterations + ",\n");
+			out.write("        \"measurementTime\" : \"" + iterationNanos / 1_000_000 + " ms\",\n");
+			out.write("        \"params\" : {\n");
+			out.write("            \"size\" : \"" + r.size + "\",\n");
+			out.write("            \"distribution\" : \"" + r.distribution.name().toLowerCase() + "\"\n");
+			out.write("        },\n");
+			out.write("        \"primaryMetric\" : " + metric(r.throughput, "ops/s", null, 0) + ",\n");
+			out.write("        \"secondaryMetrics\" : {\n");
+			out.write("            \"\u00b7gc.alloc.rate.norm\" : " + metric(r.allocation, "B/op", null, 0) + ",\n");
+			out.write("            \"\u00b7latency\" : " + metric(null, "ns/op", r.latencies, r.numLatencies) + "\n");
+			out.write("        }\n");
+			out.write(i + 1 < results.size() ? "    },\n" : "    }\n");
+		}
+		out.write("]\n");
+	}
+
+	//a metric from iteration scores, or from sorted samples when there are no scores
+	private static String metric(double[] scores, String unit, long[] samples, int numSamples) {
+		double score;
+		double error;
+		double[] points = {0, 0.5, 0.9, 0.99, 0.999, 0.9999, 1};
+		double[] percentiles = new double[points.length];
+
+		if (scores != null) {
+			double[] sorted = scores.clone();
+			Arrays.sort(sorted);
+			score = BenchmarkStats.mean(scores);
+			error = BenchmarkStats.errorMargin(scores, CONFIDENCE);
+			for (int i = 0; i < points.length; i++)
+				percentiles[i] = sorted[Math.max(0, (int) Math.ceil(points[i] * sorted.length) - 1)];
+		}
+		else {
+			double[] values = new double[numSamples];
+			for (int i = 0; i < numSamples; i++)
+				values[i] = samples[i];
+			score = BenchmarkStats.mean(values);
+			error = BenchmarkStats.errorMargin(values, CONFIDENCE);
+			for (int i = 0; i < points.length; i++)
+				percentiles[i] = BenchmarkStats.percentile(samples, numSamples, points[i]);
+		}
+
+		StringBuilder json = new StringBuilder("{\n");
+		json.append("                \"score\" : ").append(number(score)).append(",\n");
+		json.append("                \"scoreError\" : ").append(number(error)).append(",\n");
+		json.append("                \"scoreConfidence\" : [ ").append(number(score - error)).append(", ")
+				.append(number(score + error)).append(" ],\n");
+		json.append("                \"scorePercentiles\" : {");
+		for (int i = 0; i < points.length; i++) {
+			json.append(i == 0 ? " " : ", ").append(quote(String.valueOf(points[i] * 100))).append(" : ")
+					.append(number(percentiles[i]));
+		}
+		json.append(" },\n");
+		json.append("                \"scoreUnit\" : ").append(quote(unit));
+
+		//raw iteration scores, one fork
+		if (scores != null) {
+			json.append(",\n                \"rawData\" : [ [ ");
+			for (int i = 0; i < scores.length; i++)
+				json.append(i == 0 ? "" : ", ").append(number(scores[i]));
+			json.append(" ] ]");
+		}
+		json.append("\n            }");
+		return json.toString();
+	}
+
+	//jmh writes values json has no number for as strings
+	private static String number(double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			return quote(String.valueOf(value));
+		return String.valueOf(value);
+	}
+
+	private static String quote(String text) {
+		return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	private static int[] parseInts(String list) {
+		String[] parts = list.split(",");
+		int[] values = new int[parts.length];
+		for (int i = 0; i < parts.length; i++)
+			values[i] = Integer.parseInt(parts[i].trim());
+		return values;
+	}
+
+	private static <T extends Enum<T>> List<T> parseEnums(Class<T> type, String list) {
+		List<T> values = new ArrayList<T>();
+		for (String part : list.split(","))
+			values.add(Enum.valueOf(type, part.trim().toUpperCase()));
+		return values;
+	}
+}
\ No newline at end of file
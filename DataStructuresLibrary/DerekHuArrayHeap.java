@@ -26,7 +26,7 @@ public class DerekHuArrayHeap<E extends Comparable<E>> implements PriorityQueue<
 	public void add(E item) {
 		//array is full
 		if (numElements == data.length) {
-			E[] resize = (E[]) new Object[data.length * 2];
+			E[] resize = (E[]) new Comparable[data.length * 2];
 			
 			//readds everything
 			for (int i = 0; i < numElements; i++)
@@ -98,4 +98,33 @@ public class DerekHuArrayHeap<E extends Comparable<E>> implements PriorityQueue<
 			throw new NoSuchElementException();
 		return data[0];
 	}
+	
+	//number of items in queue
+	public int size() {
+		return numElements;
+	}
+	
+	//items the array can hold before doubling
+	public int capacity() {
+		return data.length;
+	}
+	
+	//fraction of the array in use
+	public double loadFactor() {
+		return MemoryLayout.ratio(numElements, data.length);
+	}
+	
+	//bytes of the heap and its array, not the items
+	public long estimatedBytes() {
+		return MemoryLayout.shallowSize(getClass()) + MemoryLayout.referenceArray(data.length);
+	}
+	
+	//shrinks array down to the items in it
+	public void trimToSize() {
+		E[] resize = (E[]) new Comparable[Math.max(numElements, 1)];
+		
+		for (int i = 0; i < numElements; i++)
+			resize[i] = data[i];
+		data = resize;
+	}
 }
\ No newline at end of file
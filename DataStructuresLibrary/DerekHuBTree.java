@@ -0,0 +1,549 @@
+/*
+ * Derek Hu
+ * Period 6
+ * B+ Tree keeps the same ordered multiset as the Balanced BST but packs many keys into each node's
+ * arrays instead of using one node per key. Every key lives in a leaf, the inner nodes only hold
+ * separators, and the leaves are linked together so a range scan just walks sideways. The fanout
+ * decides how many keys fit in a node, so a search touches log base fanout of n nodes.
+ */
+
+import java.util.*;
+
+public class DerekHuBTree<E extends Comparable<E>> {
+
+	private static final int DEFAULT_FANOUT = 64;
+
+	private Node root;
+	private LeafNode head;				//leftmost leaf, start of every scan
+	private int fanout;					//max children of an inner node and max keys of a leaf
+	private int minLeafKeys;
+	private int minInnerKeys;
+	private int numElements;			//counts duplicates
+	private int numDistinct;
+
+	public DerekHuBTree() {
+		this(DEFAULT_FANOUT);
+	}
+
+	public DerekHuBTree(int fanout) {
+		if (fanout < 4)
+			throw new IllegalArgumentException("Fanout must be at least 4");
+
+		this.fanout = fanout;
+		minLeafKeys = fanout / 2;
+		minInnerKeys = (fanout - 1) / 2;
+		head = new LeafNode();
+		root = head;
+	}
+
+	public boolean isEmpty() {
+		return numElements == 0;
+	}
+
+	//number of items including duplicates
+	public int size() {
+		return numElements;
+	}
+
+	//number of different items
+	public int distinctSize() {
+		return numDistinct;
+	}
+
+	//locates minimum value in tree
+	public E findMin() {
+		if (isEmpty())
+			throw new NoSuchElementException("Tree is empty");
+		return (E) head.keys[0];
+	}
+
+	//locates maximum value in tree
+	public E findMax() {
+		if (isEmpty())
+			throw new NoSuchElementException("Tree is empty");
+
+		Node current = root;
+
+		//farthest right child each level
+		while (current instanceof InnerNode) {
+			InnerNode inner = (InnerNode) current;
+			current = inner.children[inner.size];
+		}
+		LeafNode leaf = (LeafNode) current;
+		return (E) leaf.keys[leaf.size - 1];
+	}
+
+	//checks if item is in the tree
+	public boolean contains(E item) {
+		return count(item) > 0;
+	}
+
+	//number of copies of item in the tree
+	public int count(E item) {
+		LeafNode leaf = findLeaf(item);
+		int index = leaf.search(item);
+
+		if (index < 0)
+			return 0;
+		return leaf.counts[index];
+	}
+
+	//puts item into the leaf it belongs in and splits up the tree if needed
+	public void insert(E item) {
+		Node sibling = root.insert(item);
+
+		//root split so tree grows a level
+		if (sibling != null) {
+			InnerNode newRoot = new InnerNode();
+			newRoot.keys[0] = sibling.lowestKey();
+			newRoot.children[0] = root;
+			newRoot.children[1] = sibling;
+			newRoot.size = 1;
+			root = newRoot;
+		}
+		numElements++;
+	}
+
+	//removes one copy of item and merges nodes that got too small
+	public void remove(E item) {
+		root.remove(item);
+
+		//root lost its last separator so tree shrinks a level
+		if (root instanceof InnerNode && root.size == 0)
+			root = ((InnerNode) root).children[0];
+		numElements--;
+	}
+
+	//every item from low to high inclusive in sorted order, duplicates repeated
+	public Iterable<E> range(E low, E high) {
+		return new Iterable<E>() {
+			public Iterator<E> iterator() {
+				LeafNode leaf = findLeaf(low);
+				int index = leaf.lowerBound(low);
+				return new RangeIterator(leaf, index, high);
+			}
+		};
+	}
+
+	//every item in sorted order, duplicates repeated
+	public Iterator<E> iterator() {
+		return new RangeIterator(head, 0, null);
+	}
+
+	//height of the tree, a single leaf is 1
+	public int height() {
+		int height = 1;
+		Node current = root;
+
+		while (current instanceof InnerNode) {
+			current = ((InnerNode) current).children[0];
+			height++;
+		}
+		return height;
+	}
+
+	//key spots in all the leaves
+	public int capacity() {
+		int leaves = 0;
+		for (LeafNode leaf = head; leaf != null; leaf = leaf.next)
+			leaves++;
+		return leaves * fanout;
+	}
+
+	//fraction of leaf key spots in use
+	public double loadFactor() {
+		return MemoryLayout.ratio(numDistinct, capacity());
+	}
+
+	//bytes of the tree and every node's arrays, not the items
+	public long estimatedBytes() {
+		return MemoryLayout.shallowSize(getClass()) + nodeBytes(root);
+	}
+
+	private long nodeBytes(Node node) {
+		//leaf has keys and counts
+		if (node instanceof LeafNode)
+			return MemoryLayout.shallowSize(LeafNode.class) + MemoryLayout.referenceArray(fanout + 1)
+					+ MemoryLayout.intArray(fanout + 1);
+
+		//inner has keys and children
+		InnerNode inner = (InnerNode) node;
+		long bytes = MemoryLayout.shallowSize(InnerNode.class) + MemoryLayout.referenceArray(fanout)
+				+ MemoryLayout.referenceArray(fanout + 1);
+		for (int i = 0; i <= inner.size; i++)
+			bytes += nodeBytes(inner.children[i]);
+		return bytes;
+	}
+
+	//goes down separators to the only leaf that could hold item
+	private LeafNode findLeaf(E item) {
+		Node current = root;
+
+		while (current instanceof InnerNode) {
+			InnerNode inner = (InnerNode) current;
+			current = inner.children[inner.childIndex(item)];
+		}
+		return (LeafNode) current;
+	}
+
+	//common pieces of leaves and inner nodes
+	public abstract class Node {
+
+		protected Comparable[] keys;
+		protected int size;				//number of keys in use
+
+		//inserts item below this node, returns new right sibling if this node split
+		protected abstract Node insert(E item);
+
+		//removes item below this node
+		protected abstract void remove(E item);
+
+		//smallest key reachable from this node
+		protected abstract Comparable lowestKey();
+
+		//first spot whose key is not less than item
+		protected int lowerBound(E item) {
+			int low = 0;
+			int high = size;
+
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (keys[mid].compareTo(item) < 0)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			return low;
+		}
+
+		//first spot whose key is greater than item
+		protected int upperBound(E item) {
+			int low = 0;
+			int high = size;
+
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (keys[mid].compareTo(item) <= 0)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			return low;
+		}
+	}
+
+	//holds the actual keys and how many copies of each
+	public class LeafNode extends Node {
+
+		private int[] counts;
+		private LeafNode next;
+		private LeafNode previous;
+
+		public LeafNode() {
+			//one extra spot so a full leaf can overflow before splitting
+			keys = new Comparable[fanout + 1];
+			counts = new int[fanout + 1];
+		}
+
+		//index of item or -1
+		protected int search(E item) {
+			int index = lowerBound(item);
+			if (index < size && keys[index].compareTo(item) == 0)
+				return index;
+			return -1;
+		}
+
+		protected Node insert(E item) {
+			int index = lowerBound(item);
+
+			//already here so just count it
+			if (index < size && keys[index].compareTo(item) == 0) {
+				counts[index]++;
+				return null;
+			}
+
+			System.arraycopy(keys, index, keys, index + 1, size - index);
+			System.arraycopy(counts, index, counts, index + 1, size - index);
+			keys[index] = item;
+			counts[index] = 1;
+			size++;
+			numDistinct++;
+
+			if (size > fanout)
+				return split();
+			return null;
+		}
+
+		//moves upper half into a new leaf linked right after this one
+		private LeafNode split() {
+			LeafNode right = new LeafNode();
+			int half = size / 2;
+
+			right.size = size - half;
+			System.arraycopy(keys, half, right.keys, 0, right.size);
+			System.arraycopy(counts, half, right.counts, 0, right.size);
+			Arrays.fill(keys, half, size, null);
+			size = half;
+
+			//links leaves
+			right.next = next;
+			right.previous = this;
+			if (next != null)
+				next.previous = right;
+			next = right;
+
+			return right;
+		}
+
+		protected void remove(E item) {
+			int index = search(item);
+
+			if (index < 0)
+				throw new NoSuchElementException("No Node Found");
+
+			//more than one
+			if (counts[index] > 1) {
+				counts[index]--;
+				return;
+			}
+
+			System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+			System.arraycopy(counts, index + 1, counts, index, size - index - 1);
+			size--;
+			keys[size] = null;
+			numDistinct--;
+		}
+
+		protected Comparable lowestKey() {
+			return keys[0];
+		}
+	}
+
+	//holds separators and children, children[i] has keys below keys[i]
+	public class InnerNode extends Node {
+
+		private Node[] children;
+
+		public InnerNode() {
+			//one extra spot so a full node can overflow before splitting
+			keys = new Comparable[fanout];
+			children = (Node[]) new DerekHuBTree.Node[fanout + 1];
+		}
+
+		//child that could hold item, equal keys go right
+		protected int childIndex(E item) {
+			return upperBound(item);
+		}
+
+		protected Node insert(E item) {
+			int index = childIndex(item);
+			Node sibling = children[index].insert(item);
+
+			//child did not split
+			if (sibling == null)
+				return null;
+
+			System.arraycopy(keys, index, keys, index + 1, size - index);
+			System.arraycopy(children, index + 1, children, index + 2, size - index);
+			keys[index] = sibling.lowestKey();
+			children[index + 1] = sibling;
+			size++;
+
+			if (size > fanout - 1)
+				return split();
+			return null;
+		}
+
+		//middle separator moves up, upper half goes to a new node
+		private InnerNode split() {
+			InnerNode right = new InnerNode();
+			int mid = size / 2;
+
+			right.size = size - mid - 1;
+			System.arraycopy(keys, mid + 1, right.keys, 0, right.size);
+			System.arraycopy(children, mid + 1, right.children, 0, right.size + 1);
+			Arrays.fill(keys, mid, size, null);
+			Arrays.fill(children, mid + 1, size + 1, null);
+			size = mid;
+
+			return right;
+		}
+
+		protected void remove(E item) {
+			int index = childIndex(item);
+			Node child = children[index];
+			child.remove(item);
+
+			//child is too small so borrow or merge
+			if (child instanceof LeafNode && child.size < minLeafKeys)
+				fixLeaf(index);
+			else if (child instanceof InnerNode && child.size < minInnerKeys)
+				fixInner(index);
+		}
+
+		protected Comparable lowestKey() {
+			return children[0].lowestKey();
+		}
+
+		//refills a small leaf from a sibling or merges it with one
+		private void fixLeaf(int index) {
+			LeafNode child = (LeafNode) children[index];
+			LeafNode left = index > 0 ? (LeafNode) children[index - 1] : null;
+			LeafNode right = index < size ? (LeafNode) children[index + 1] : null;
+
+			//borrow largest from left
+			if (left != null && left.size > minLeafKeys) {
+				System.arraycopy(child.keys, 0, child.keys, 1, child.size);
+				System.arraycopy(child.counts, 0, child.counts, 1, child.size);
+				left.size--;
+				child.keys[0] = left.keys[left.size];
+				child.counts[0] = left.counts[left.size];
+				left.keys[left.size] = null;
+				child.size++;
+				keys[index - 1] = child.keys[0];
+			}
+			//borrow smallest from right
+			else if (right != null && right.size > minLeafKeys) {
+				child.keys[child.size] = right.keys[0];
+				child.counts[child.size] = right.counts[0];
+				child.size++;
+				right.size--;
+				System.arraycopy(right.keys, 1, right.keys, 0, right.size);
+				System.arraycopy(right.counts, 1, right.counts, 0, right.size);
+				right.keys[right.size] = null;
+				keys[index] = right.keys[0];
+			}
+			//merge with a neighbor
+			else if (left != null)
+				mergeLeaves(index - 1);
+			else if (right != null)
+				mergeLeaves(index);
+		}
+
+		//pulls children[index + 1] into children[index] and drops it
+		private void mergeLeaves(int index) {
+			LeafNode left = (LeafNode) children[index];
+			LeafNode right = (LeafNode) children[index + 1];
+
+			System.arraycopy(right.keys, 0, left.keys, left.size, right.size);
+			System.arraycopy(right.counts, 0, left.counts, left.size, right.size);
+			left.size += right.size;
+
+			//unlinks right leaf
+			left.next = right.next;
+			if (right.next != null)
+				right.next.previous = left;
+			right.next = null;
+			right.previous = null;
+
+			removeSeparator(index);
+		}
+
+		//refills a small inner node from a sibling or merges it with one
+		private void fixInner(int index) {
+			InnerNode child = (InnerNode) children[index];
+			InnerNode left = index > 0 ? (InnerNode) children[index - 1] : null;
+			InnerNode right = index < size ? (InnerNode) children[index + 1] : null;
+
+			//rotate through separator from left
+			if (left != null && left.size > minInnerKeys) {
+				System.arraycopy(child.keys, 0, child.keys, 1, child.size);
+				System.arraycopy(child.children, 0, child.children, 1, child.size + 1);
+				child.keys[0] = keys[index - 1];
+				child.children[0] = left.children[left.size];
+				child.size++;
+
+				keys[index - 1] = left.keys[left.size - 1];
+				left.keys[left.size - 1] = null;
+				left.children[left.size] = null;
+				left.size--;
+			}
+			//rotate through separator from right
+			else if (right != null && right.size > minInnerKeys) {
+				child.keys[child.size] = keys[index];
+				child.children[child.size + 1] = right.children[0];
+				child.size++;
+
+				keys[index] = right.keys[0];
+				System.arraycopy(right.keys, 1, right.keys, 0, right.size - 1);
+				System.arraycopy(right.children, 1, right.children, 0, right.size);
+				right.keys[right.size - 1] = null;
+				right.children[right.size] = null;
+				right.size--;
+			}
+			//merge with a neighbor
+			else if (left != null)
+				mergeInner(index - 1);
+			else if (right != null)
+				mergeInner(index);
+		}
+
+		//separator comes down between children[index] and children[index + 1]
+		private void mergeInner(int index) {
+			InnerNode left = (InnerNode) children[index];
+			InnerNode right = (InnerNode) children[index + 1];
+
+			left.keys[left.size] = keys[index];
+			System.arraycopy(right.keys, 0, left.keys, left.size + 1, right.size);
+			System.arraycopy(right.children, 0, left.children, left.size + 1, right.size + 1);
+			left.size += right.size + 1;
+
+			removeSeparator(index);
+		}
+
+		//removes keys[index] and the child to its right
+		private void removeSeparator(int index) {
+			System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+			System.arraycopy(children, index + 2, children, index + 1, size - index - 1);
+			size--;
+			keys[size] = null;
+			children[size + 1] = null;
+		}
+	}
+
+	//walks the linked leaves repeating each key by its count
+	private class RangeIterator implements Iterator<E> {
+
+		private LeafNode leaf;
+		private int index;
+		private int repeat;				//copies of current key already given
+		private E high;					//null means no upper end
+
+		public RangeIterator(LeafNode start, int startIndex, E end) {
+			leaf = start;
+			index = startIndex;
+			high = end;
+			skipEmpty();
+		}
+
+		public boolean hasNext() {
+			if (leaf == null)
+				return false;
+			return high == null || leaf.keys[index].compareTo(high) <= 0;
+		}
+
+		public E next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+
+			E toReturn = (E) leaf.keys[index];
+			repeat++;
+
+			//done with every copy of this key
+			if (repeat == leaf.counts[index]) {
+				repeat = 0;
+				index++;
+				skipEmpty();
+			}
+			return toReturn;
+		}
+
+		//moves to the next leaf once this one runs out
+		private void skipEmpty() {
+			while (leaf != null && index >= leaf.size) {
+				leaf = leaf.next;
+				index = 0;
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -10,6 +10,7 @@ import java.util.*;
 public class DerekHuBalancedBST<E extends Comparable<E>> {
 	
 	private TreeNode root;
+	private int numNodes;
 	
 	//takes in a subtree that needs to be balanced and rotates based on needs
 	private TreeNode balance(TreeNode r) {
@@ -83,8 +84,8 @@ public class DerekHuBalancedBST<E extends Comparable<E>> {
 		TreeNode finalRoot = r.right.left;
 		TreeNode newRightSub = r.right;
 		
-		newRightSub.left = finalRoot.left;
-		r.right= finalRoot.left;
+		newRightSub.left = finalRoot.right;
+		r.right = finalRoot.left;
 		
 		finalRoot.right = newRightSub;
 		finalRoot.left = r;
@@ -113,6 +114,24 @@ public class DerekHuBalancedBST<E extends Comparable<E>> {
 		return findMinHelper(r.left);
 	}
 	
+	//checks if item is somewhere in the BST
+	public boolean contains(E item) {
+		TreeNode current = root;
+		
+		//walks down one side each step
+		while (current != null) {
+			int comparison = current.data.compareTo(item);
+			
+			if (comparison == 0)
+				return true;
+			else if (comparison > 0)
+				current = current.left;
+			else
+				current = current.right;
+		}
+		return false;
+	}
+	
 	//puts item into correct in order position in BST
 	public void insert(E item) {
 		root = insertHelper(root, item);
@@ -120,8 +139,10 @@ public class DerekHuBalancedBST<E extends Comparable<E>> {
 	
 	private TreeNode insertHelper(TreeNode r, E item) {
 		//finds insertion spot
-		if (r == null)
+		if (r == null) {
+			numNodes++;
 			return new TreeNode(item, null, null);
+		}
 		
 		int comparison = r.data.compareTo(item);
 		
@@ -159,7 +180,7 @@ public class DerekHuBalancedBST<E extends Comparable<E>> {
 			if (r.count > 1)
 				r.count--;
 			else 
-				return removeNode(r);
+				r = removeNode(r);
 		//less than or greater than current node
 		else if (comparison > 0) 
 			r.left = removeHelper(r.left, item);
@@ -192,21 +213,75 @@ public class DerekHuBalancedBST<E extends Comparable<E>> {
 
 			toRem.data = success.data;
 			toRem.count = succCount;
+			toReturn = toRem;
 		}
 		//left kid
 		else if (!noLeft) {
+			numNodes--;
 			toReturn = toRem.left;
 			toRem.left = null;
 		}
 		//right kid
 		else if (!noRight) {
+			numNodes--;
 			toReturn = toRem.right;
 			toRem.right = null;
 		}
+		//no kids
+		else
+			numNodes--;
 
 		return toReturn;
 	}
 	
+	//one node per different item, duplicates share a node
+	public int capacity() {
+		return numNodes;
+	}
+	
+	//every node is always in use
+	public double loadFactor() {
+		return MemoryLayout.ratio(numNodes, numNodes);
+	}
+	
+	//bytes of the tree and its nodes, not the items
+	public long estimatedBytes() {
+		return MemoryLayout.shallowSize(getClass()) + numNodes * MemoryLayout.shallowSize(TreeNode.class);
+	}
+	
+	//copies each different item smallest first and its number of copies into the arrays, gives back how many
+	int inOrder(Object[] items, int[] counts) {
+		return inOrderHelper(root, items, counts, 0);
+	}
+	
+	private int inOrderHelper(TreeNode r, Object[] items, int[] counts, int next) {
+		if (r == null)
+			return next;
+		
+		next = inOrderHelper(r.left, items, counts, next);
+		items[next] = r.data;
+		counts[next] = r.count;
+		return inOrderHelper(r.right, items, counts, next + 1);
+	}
+	
+	//replaces the tree with n sorted items, each middle item becomes the root so no rotations are needed
+	void buildSorted(E[] items, int[] counts, int n) {
+		root = buildHelper(items, counts, 0, n - 1);
+		numNodes = n;
+	}
+	
+	private TreeNode buildHelper(E[] items, int[] counts, int low, int high) {
+		if (low > high)
+			return null;
+		
+		int middle = (low + high) >>> 1;
+		TreeNode r = new TreeNode(items[middle], buildHelper(items, counts, low, middle - 1),
+				buildHelper(items, counts, middle + 1, high));
+		r.count = counts[middle];
+		r.updateHeight();
+		return r;
+	}
+	
 	//simulates each node on the binary tree
 	public class TreeNode {
 		
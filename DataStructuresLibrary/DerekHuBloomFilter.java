@@ -0,0 +1,256 @@
+/*
+ * Derek Hu
+ * Period 6
+ * This class simulates a blocked counting Bloom filter. It answers "might this item be here" in a small
+ * fixed amount of space. A no is always right, and a yes is wrong about as often as the false positive
+ * rate it was built for. Each item hashes to one 64 byte block, which is one cache line, and sets several
+ * 4 bit counters inside that block, so a check only ever reads one cache line. Counters instead of bits
+ * let items be removed again. A counter that reaches 15 stays there so removing can never cause a false no.
+ * The hash tables use it in front of their buckets so most lookups for missing items stop here.
+ * Checks only read the counters, so any number of threads may check at once as long as nothing is being
+ * added or removed, the same as the tables' own lookups.
+ */
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+public class DerekHuBloomFilter<E> {
+
+	private static final int BLOCK_LONGS = 8;				//64 bytes
+	private static final int COUNTERS_PER_LONG = 16;		//4 bits each
+	private static final int BLOCK_COUNTERS = BLOCK_LONGS * COUNTERS_PER_LONG;
+	private static final int MAX_COUNT = 15;
+	private static final int MAX_HASHES = 16;
+	private static final int MAX_BLOCKS = 1 << 26;
+	private static final int SLOT_BITS = 7;				//picks one of 128 counters
+	private static final int SLOTS_PER_HASH = 64 / SLOT_BITS;
+
+	private long[] counters;
+	private int numBlocks;
+	private int numHashes;
+	private double targetRate;
+
+	//adders so concurrent checks can count without losing updates
+	private LongAdder queries = new LongAdder();
+	private LongAdder negatives = new LongAdder();			//answered no without touching the table
+	private LongAdder falsePositives = new LongAdder();		//answered maybe but the table did not have it
+
+	//sized so the false positive rate is about falsePositiveRate once expectedItems are in
+	public DerekHuBloomFilter(int expectedItems, double falsePositiveRate) {
+		if (expectedItems <= 0)
+			throw new IllegalArgumentException("Expected items must be positive");
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1)
+			throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+
+		targetRate = falsePositiveRate;
+
+		//starts from the size an unblocked filter needs
+		double ln2 = Math.log(2);
+		double counterCount = -expectedItems * Math.log(falsePositiveRate) / (ln2 * ln2);
+		numBlocks = (int) Math.min(MAX_BLOCKS, Math.max(1, Math.ceil(counterCount / BLOCK_COUNTERS)));
+		numHashes = bestHashes(expectedItems);
+
+		//some blocks get more items than others, so grows until the blocked rate is low enough
+		while (numBlocks < MAX_BLOCKS && blockedRate(expectedItems) > falsePositiveRate) {
+			numBlocks = Math.min(MAX_BLOCKS, numBlocks + Math.max(1, numBlocks / 20));
+			numHashes = bestHashes(expectedItems);
+		}
+
+		counters = new long[numBlocks * BLOCK_LONGS];
+	}
+
+	//a loaded snapshot, the counters are used as they were saved
+	DerekHuBloomFilter(long[] savedCounters, int hashes, double falsePositiveRate) {
+		counters = savedCounters;
+		numBlocks = savedCounters.length / BLOCK_LONGS;
+		numHashes = hashes;
+		targetRate = falsePositiveRate;
+	}
+
+	//hashes that give the lowest rate for this many counters per item
+	private int bestHashes(int expectedItems) {
+		double perItem = (double) numBlocks * BLOCK_COUNTERS / expectedItems;
+		return (int) Math.max(1, Math.min(MAX_HASHES, Math.round(perItem * Math.log(2))));
+	}
+
+	//false positive rate with items spread over blocks like a poisson distribution
+	private double blockedRate(int expectedItems) {
+		double mean = (double) expectedItems / numBlocks;
+		double chance = Math.exp(-mean);			//chance a block has exactly i items
+		double rate = 0;
+		int last = (int) (mean + 10 * Math.sqrt(mean) + 20);
+
+		for (int i = 0; i <= last; i++) {
+			double filled = 1 - Math.pow(1 - 1.0 / BLOCK_COUNTERS, (double) numHashes * i);
+			rate += chance * Math.pow(filled, numHashes);
+			chance *= mean / (i + 1);
+		}
+		return rate;
+	}
+
+	//false means item was definitely never added, true means it probably was
+	public boolean mightContain(E item) {
+		queries.increment();
+		long hash = mix(item.hashCode());
+		int base = block(hash) * BLOCK_LONGS;
+
+		//each slot is its own 7 bits of the hash, remixing when a hash runs out
+		long bits = hash;
+		for (int i = 0; i < numHashes; i++) {
+			if (i % SLOTS_PER_HASH == 0)
+				bits = mix(bits + i);
+			int slot = (int) bits & (BLOCK_COUNTERS - 1);
+			bits >>>= SLOT_BITS;
+
+			if (counter(base, slot) == 0) {
+				negatives.increment();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void add(E item) {
+		long hash = mix(item.hashCode());
+		int base = block(hash) * BLOCK_LONGS;
+
+		long bits = hash;
+		for (int i = 0; i < numHashes; i++) {
+			if (i % SLOTS_PER_HASH == 0)
+				bits = mix(bits + i);
+			int slot = (int) bits & (BLOCK_COUNTERS - 1);
+			bits >>>= SLOT_BITS;
+
+			if (counter(base, slot) < MAX_COUNT)
+				change(base, slot, 1);
+		}
+	}
+
+	//only for items that were added, full counters are left alone
+	public void remove(E item) {
+		long hash = mix(item.hashCode());
+		int base = block(hash) * BLOCK_LONGS;
+
+		long bits = hash;
+		for (int i = 0; i < numHashes; i++) {
+			if (i % SLOTS_PER_HASH == 0)
+				bits = mix(bits + i);
+			int slot = (int) bits & (BLOCK_COUNTERS - 1);
+			bits >>>= SLOT_BITS;
+
+			int count = counter(base, slot);
+			if (count > 0 && count < MAX_COUNT)
+				change(base, slot, -1);
+		}
+	}
+
+	//adds every item that is not null, each thread owns a range of blocks so no two write the same counters
+	void addAll(Object[] items, ForkJoinPool pool) {
+		int regions = BulkLoad.regions(pool.getParallelism(), numBlocks);
+		BulkLoad.Groups groups = BulkLoad.partition(items, regions,
+				item -> BulkLoad.regionOf(block(mix(item.hashCode())), regions, numBlocks), pool);
+
+		BulkLoad.forEach(regions, region -> {
+			for (int i = groups.start(region); i < groups.end(region); i++) {
+				long hash = mix(groups.item(i).hashCode());
+				int at = block(hash) * BLOCK_LONGS;
+
+				long bits = hash;
+				for (int j = 0; j < numHashes; j++) {
+					if (j % SLOTS_PER_HASH == 0)
+						bits = mix(bits + j);
+					int slot = (int) bits & (BLOCK_COUNTERS - 1);
+					bits >>>= SLOT_BITS;
+
+					if (counter(at, slot) < MAX_COUNT)
+						change(at, slot, 1);
+				}
+			}
+		}, pool);
+	}
+
+	//the table calls this when the filter said maybe but the item was not there
+	public void recordFalsePositive() {
+		falsePositives.increment();
+	}
+
+	//forgets every item but keeps the counts
+	public void clear() {
+		Arrays.fill(counters, 0);
+	}
+
+	public long queryCount() {
+		return queries.sum();
+	}
+
+	public long negativeCount() {
+		return negatives.sum();
+	}
+
+	public long falsePositiveCount() {
+		return falsePositives.sum();
+	}
+
+	//fraction of lookups the filter answered by itself
+	public double hitRate() {
+		return MemoryLayout.ratio(negativeCount(), queryCount());
+	}
+
+	//of the lookups for missing items, the fraction the filter let through
+	public double falsePositiveRate() {
+		long falsePositive = falsePositiveCount();
+		return MemoryLayout.ratio(falsePositive, falsePositive + negativeCount());
+	}
+
+	//rate the filter was sized for
+	public double expectedFalsePositiveRate() {
+		return targetRate;
+	}
+
+	public int hashCount() {
+		return numHashes;
+	}
+
+	//number of counters
+	public int capacity() {
+		return counters.length * COUNTERS_PER_LONG;
+	}
+
+	public long estimatedBytes() {
+		return MemoryLayout.shallowSize(getClass()) + MemoryLayout.longArray(counters.length);
+	}
+
+	//the counter array itself so a snapshot can write it as is
+	long[] counters() {
+		return counters;
+	}
+
+	public String toString() {
+		return "filter " + capacity() + " counters, " + numHashes + " hashes, " + queryCount() + " queries, hit rate "
+				+ String.format("%.3f", hitRate()) + ", false positive rate " + String.format("%.4f", falsePositiveRate());
+	}
+
+	//top half of the hash scaled to the number of blocks
+	private int block(long hash) {
+		return (int) (((hash >>> 32) * numBlocks) >>> 32);
+	}
+
+	//spreads a hash over all 64 bits
+	private long mix(long h) {
+		h *= 0x9E3779B97F4A7C15L;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		return h ^ (h >>> 33);
+	}
+
+	private int counter(int at, int slot) {
+		return (int) (counters[at + slot / COUNTERS_PER_LONG] >>> (slot % COUNTERS_PER_LONG * 4)) & MAX_COUNT;
+	}
+
+	private void change(int at, int slot, long amount) {
+		counters[at + slot / COUNTERS_PER_LONG] += amount << (slot % COUNTERS_PER_LONG * 4);
+	}
+}
\ No newline at end of file
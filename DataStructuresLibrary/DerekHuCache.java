@@ -0,0 +1,448 @@
+/*
+ * Derek Hu
+ * Period 6
+ * This class simulates a bounded cache. Entries are found through a hash table that uses chaining like
+ * HashChaining, and each entry is also a node in a doubly linked list like the Doubly Linked List, so the
+ * entry to throw out is always at the end of a list. LRU keeps one list in order of last use. LFU keeps
+ * one list per use count, and the lists themselves are linked in order of count. Every get, put, remove
+ * and evict is constant time. The cache is bounded by total weight, which is the number of entries
+ * unless a Weigher is given, and it counts hits, misses and evictions.
+ */
+
+import java.util.*;
+
+public class DerekHuCache<K, V> {
+
+	private static final int INITIAL_BUCKETS = 16;
+
+	public enum Policy { LRU, LFU }
+
+	//how much of the limit an entry uses, never negative
+	public interface Weigher<K, V> {
+		int weigh(K key, V value);
+	}
+
+	private Entry[] table;
+	private int numEntries;
+	private long totalWeight;
+	private long maxWeight;
+	private Policy policy;
+	private Weigher<K, V> weigher;
+
+	//lru order, front is most recently used
+	private Entry mostRecent;
+	private Entry leastRecent;
+
+	//lfu use counts, lowest count first
+	private FrequencyList lowest;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	public DerekHuCache(int maxEntries, Policy policy) {
+		this(maxEntries, policy, null);
+	}
+
+	public DerekHuCache(long maxWeight, Policy policy, Weigher<K, V> weigher) {
+		if (maxWeight <= 0)
+			throw new IllegalArgumentException("Limit must be positive");
+
+		this.maxWeight = maxWeight;
+		this.policy = policy;
+		this.weigher = weigher;
+		table = (Entry[]) new DerekHuCache.Entry[INITIAL_BUCKETS];
+	}
+
+	//gives the value for key and counts it as a use, null if not cached
+	public V get(K key) {
+		Entry e = find(key);
+
+		if (e == null) {
+			misses++;
+			return null;
+		}
+
+		hits++;
+		touch(e);
+		return e.value;
+	}
+
+	//checks for key without counting it as a use
+	public boolean containsKey(K key) {
+		return find(key) != null;
+	}
+
+	//adds or replaces the value for key, then evicts until under the limit
+	public void put(K key, V value) {
+		if (key == null || value == null)
+			throw new NullPointerException();
+
+		int weight = weigher == null ? 1 : weigher.weigh(key, value);
+
+		//a negative weight would lower the total and let the cache grow past the limit
+		if (weight < 0)
+			throw new IllegalArgumentException("Weight must not be negative");
+
+		//could never fit
+		if (weight > maxWeight) {
+			remove(key);
+			return;
+		}
+
+		Entry e = find(key);
+
+		//already cached so update it
+		if (e != null) {
+			totalWeight += weight - e.weight;
+			e.value = value;
+			e.weight = weight;
+			touch(e);
+		}
+		else {
+			e = new Entry(key, value, spread(key.hashCode()), weight);
+			addToTable(e);
+			addToOrder(e);
+			totalWeight += weight;
+		}
+
+		//makes room without throwing out the entry just put
+		while (totalWeight > maxWeight) {
+			Entry victim = victim(e);
+			if (victim == null)
+				break;
+			removeEntry(victim);
+			evictions++;
+		}
+	}
+
+	//takes key out of the cache and gives back its value
+	public V remove(K key) {
+		Entry e = find(key);
+
+		if (e == null)
+			return null;
+
+		removeEntry(e);
+		return e.value;
+	}
+
+	//throws out the entry the policy picks, false if empty
+	public boolean evict() {
+		Entry victim = victim(null);
+
+		if (victim == null)
+			return false;
+
+		removeEntry(victim);
+		evictions++;
+		return true;
+	}
+
+	//empties the cache but keeps the counters
+	public void clear() {
+		Arrays.fill(table, null);
+		numEntries = 0;
+		totalWeight = 0;
+		mostRecent = null;
+		leastRecent = null;
+		lowest = null;
+	}
+
+	public int size() {
+		return numEntries;
+	}
+
+	public long weight() {
+		return totalWeight;
+	}
+
+	public long maxWeight() {
+		return maxWeight;
+	}
+
+	public long hitCount() {
+		return hits;
+	}
+
+	public long missCount() {
+		return misses;
+	}
+
+	public long evictionCount() {
+		return evictions;
+	}
+
+	//number of buckets in the hash index
+	public int capacity() {
+		return table.length;
+	}
+
+	//average entries per bucket
+	public double loadFactor() {
+		return MemoryLayout.ratio(numEntries, table.length);
+	}
+
+	//bytes of the cache, its index and entries, not the keys or values
+	public long estimatedBytes() {
+		long bytes = MemoryLayout.shallowSize(getClass()) + MemoryLayout.referenceArray(table.length)
+				+ numEntries * MemoryLayout.shallowSize(Entry.class);
+
+		for (FrequencyList list = lowest; list != null; list = list.next)
+			bytes += MemoryLayout.shallowSize(FrequencyList.class);
+		return bytes;
+	}
+
+	//hits over all lookups, 0 if there were none
+	public double hitRate() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	public String toString() {
+		return policy + " cache " + numEntries + " entries, weight " + totalWeight + "/" + maxWeight
+				+ ", hits " + hits + ", misses " + misses + ", evictions " + evictions;
+	}
+
+	//looks through the chain in key's bucket
+	private Entry find(K key) {
+		int hash = spread(key.hashCode());
+
+		for (Entry e = table[hash & (table.length - 1)]; e != null; e = e.chainNext) {
+			if (e.hash == hash && e.key.equals(key))
+				return e;
+		}
+		return null;
+	}
+
+	//mixes high bits down so the bucket mask uses all of the hash
+	private int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	private void addToTable(Entry e) {
+		//doubles buckets past 3/4 full
+		if (numEntries + 1 > table.length * 3 / 4)
+			resize();
+
+		int bucket = e.hash & (table.length - 1);
+		e.chainNext = table[bucket];
+		table[bucket] = e;
+		numEntries++;
+	}
+
+	private void resize() {
+		Entry[] old = table;
+		table = (Entry[]) new DerekHuCache.Entry[old.length * 2];
+
+		//relinks every chain into the bigger table
+		for (Entry head : old) {
+			while (head != null) {
+				Entry next = head.chainNext;
+				int bucket = head.hash & (table.length - 1);
+				head.chainNext = table[bucket];
+				table[bucket] = head;
+				head = next;
+			}
+		}
+	}
+
+	private void removeEntry(Entry e) {
+		int bucket = e.hash & (table.length - 1);
+
+		//unlinks from chain
+		if (table[bucket] == e)
+			table[bucket] = e.chainNext;
+		else {
+			Entry current = table[bucket];
+			while (current.chainNext != e)
+				current = current.chainNext;
+			current.chainNext = e.chainNext;
+		}
+		e.chainNext = null;
+
+		removeFromOrder(e);
+		numEntries--;
+		totalWeight -= e.weight;
+	}
+
+	//new entries start most recent, or in the count 1 list
+	private void addToOrder(Entry e) {
+		if (policy == Policy.LRU) {
+			linkFront(e);
+			return;
+		}
+
+		//makes a count 1 list if the lowest is higher
+		if (lowest == null || lowest.frequency != 1) {
+			FrequencyList ones = new FrequencyList(1);
+			ones.next = lowest;
+			if (lowest != null)
+				lowest.previous = ones;
+			lowest = ones;
+		}
+		e.frequency = 1;
+		lowest.addFront(e);
+	}
+
+	private void removeFromOrder(Entry e) {
+		if (policy == Policy.LRU)
+			unlink(e);
+		else {
+			FrequencyList list = e.list;
+			list.remove(e);
+			if (list.isEmpty())
+				unlinkList(list);
+		}
+	}
+
+	//a use moves an lru entry to the front or an lfu entry up one count
+	private void touch(Entry e) {
+		if (policy == Policy.LRU) {
+			if (e != mostRecent) {
+				unlink(e);
+				linkFront(e);
+			}
+			return;
+		}
+
+		FrequencyList list = e.list;
+		FrequencyList higher = list.next;
+
+		//next count up does not have a list yet
+		if (higher == null || higher.frequency != list.frequency + 1) {
+			higher = new FrequencyList(list.frequency + 1);
+			higher.previous = list;
+			higher.next = list.next;
+			if (list.next != null)
+				list.next.previous = higher;
+			list.next = higher;
+		}
+
+		list.remove(e);
+		e.frequency++;
+		higher.addFront(e);
+
+		if (list.isEmpty())
+			unlinkList(list);
+	}
+
+	//least recent entry, or least recent of the lowest count, skipping keep
+	private Entry victim(Entry keep) {
+		if (policy == Policy.LRU) {
+			if (leastRecent != keep)
+				return leastRecent;
+			return keep.previous;
+		}
+
+		for (FrequencyList list = lowest; list != null; list = list.next) {
+			for (Entry e = list.tail; e != null; e = e.previous) {
+				if (e != keep)
+					return e;
+			}
+		}
+		return null;
+	}
+
+	private void linkFront(Entry e) {
+		e.previous = null;
+		e.next = mostRecent;
+		if (mostRecent != null)
+			mostRecent.previous = e;
+		else
+			leastRecent = e;
+		mostRecent = e;
+	}
+
+	private void unlink(Entry e) {
+		if (e.previous != null)
+			e.previous.next = e.next;
+		else
+			mostRecent = e.next;
+
+		if (e.next != null)
+			e.next.previous = e.previous;
+		else
+			leastRecent = e.previous;
+
+		e.next = null;
+		e.previous = null;
+	}
+
+	private void unlinkList(FrequencyList list) {
+		if (list.previous != null)
+			list.previous.next = list.next;
+		else
+			lowest = list.next;
+
+		if (list.next != null)
+			list.next.previous = list.previous;
+
+		list.next = null;
+		list.previous = null;
+	}
+
+	//an entry is both a link in its bucket's chain and a node in a use order list
+	public class Entry {
+		private K key;
+		private V value;
+		private int hash;
+		private int weight;
+		private int frequency;
+		private Entry chainNext;
+		private Entry next;
+		private Entry previous;
+		private FrequencyList list;			//lfu only
+
+		public Entry(K k, V v, int h, int w) {
+			key = k;
+			value = v;
+			hash = h;
+			weight = w;
+		}
+	}
+
+	//entries used the same number of times, most recent at the front
+	public class FrequencyList {
+		private int frequency;
+		private Entry head;
+		private Entry tail;
+		private FrequencyList next;
+		private FrequencyList previous;
+
+		public FrequencyList(int f) {
+			frequency = f;
+		}
+
+		public boolean isEmpty() {
+			return head == null;
+		}
+
+		private void addFront(Entry e) {
+			e.list = this;
+			e.previous = null;
+			e.next = head;
+			if (head != null)
+				head.previous = e;
+			else
+				tail = e;
+			head = e;
+		}
+
+		private void remove(Entry e) {
+			if (e.previous != null)
+				e.previous.next = e.next;
+			else
+				head = e.next;
+
+			if (e.next != null)
+				e.next.previous = e.previous;
+			else
+				tail = e.previous;
+
+			e.next = null;
+			e.previous = null;
+			e.list = null;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,369 @@
+/*
+ * Derek Hu
+ * Period 6
+ * This class simulates a cuckoo hash table. Every item has exactly two buckets it may live in, picked by
+ * two hash functions, and each bucket holds 4 items. Looking an item up only checks those two buckets and
+ * a tiny stash, so contains and remove never take more than a fixed number of steps no matter how full the
+ * table is. Adding puts the item in either bucket if there is room. If both are full it kicks an item out,
+ * which moves to its other bucket and may kick out another, up to a limit. An item still homeless after
+ * that goes in the stash, and if the stash is full the table picks new hash functions, or grows, and puts
+ * everything back in. Items with the same hashCode share both buckets whatever the hash functions are, so
+ * once both buckets are full of them the rest go straight into the stash, which grows to hold them. The
+ * stash is kept in order of hashCode, so even then looking in it is a binary search rather than a scan.
+ * Every rebuild starts the stash at its usual size again, and a rebuild that still fails after
+ * MAX_REBUILDS tries stashes what is left, so adding never loops. It has the same add, contains and remove
+ * as the other hash tables, but it holds each item only once.
+ */
+
+import java.util.*;
+
+public class DerekHuCuckooHash<E> {
+
+	private static final int SLOTS = 4;					//items per bucket
+	private static final int STASH_SIZE = 4;
+	private static final int MAX_KICKS = 256;			//moves tried before using the stash
+	private static final int MAX_REBUILDS = 6;			//new hash functions tried before the stash grows
+	private static final double MAX_LOAD = 0.9;			//grows past this instead of kicking forever
+
+	private Object[] table;					//bucket b is slots b * SLOTS to b * SLOTS + SLOTS - 1
+	private Object[] stash;
+	private int bucketMask;
+	private int numElements;
+	private int stashCount;
+	private long seed;						//changes when the table picks new hash functions
+	private Random rand;
+
+	private long kicks;
+	private long rehashes;
+
+	public DerekHuCuckooHash() {
+		this(16);
+	}
+
+	public DerekHuCuckooHash(int expectedItems) {
+		rand = new Random();
+		seed = rand.nextLong();
+		stash = new Object[STASH_SIZE];
+		makeTable(bucketsFor(expectedItems));
+	}
+
+	//adds item unless it is already here
+	public boolean add(E item) {
+		if (item == null)
+			throw new NullPointerException();
+		if (contains(item))
+			return false;
+
+		if (numElements + 1 > table.length * MAX_LOAD)
+			rebuild(collect(null), (bucketMask + 1) * 2);
+
+		//kicking went in a cycle and the stash is full, new hash functions cannot help an item whose
+		//buckets are full of items with its hashCode
+		Object homeless = place(item);
+		if (homeless != null) {
+			if (sharesBuckets(homeless))
+				overflow(homeless);
+			else
+				rebuild(collect(homeless), bucketMask + 1);
+		}
+
+		numElements++;
+		return true;
+	}
+
+	//checks the item's two buckets and the stash
+	public boolean contains(E item) {
+		return find(item) >= 0 || findInStash(item) >= 0;
+	}
+
+	public boolean remove(E item) {
+		int slot = find(item);
+
+		if (slot >= 0)
+			table[slot] = null;
+		else {
+			int stashed = findInStash(item);
+			if (stashed < 0)
+				return false;
+			unstashAt(stashed);
+		}
+
+		numElements--;
+		if (slot >= 0 && stashCount > 0)
+			unstash();
+		return true;
+	}
+
+	//number of items in table
+	public int size() {
+		return numElements;
+	}
+
+	//number of item slots, not counting the stash
+	public int capacity() {
+		return table.length;
+	}
+
+	//fraction of slots filled
+	public double loadFactor() {
+		return MemoryLayout.ratio(numElements, table.length);
+	}
+
+	//bytes of the table, its slots and stash, not the items
+	public long estimatedBytes() {
+		return MemoryLayout.shallowSize(getClass()) + MemoryLayout.referenceArray(table.length)
+				+ MemoryLayout.referenceArray(stash.length) + MemoryLayout.shallowSize(Random.class);
+	}
+
+	//items moved to their other bucket to make room, over the table's life
+	public long kickCount() {
+		return kicks;
+	}
+
+	//times the table picked new hash functions or grew
+	public long rehashCount() {
+		return rehashes;
+	}
+
+	public int stashSize() {
+		return stashCount;
+	}
+
+	public String toString() {
+		String toReturn = "";
+
+		//every slot then the stash
+		for (Object item : table) {
+			if (item != null)
+				toReturn += item + ",";
+		}
+		for (int i = 0; i < stashCount; i++)
+			toReturn += stash[i] + ",";
+
+		//remove final comma
+		if (!toReturn.equals(""))
+			toReturn = toReturn.substring(0, toReturn.length() - 1);
+
+		return toReturn;
+	}
+
+	//slot holding item in either of its buckets, -1 if neither has it
+	private int find(Object item) {
+		long hash = mix(item.hashCode() + seed);
+		int first = bucket(hash) * SLOTS;
+		int second = otherBucket(hash) * SLOTS;
+
+		for (int i = 0; i < SLOTS; i++) {
+			if (item.equals(table[first + i]))
+				return first + i;
+		}
+		for (int i = 0; i < SLOTS; i++) {
+			if (item.equals(table[second + i]))
+				return second + i;
+		}
+		return -1;
+	}
+
+	//only the items with its hashCode are compared
+	private int findInStash(Object item) {
+		int hash = item.hashCode();
+		for (int i = stashStart(hash); i < stashCount && stash[i].hashCode() == hash; i++) {
+			if (item.equals(stash[i]))
+				return i;
+		}
+		return -1;
+	}
+
+	//where the first stashed item with hash or a bigger hashCode is
+	private int stashStart(int hash) {
+		int low = 0;
+		int high = stashCount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (stash[middle].hashCode() < hash)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	//the stash has room for item
+	private void stashItem(Object item) {
+		int at = stashStart(item.hashCode());
+		System.arraycopy(stash, at, stash, at + 1, stashCount - at);
+		stash[at] = item;
+		stashCount++;
+	}
+
+	private void unstashAt(int index) {
+		System.arraycopy(stash, index + 1, stash, index, stashCount - index - 1);
+		stash[--stashCount] = null;
+	}
+
+	//puts item in, kicking others along, gives back an item that found no room or null
+	private Object place(Object item) {
+		long hash = mix(item.hashCode() + seed);
+		int current = bucket(hash);
+
+		//room in either bucket
+		if (putInBucket(item, current) || putInBucket(item, otherBucket(hash)))
+			return null;
+
+		//takes a random slot and sends what was there to its other bucket
+		for (int kick = 0; kick < MAX_KICKS; kick++) {
+			int slot = current * SLOTS + rand.nextInt(SLOTS);
+			Object kicked = table[slot];
+			table[slot] = item;
+			item = kicked;
+			kicks++;
+
+			long kickedHash = mix(item.hashCode() + seed);
+			int first = bucket(kickedHash);
+			current = first == current ? otherBucket(kickedHash) : first;
+
+			if (putInBucket(item, current))
+				return null;
+		}
+
+		//only the usual stash size, room past it is for items that share both buckets
+		if (stashCount < STASH_SIZE) {
+			stashItem(item);
+			return null;
+		}
+		return item;
+	}
+
+	private boolean putInBucket(Object item, int bucket) {
+		int start = bucket * SLOTS;
+
+		for (int i = start; i < start + SLOTS; i++) {
+			if (table[i] == null) {
+				table[i] = item;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//puts items into a new table with new hash functions and a stash of the usual size, doubling the table
+	//after a few failed tries, and after the last try grows the stash for whatever is left
+	private void rebuild(Object[] items, int buckets) {
+		for (int tries = 1; ; tries++) {
+			seed = rand.nextLong();
+			makeTable(buckets);
+			stash = new Object[STASH_SIZE];
+			stashCount = 0;
+			rehashes++;
+
+			int placed = 0;
+			Object homeless = null;
+			while (homeless == null && placed < items.length) {
+				homeless = place(items[placed++]);
+				if (homeless != null && sharesBuckets(homeless)) {
+					overflow(homeless);
+					homeless = null;
+				}
+			}
+			if (homeless == null)
+				return;
+
+			if (tries == MAX_REBUILDS) {
+				overflow(homeless);
+				while (placed < items.length) {
+					homeless = place(items[placed++]);
+					if (homeless != null)
+						overflow(homeless);
+				}
+				return;
+			}
+
+			if (tries % 3 == 0)
+				buckets *= 2;
+		}
+	}
+
+	//stashes item past the usual stash size, doubling the stash when it is full
+	private void overflow(Object item) {
+		if (stashCount == stash.length)
+			stash = Arrays.copyOf(stash, stash.length * 2);
+		stashItem(item);
+	}
+
+	//both of item's buckets are full of items with its hashCode, which they share under any hash function
+	private boolean sharesBuckets(Object item) {
+		long hash = mix(item.hashCode() + seed);
+		int first = bucket(hash) * SLOTS;
+		int second = otherBucket(hash) * SLOTS;
+		if (first == second)
+			return false;
+
+		for (int i = 0; i < SLOTS; i++) {
+			if (table[first + i] == null || table[first + i].hashCode() != item.hashCode())
+				return false;
+			if (table[second + i] == null || table[second + i].hashCode() != item.hashCode())
+				return false;
+		}
+		return true;
+	}
+
+	//every item in the table and stash, plus extra if it is not null
+	private Object[] collect(Object extra) {
+		Object[] items = new Object[numElements + (extra == null ? 0 : 1)];
+		int count = 0;
+
+		for (Object item : table) {
+			if (item != null)
+				items[count++] = item;
+		}
+		for (int i = 0; i < stashCount; i++)
+			items[count++] = stash[i];
+		if (extra != null)
+			items[count++] = extra;
+
+		return Arrays.copyOf(items, count);
+	}
+
+	//a remove may have opened a slot for a stashed item
+	private void unstash() {
+		for (int i = stashCount - 1; i >= 0; i--) {
+			long hash = mix(stash[i].hashCode() + seed);
+
+			if (putInBucket(stash[i], bucket(hash)) || putInBucket(stash[i], otherBucket(hash)))
+				unstashAt(i);
+		}
+	}
+
+	private void makeTable(int buckets) {
+		table = new Object[buckets * SLOTS];
+		bucketMask = buckets - 1;
+	}
+
+	//power of two buckets with room for expectedItems under the load limit
+	private static int bucketsFor(int expectedItems) {
+		int buckets = 1;
+		while (buckets * SLOTS * MAX_LOAD < expectedItems)
+			buckets <<= 1;
+		return buckets;
+	}
+
+	//first bucket from the low bits
+	private int bucket(long hash) {
+		return (int) hash & bucketMask;
+	}
+
+	//second bucket from the high bits, so the two are independent
+	private int otherBucket(long hash) {
+		return (int) (hash >>> 32) & bucketMask;
+	}
+
+	//spreads a hash over all 64 bits
+	private static long mix(long h) {
+		h *= 0x9E3779B97F4A7C15L;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		return h ^ (h >>> 33);
+	}
+}
\ No newline at end of file
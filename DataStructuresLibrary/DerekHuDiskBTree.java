@@ -0,0 +1,856 @@
+/*
+ * Derek Hu
+ * Period 6
+ * Disk B+ Tree is the same ordered multiset as the B+ Tree but every node is a 4KB page in a memory
+ * mapped file, so the index can be bigger than memory and opening it again is just mapping the file.
+ * A small page cache keeps recently used pages decoded and evicts the least recently used clean page.
+ * Changed pages stay in memory until flush, which writes them to a journal first and then into the
+ * file, so a crash in the middle of a flush leaves either the old tree or the new tree, never half.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+public class DerekHuDiskBTree<E extends Comparable<E>> implements Closeable {
+
+	private static final int PAGE_SIZE = 4096;
+	private static final int PAGE_HEADER = 16;			//type, size, next, checksum
+	private static final int PAGES_PER_SEGMENT = 4096;	//16MB per mapping
+	private static final int MAGIC = 0x44484254;
+	private static final int JOURNAL_MAGIC = 0x44484a4c;
+	private static final int VERSION = 1;
+	private static final int DEFAULT_CACHE_PAGES = 256;
+
+	private static final byte LEAF = 1;
+	private static final byte INNER = 2;
+	private static final byte FREE = 3;
+
+	//reads and writes fixed width keys, built in ones for longs and ints
+	public interface KeyCodec<E> {
+		int width();
+		void write(ByteBuffer buf, E item);
+		E read(ByteBuffer buf);
+	}
+
+	public static final KeyCodec<Long> LONG_KEYS = new KeyCodec<Long>() {
+		public int width() { return 8; }
+		public void write(ByteBuffer buf, Long item) { buf.putLong(item); }
+		public Long read(ByteBuffer buf) { return buf.getLong(); }
+	};
+
+	public static final KeyCodec<Integer> INTEGER_KEYS = new KeyCodec<Integer>() {
+		public int width() { return 4; }
+		public void write(ByteBuffer buf, Integer item) { buf.putInt(item); }
+		public Integer read(ByteBuffer buf) { return buf.getInt(); }
+	};
+
+	private FileChannel channel;
+	private FileChannel journal;
+	private ArrayList<MappedByteBuffer> segments;
+	private KeyCodec<E> codec;
+	private int leafCapacity;
+	private int innerCapacity;
+
+	//header page fields
+	private int rootPage;
+	private int firstLeaf;
+	private int pageCount;
+	private int freeList;
+	private int numElements;
+	private boolean headerDirty;
+
+	//page cache, dirty pages are kept until the next flush
+	private LinkedHashMap<Integer, Page> cache;
+	private HashMap<Integer, Page> dirty;
+	private int cacheCapacity;
+	private long cacheHits;
+	private long cacheMisses;
+	private long evictions;
+
+	//separator pushed up by the last split
+	private E pushedUp;
+
+	public DerekHuDiskBTree(Path file, KeyCodec<E> codec) throws IOException {
+		this(file, codec, DEFAULT_CACHE_PAGES);
+	}
+
+	public DerekHuDiskBTree(Path file, KeyCodec<E> codec, int cachePages) throws IOException {
+		if (cachePages < 8)
+			throw new IllegalArgumentException("Cache must hold at least 8 pages");
+
+		this.codec = codec;
+		cacheCapacity = cachePages;
+		leafCapacity = (PAGE_SIZE - PAGE_HEADER) / (codec.width() + 4);
+		innerCapacity = (PAGE_SIZE - PAGE_HEADER - 4) / (codec.width() + 4);
+		cache = new LinkedHashMap<Integer, Page>(16, 0.75f, true);
+		dirty = new HashMap<Integer, Page>();
+		segments = new ArrayList<MappedByteBuffer>();
+
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		journal = FileChannel.open(file.resolveSibling(file.getFileName() + ".journal"),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		//finishes a flush that was cut off
+		recover();
+
+		//brand new file gets a header and an empty root leaf
+		if (channel.size() == 0) {
+			pageCount = 1;
+			Page root = allocate(LEAF);
+			rootPage = root.number;
+			firstLeaf = root.number;
+			headerDirty = true;
+			flush();
+		}
+		else
+			readHeader();
+	}
+
+	public boolean isEmpty() {
+		return numElements == 0;
+	}
+
+	//number of items including duplicates
+	public int size() {
+		return numElements;
+	}
+
+	//locates minimum value in the index
+	public E findMin() {
+		if (isEmpty())
+			throw new NoSuchElementException("Tree is empty");
+
+		Page leaf = load(firstLeaf);
+
+		//leftmost leaf is only empty when the whole tree is
+		return (E) leaf.keys[0];
+	}
+
+	//checks if item is in the index
+	public boolean contains(E item) {
+		return count(item) > 0;
+	}
+
+	//number of copies of item in the index
+	public int count(E item) {
+		Page leaf = findLeaf(item);
+		int index = leaf.lowerBound(item);
+
+		if (index < leaf.size && leaf.keys[index].compareTo(item) == 0)
+			return leaf.values[index];
+		return 0;
+	}
+
+	//puts item into the leaf it belongs in and splits pages if needed
+	public void insert(E item) {
+		Page root = load(rootPage);
+		Page sibling = insertHelper(root, item);
+
+		//root split so tree grows a level
+		if (sibling != null) {
+			Page newRoot = allocate(INNER);
+			newRoot.keys[0] = pushedUp;
+			newRoot.values[0] = root.number;
+			newRoot.values[1] = sibling.number;
+			newRoot.size = 1;
+			rootPage = newRoot.number;
+		}
+		numElements++;
+		headerDirty = true;
+		afterChange();
+	}
+
+	//removes one copy of item and merges pages that got too small
+	public void remove(E item) {
+		Page root = load(rootPage);
+		removeHelper(root, item);
+
+		//root lost its last separator so tree shrinks a level
+		if (root.type == INNER && root.size == 0) {
+			rootPage = root.values[0];
+			free(root);
+		}
+		numElements--;
+		headerDirty = true;
+		afterChange();
+	}
+
+	//every item from low to high inclusive in sorted order, duplicates repeated
+	public Iterable<E> range(E low, E high) {
+		return new Iterable<E>() {
+			public Iterator<E> iterator() {
+				Page leaf = findLeaf(low);
+				return new RangeIterator(leaf, leaf.lowerBound(low), high);
+			}
+		};
+	}
+
+	public long cacheHits() {
+		return cacheHits;
+	}
+
+	public long cacheMisses() {
+		return cacheMisses;
+	}
+
+	public long evictions() {
+		return evictions;
+	}
+
+	//pages the cache holds before evicting
+	public int capacity() {
+		return cacheCapacity;
+	}
+
+	//fraction of the cache in use
+	public double loadFactor() {
+		return MemoryLayout.ratio(cache.size(), cacheCapacity);
+	}
+
+	//heap bytes of the index and its cached pages, the mapped file is not counted
+	public long estimatedBytes() {
+		int slots = Math.max(leafCapacity, innerCapacity);
+		long pageBytes = MemoryLayout.shallowSize(Page.class) + MemoryLayout.referenceArray(slots + 1)
+				+ MemoryLayout.intArray(slots + 2);
+
+		return MemoryLayout.shallowSize(getClass()) + cache.size() * pageBytes
+				+ segments.size() * MemoryLayout.shallowSize(MappedByteBuffer.class);
+	}
+
+	//bytes of the file on disk
+	public long fileBytes() {
+		return (long) pageCount * PAGE_SIZE;
+	}
+
+	//makes every change so far durable, journal first then the mapped file
+	public void flush() throws IOException {
+		if (dirty.isEmpty() && !headerDirty)
+			return;
+
+		ArrayList<Integer> numbers = new ArrayList<Integer>(dirty.keySet());
+		Collections.sort(numbers);
+		numbers.add(0, 0);
+
+		//encodes every changed page once
+		ArrayList<ByteBuffer> images = new ArrayList<ByteBuffer>();
+		images.add(encodeHeader());
+		for (int i = 1; i < numbers.size(); i++)
+			images.add(encode(dirty.get(numbers.get(i))));
+
+		writeJournal(numbers, images);
+
+		//journal is safe on disk so pages can go in place
+		for (int i = 0; i < numbers.size(); i++)
+			pageBuffer(numbers.get(i)).put(images.get(i));
+		for (MappedByteBuffer segment : segments)
+			segment.force();
+
+		journal.truncate(0);
+		journal.force(true);
+
+		dirty.clear();
+		headerDirty = false;
+		evict();
+	}
+
+	public void close() throws IOException {
+		flush();
+		channel.close();
+		journal.close();
+		cache.clear();
+		segments.clear();
+	}
+
+	//goes down separators to the only leaf that could hold item
+	private Page findLeaf(E item) {
+		Page current = load(rootPage);
+
+		while (current.type == INNER)
+			current = load(current.values[current.upperBound(item)]);
+		return current;
+	}
+
+	private Page insertHelper(Page page, E item) {
+		//leaf
+		if (page.type == LEAF) {
+			int index = page.lowerBound(item);
+
+			//already here so just count it
+			if (index < page.size && page.keys[index].compareTo(item) == 0) {
+				page.values[index]++;
+				markDirty(page);
+				return null;
+			}
+
+			System.arraycopy(page.keys, index, page.keys, index + 1, page.size - index);
+			System.arraycopy(page.values, index, page.values, index + 1, page.size - index);
+			page.keys[index] = item;
+			page.values[index] = 1;
+			page.size++;
+			markDirty(page);
+
+			if (page.size > leafCapacity)
+				return splitLeaf(page);
+			return null;
+		}
+
+		//inner
+		int index = page.upperBound(item);
+		Page sibling = insertHelper(load(page.values[index]), item);
+
+		//child did not split
+		if (sibling == null)
+			return null;
+
+		System.arraycopy(page.keys, index, page.keys, index + 1, page.size - index);
+		System.arraycopy(page.values, index + 1, page.values, index + 2, page.size - index);
+		page.keys[index] = pushedUp;
+		page.values[index + 1] = sibling.number;
+		page.size++;
+		markDirty(page);
+
+		if (page.size > innerCapacity)
+			return splitInner(page);
+		return null;
+	}
+
+	//moves upper half into a new leaf linked right after this one
+	private Page splitLeaf(Page page) {
+		Page right = allocate(LEAF);
+		int half = page.size / 2;
+
+		right.size = page.size - half;
+		System.arraycopy(page.keys, half, right.keys, 0, right.size);
+		System.arraycopy(page.values, half, right.values, 0, right.size);
+		Arrays.fill(page.keys, half, page.size, null);
+		page.size = half;
+
+		right.next = page.next;
+		page.next = right.number;
+
+		pushedUp = (E) right.keys[0];
+		return right;
+	}
+
+	//middle separator moves up, upper half goes to a new page
+	private Page splitInner(Page page) {
+		Page right = allocate(INNER);
+		int mid = page.size / 2;
+
+		right.size = page.size - mid - 1;
+		System.arraycopy(page.keys, mid + 1, right.keys, 0, right.size);
+		System.arraycopy(page.values, mid + 1, right.values, 0, right.size + 1);
+		pushedUp = (E) page.keys[mid];
+		Arrays.fill(page.keys, mid, page.size, null);
+		page.size = mid;
+
+		return right;
+	}
+
+	private void removeHelper(Page page, E item) {
+		//leaf
+		if (page.type == LEAF) {
+			int index = page.lowerBound(item);
+
+			if (index == page.size || page.keys[index].compareTo(item) != 0)
+				throw new NoSuchElementException("No Node Found");
+
+			//more than one
+			if (page.values[index] > 1)
+				page.values[index]--;
+			else {
+				System.arraycopy(page.keys, index + 1, page.keys, index, page.size - index - 1);
+				System.arraycopy(page.values, index + 1, page.values, index, page.size - index - 1);
+				page.size--;
+				page.keys[page.size] = null;
+			}
+			markDirty(page);
+			return;
+		}
+
+		//inner
+		int index = page.upperBound(item);
+		Page child = load(page.values[index]);
+		removeHelper(child, item);
+
+		//child is too small so borrow or merge
+		if (child.type == LEAF && child.size < leafCapacity / 2)
+			fixLeaf(page, index);
+		else if (child.type == INNER && child.size < innerCapacity / 2)
+			fixInner(page, index);
+	}
+
+	//refills a small leaf from a sibling or merges it with one
+	private void fixLeaf(Page parent, int index) {
+		Page child = load(parent.values[index]);
+		Page left = index > 0 ? load(parent.values[index - 1]) : null;
+		Page right = index < parent.size ? load(parent.values[index + 1]) : null;
+		int min = leafCapacity / 2;
+
+		//borrow largest from left
+		if (left != null && left.size > min) {
+			System.arraycopy(child.keys, 0, child.keys, 1, child.size);
+			System.arraycopy(child.values, 0, child.values, 1, child.size);
+			left.size--;
+			child.keys[0] = left.keys[left.size];
+			child.values[0] = left.values[left.size];
+			left.keys[left.size] = null;
+			child.size++;
+			parent.keys[index - 1] = child.keys[0];
+			markDirty(left);
+		}
+		//borrow smallest from right
+		else if (right != null && right.size > min) {
+			child.keys[child.size] = right.keys[0];
+			child.values[child.size] = right.values[0];
+			child.size++;
+			right.size--;
+			System.arraycopy(right.keys, 1, right.keys, 0, right.size);
+			System.arraycopy(right.values, 1, right.values, 0, right.size);
+			right.keys[right.size] = null;
+			parent.keys[index] = right.keys[0];
+			markDirty(right);
+		}
+		//merge with a neighbor
+		else if (left != null)
+			mergeLeaves(parent, index - 1, left, child);
+		else if (right != null)
+			mergeLeaves(parent, index, child, right);
+
+		markDirty(child);
+		markDirty(parent);
+	}
+
+	private void mergeLeaves(Page parent, int index, Page left, Page right) {
+		System.arraycopy(right.keys, 0, left.keys, left.size, right.size);
+		System.arraycopy(right.values, 0, left.values, left.size, right.size);
+		left.size += right.size;
+		left.next = right.next;
+		markDirty(left);
+
+		removeSeparator(parent, index);
+		free(right);
+	}
+
+	//refills a small inner page from a sibling or merges it with one
+	private void fixInner(Page parent, int index) {
+		Page child = load(parent.values[index]);
+		Page left = index > 0 ? load(parent.values[index - 1]) : null;
+		Page right = index < parent.size ? load(parent.values[index + 1]) : null;
+		int min = innerCapacity / 2;
+
+		//rotate through separator from left
+		if (left != null && left.size > min) {
+			System.arraycopy(child.keys, 0, child.keys, 1, child.size);
+			System.arraycopy(child.values, 0, child.values, 1, child.size + 1);
+			child.keys[0] = parent.keys[index - 1];
+			child.values[0] = left.values[left.size];
+			child.size++;
+
+			parent.keys[index - 1] = left.keys[left.size - 1];
+			left.keys[left.size - 1] = null;
+			left.size--;
+			markDirty(left);
+		}
+		//rotate through separator from right
+		else if (right != null && right.size > min) {
+			child.keys[child.size] = parent.keys[index];
+			child.values[child.size + 1] = right.values[0];
+			child.size++;
+
+			parent.keys[index] = right.keys[0];
+			System.arraycopy(right.keys, 1, right.keys, 0, right.size - 1);
+			System.arraycopy(right.values, 1, right.values, 0, right.size);
+			right.keys[right.size - 1] = null;
+			right.size--;
+			markDirty(right);
+		}
+		//merge with a neighbor
+		else if (left != null)
+			mergeInner(parent, index - 1, left, child);
+		else if (right != null)
+			mergeInner(parent, index, child, right);
+
+		markDirty(child);
+		markDirty(parent);
+	}
+
+	//separator comes down between the two pages
+	private void mergeInner(Page parent, int index, Page left, Page right) {
+		left.keys[left.size] = parent.keys[index];
+		System.arraycopy(right.keys, 0, left.keys, left.size + 1, right.size);
+		System.arraycopy(right.values, 0, left.values, left.size + 1, right.size + 1);
+		left.size += right.size + 1;
+		markDirty(left);
+
+		removeSeparator(parent, index);
+		free(right);
+	}
+
+	//removes keys[index] and the child to its right
+	private void removeSeparator(Page parent, int index) {
+		System.arraycopy(parent.keys, index + 1, parent.keys, index, parent.size - index - 1);
+		System.arraycopy(parent.values, index + 2, parent.values, index + 1, parent.size - index - 1);
+		parent.size--;
+		parent.keys[parent.size] = null;
+		markDirty(parent);
+	}
+
+	//takes a page off the free list or grows the file by one
+	private Page allocate(byte type) {
+		int number;
+
+		if (freeList != 0) {
+			number = freeList;
+			freeList = load(number).next;
+		}
+		else
+			number = pageCount++;
+
+		Page page = new Page(number, type);
+		cache.put(number, page);
+		markDirty(page);
+		headerDirty = true;
+		return page;
+	}
+
+	//puts a page on the free list for reuse
+	private void free(Page page) {
+		page.type = FREE;
+		page.size = 0;
+		page.next = freeList;
+		Arrays.fill(page.keys, null);
+		freeList = page.number;
+		headerDirty = true;
+		markDirty(page);
+	}
+
+	private void markDirty(Page page) {
+		dirty.put(page.number, page);
+	}
+
+	//flushes when too many changed pages are pinned, then trims the cache
+	private void afterChange() {
+		try {
+			if (dirty.size() > cacheCapacity)
+				flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		evict();
+	}
+
+	//drops least recently used clean pages until the cache fits
+	private void evict() {
+		Iterator<Map.Entry<Integer, Page>> it = cache.entrySet().iterator();
+
+		while (cache.size() > cacheCapacity && it.hasNext()) {
+			Map.Entry<Integer, Page> eldest = it.next();
+
+			//dirty pages stay until flushed
+			if (!dirty.containsKey(eldest.getKey())) {
+				it.remove();
+				evictions++;
+			}
+		}
+	}
+
+	//gets a page from the cache or decodes it from the mapped file
+	private Page load(int number) {
+		Page page = cache.get(number);
+
+		if (page != null) {
+			cacheHits++;
+			return page;
+		}
+		cacheMisses++;
+
+		page = decode(number);
+		cache.put(number, page);
+		return page;
+	}
+
+	private Page decode(int number) {
+		ByteBuffer buf;
+
+		try {
+			buf = pageBuffer(number);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		if (checksum(buf) != buf.getInt(12))
+			throw new IllegalStateException("Corrupt page " + number);
+
+		Page page = new Page(number, buf.get(0));
+		page.size = buf.getInt(4);
+		page.next = buf.getInt(8);
+		buf.position(PAGE_HEADER);
+
+		//leaf entries are key then count
+		if (page.type == LEAF) {
+			for (int i = 0; i < page.size; i++) {
+				page.keys[i] = codec.read(buf);
+				page.values[i] = buf.getInt();
+			}
+		}
+		//inner is first child then key, child pairs
+		else if (page.type == INNER) {
+			page.values[0] = buf.getInt();
+			for (int i = 0; i < page.size; i++) {
+				page.keys[i] = codec.read(buf);
+				page.values[i + 1] = buf.getInt();
+			}
+		}
+		return page;
+	}
+
+	private ByteBuffer encode(Page page) {
+		ByteBuffer buf = ByteBuffer.allocate(PAGE_SIZE);
+		buf.put(0, page.type);
+		buf.putInt(4, page.size);
+		buf.putInt(8, page.next);
+		buf.position(PAGE_HEADER);
+
+		if (page.type == LEAF) {
+			for (int i = 0; i < page.size; i++) {
+				codec.write(buf, (E) page.keys[i]);
+				buf.putInt(page.values[i]);
+			}
+		}
+		else if (page.type == INNER) {
+			buf.putInt(page.values[0]);
+			for (int i = 0; i < page.size; i++) {
+				codec.write(buf, (E) page.keys[i]);
+				buf.putInt(page.values[i + 1]);
+			}
+		}
+
+		buf.putInt(12, checksum(buf));
+		buf.clear();
+		return buf;
+	}
+
+	private ByteBuffer encodeHeader() {
+		ByteBuffer buf = ByteBuffer.allocate(PAGE_SIZE);
+		buf.putInt(0, MAGIC);
+		buf.putInt(4, VERSION);
+		buf.putInt(16, PAGE_SIZE);
+		buf.putInt(20, codec.width());
+		buf.putInt(24, rootPage);
+		buf.putInt(28, firstLeaf);
+		buf.putInt(32, pageCount);
+		buf.putInt(36, freeList);
+		buf.putInt(40, numElements);
+		buf.putInt(12, checksum(buf));
+		return buf;
+	}
+
+	private void readHeader() throws IOException {
+		ByteBuffer buf = pageBuffer(0);
+
+		if (buf.getInt(0) != MAGIC || checksum(buf) != buf.getInt(12))
+			throw new IOException("Not a disk tree file or header is corrupt");
+		if (buf.getInt(4) != VERSION || buf.getInt(16) != PAGE_SIZE || buf.getInt(20) != codec.width())
+			throw new IOException("File was written with a different version, page size or key width");
+
+		rootPage = buf.getInt(24);
+		firstLeaf = buf.getInt(28);
+		pageCount = buf.getInt(32);
+		freeList = buf.getInt(36);
+		numElements = buf.getInt(40);
+	}
+
+	//crc of a whole page skipping the checksum field itself
+	private int checksum(ByteBuffer page) {
+		CRC32 crc = new CRC32();
+		ByteBuffer view = page.duplicate();
+
+		view.position(0).limit(12);
+		crc.update(view);
+		view.limit(PAGE_SIZE).position(PAGE_HEADER);
+		crc.update(view);
+		return (int) crc.getValue();
+	}
+
+	//page number then page image for every page, then a crc of it all
+	private void writeJournal(ArrayList<Integer> numbers, ArrayList<ByteBuffer> images) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(8 + numbers.size() * (4 + PAGE_SIZE) + 8);
+		buf.putInt(JOURNAL_MAGIC);
+		buf.putInt(numbers.size());
+
+		for (int i = 0; i < numbers.size(); i++) {
+			buf.putInt(numbers.get(i));
+			buf.put(images.get(i).duplicate());
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(buf.array(), 0, buf.position());
+		buf.putLong(crc.getValue());
+		buf.flip();
+
+		journal.truncate(0);
+		journal.position(0);
+		while (buf.hasRemaining())
+			journal.write(buf);
+		journal.force(true);
+	}
+
+	//replays a complete journal, a torn one means the file was never touched
+	private void recover() throws IOException {
+		long length = journal.size();
+		if (length == 0)
+			return;
+
+		ByteBuffer buf = ByteBuffer.allocate((int) length);
+		journal.position(0);
+		while (buf.hasRemaining()) {
+			if (journal.read(buf) < 0)
+				break;
+		}
+		buf.flip();
+
+		boolean complete = false;
+		if (length >= 16 && buf.getInt(0) == JOURNAL_MAGIC) {
+			int count = buf.getInt(4);
+			long expected = 8L + (long) count * (4 + PAGE_SIZE) + 8;
+
+			if (count > 0 && expected == length) {
+				CRC32 crc = new CRC32();
+				crc.update(buf.array(), 0, (int) length - 8);
+				complete = crc.getValue() == buf.getLong((int) length - 8);
+			}
+		}
+
+		if (complete) {
+			int count = buf.getInt(4);
+			buf.position(8);
+
+			for (int i = 0; i < count; i++) {
+				int number = buf.getInt();
+				ByteBuffer image = buf.slice();
+				image.limit(PAGE_SIZE);
+				pageBuffer(number).put(image);
+				buf.position(buf.position() + PAGE_SIZE);
+			}
+			for (MappedByteBuffer segment : segments)
+				segment.force();
+		}
+
+		journal.truncate(0);
+		journal.force(true);
+	}
+
+	//view of one page in the mapped file, maps another segment when needed
+	private ByteBuffer pageBuffer(int number) throws IOException {
+		int segment = number / PAGES_PER_SEGMENT;
+
+		while (segments.size() <= segment) {
+			long start = (long) segments.size() * PAGES_PER_SEGMENT * PAGE_SIZE;
+			segments.add(channel.map(FileChannel.MapMode.READ_WRITE, start, (long) PAGES_PER_SEGMENT * PAGE_SIZE));
+		}
+
+		ByteBuffer view = segments.get(segment).duplicate();
+		int offset = (number % PAGES_PER_SEGMENT) * PAGE_SIZE;
+		view.position(offset).limit(offset + PAGE_SIZE);
+		return view.slice();
+	}
+
+	//walks the linked leaves repeating each key by its count
+	private class RangeIterator implements Iterator<E> {
+
+		private Page leaf;
+		private int index;
+		private int repeat;				//copies of current key already given
+		private E high;
+
+		public RangeIterator(Page start, int startIndex, E end) {
+			leaf = start;
+			index = startIndex;
+			high = end;
+			skipEmpty();
+		}
+
+		public boolean hasNext() {
+			return leaf != null && leaf.keys[index].compareTo(high) <= 0;
+		}
+
+		public E next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+
+			E toReturn = (E) leaf.keys[index];
+			repeat++;
+
+			//done with every copy of this key
+			if (repeat == leaf.values[index]) {
+				repeat = 0;
+				index++;
+				skipEmpty();
+			}
+			return toReturn;
+		}
+
+		//moves to the next leaf once this one runs out
+		private void skipEmpty() {
+			while (leaf != null && index >= leaf.size) {
+				leaf = leaf.next == 0 ? null : load(leaf.next);
+				index = 0;
+			}
+		}
+	}
+
+	//decoded copy of one page, values are counts in a leaf and child pages in an inner page
+	public class Page {
+
+		private int number;
+		private byte type;
+		private int size;
+		private int next;				//right leaf, or next free page
+		private Comparable[] keys;
+		private int[] values;
+
+		public Page(int n, byte t) {
+			number = n;
+			type = t;
+
+			//one extra spot so a full page can overflow before splitting
+			keys = new Comparable[Math.max(leafCapacity, innerCapacity) + 1];
+			values = new int[Math.max(leafCapacity, innerCapacity) + 2];
+		}
+
+		//first spot whose key is not less than item
+		private int lowerBound(E item) {
+			int low = 0;
+			int high = size;
+
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (keys[mid].compareTo(item) < 0)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			return low;
+		}
+
+		//first spot whose key is greater than item
+		private int upperBound(E item) {
+			int low = 0;
+			int high = size;
+
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (keys[mid].compareTo(item) <= 0)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			return low;
+		}
+	}
+}
\ No newline at end of file
@@ -8,10 +8,11 @@
 
 import java.util.*;
 
-public class DerekHuDoublyLinkedList<E> {
+public class DerekHuDoublyLinkedList<E> implements Iterable<E> {
 	private ListNode front;
 	private ListNode end; 
 	private int numElements;
+	private int modCount;		//structural changes, lets iterators fail fast
 	
 	public boolean isEmpty() {
 		return front == null;
@@ -31,6 +32,7 @@ public class DerekHuDoublyLinkedList<E> {
 			front.next.previous = front;
 		}
 		numElements++;
+		modCount++;
 	}
 	
 	//adds a node after a specified index
@@ -42,14 +44,8 @@ public class DerekHuDoublyLinkedList<E> {
 			addLast(item);
 		}
 		else {
-			//iterating up to index and adding
-			ListNode current = front;
-			for (int i = 0; i < index; i++) {
-				current = current.next;
-			}
-			
-			current.next = new ListNode(current, item, current.next);
-			numElements++;
+			//steps from the closer end and adds
+			linkAfter(stepToIndex(index), item);
 		}
 	}
 	
@@ -65,40 +61,23 @@ public class DerekHuDoublyLinkedList<E> {
 			end = new ListNode(end, item, null);
 			end.previous.next = end;
 			numElements++;
+			modCount++;
 		}
 	}
 	
-	//removes a specified item
+	//removes the first occurrence of a specified item, which may be null
 	public void remove(E item) {
 		
-		if (!isEmpty()) {			
-			//remove first item if equal
-			if (front.data.equals(item)) {
-				removeFirst();
-			}
-			//last item if equal
-			else if (end.data.equals(item)) {
-				removeLast();
-			}
-			else {
-				ListNode current = front;
-				
-				//searches until first occurrence is found and removes
-				while (current.next != null) {
-					if (current.next.data.equals(item)) {
-						ListNode toRem = current.next;
-						current.next = current.next.next;
-						current.next.previous = null;
-						toRem.next = null;
-						toRem.next.previous = null;
-						numElements--;
-						return;
-					}
-					current = current.next;
-				}
-				throw new NoSuchElementException("The item was not found");
+		//searches from the front until the first occurrence is found and removes it
+		for (ListNode current = front; current != null; current = current.next) {
+			if (Objects.equals(current.data, item)) {
+				unlink(current);
+				return;
 			}
 		}
+		if (!isEmpty()) {
+			throw new NoSuchElementException("The item was not found");
+		}
 	}
 	
 	//removes the first node
@@ -118,6 +97,7 @@ public class DerekHuDoublyLinkedList<E> {
 				toRem.next = null;
 			}
 			numElements--;
+			modCount++;
 		}
 	}	
 	
@@ -137,6 +117,7 @@ public class DerekHuDoublyLinkedList<E> {
 				toRem.previous = null;
 			}
 			numElements--;
+			modCount++;
 		}
 	}
 	
@@ -145,6 +126,20 @@ public class DerekHuDoublyLinkedList<E> {
 		return numElements;
 	}
 	
+	//a node is made for every item so nothing extra is held
+	public int capacity() {
+		return numElements;
+	}
+	
+	public double loadFactor() {
+		return MemoryLayout.ratio(numElements, capacity());
+	}
+	
+	//bytes of the list and its nodes, not the items
+	public long estimatedBytes() {
+		return MemoryLayout.shallowSize(getClass()) + numElements * MemoryLayout.shallowSize(ListNode.class);
+	}
+	
 	//gives data from node at a certain index
 	public E get(int index) {
 		inBound(index);
@@ -179,6 +174,65 @@ public class DerekHuDoublyLinkedList<E> {
 		}
 	}
 	
+	//walks the list front to end
+	public Iterator<E> iterator() {
+		return new ListItr(0);
+	}
+	
+	//cursor starting before the first node
+	public ListIterator<E> listIterator() {
+		return new ListItr(0);
+	}
+	
+	//cursor starting before the node at index, index can be size for the very end
+	public ListIterator<E> listIterator(int index) {
+		if (index != numElements)
+			inBound(index);
+		return new ListItr(index);
+	}
+	
+	//puts a new node right after pred
+	private ListNode linkAfter(ListNode pred, E item) {
+		if (pred == end) {
+			addLast(item);
+			return end;
+		}
+		
+		ListNode toAdd = new ListNode(pred, item, pred.next);
+		pred.next.previous = toAdd;
+		pred.next = toAdd;
+		numElements++;
+		modCount++;
+		return toAdd;
+	}
+	
+	//puts a new node right before succ
+	private ListNode linkBefore(ListNode succ, E item) {
+		if (succ == front) {
+			addFront(item);
+			return front;
+		}
+		return linkAfter(succ.previous, item);
+	}
+	
+	//cuts a node out and joins its neighbors
+	private void unlink(ListNode toRem) {
+		if (toRem == front) {
+			removeFirst();
+		}
+		else if (toRem == end) {
+			removeLast();
+		}
+		else {
+			toRem.previous.next = toRem.next;
+			toRem.next.previous = toRem.previous;
+			toRem.next = null;
+			toRem.previous = null;
+			numElements--;
+			modCount++;
+		}
+	}
+	
 	//checks the given index is in the list
 	private void inBound(int index) {
 		if (index < 0 || index >= numElements) {
@@ -209,6 +263,130 @@ public class DerekHuDoublyLinkedList<E> {
 		return current;
 	}
 	
+	//cursor that sits between two nodes and edits around itself in constant time
+	public class ListItr implements ListIterator<E> {
+		private ListNode next;				//node the next call to next() gives
+		private ListNode lastReturned;		//node the last next() or previous() gave
+		private int nextIndex;
+		private int expectedModCount;
+		
+		public ListItr(int index) {
+			next = index == numElements ? null : stepToIndex(index);
+			nextIndex = index;
+			expectedModCount = modCount;
+		}
+		
+		public boolean hasNext() {
+			return nextIndex < numElements;
+		}
+		
+		public E next() {
+			checkForComodification();
+			if (!hasNext())
+				throw new NoSuchElementException();
+			
+			lastReturned = next;
+			next = next.next;
+			nextIndex++;
+			return lastReturned.data;
+		}
+		
+		public boolean hasPrevious() {
+			return nextIndex > 0;
+		}
+		
+		public E previous() {
+			checkForComodification();
+			if (!hasPrevious())
+				throw new NoSuchElementException();
+			
+			//stepping back from the very end
+			next = next == null ? end : next.previous;
+			lastReturned = next;
+			nextIndex--;
+			return lastReturned.data;
+		}
+		
+		public int nextIndex() {
+			return nextIndex;
+		}
+		
+		public int previousIndex() {
+			return nextIndex - 1;
+		}
+		
+		//removes the node last given by next() or previous()
+		public void remove() {
+			checkForComodification();
+			if (lastReturned == null)
+				throw new IllegalStateException();
+			
+			//came from previous() so cursor stays put
+			if (next == lastReturned)
+				next = lastReturned.next;
+			else
+				nextIndex--;
+			
+			unlink(lastReturned);
+			lastReturned = null;
+			expectedModCount = modCount;
+		}
+		
+		//changes the data of the node last given by next() or previous()
+		public void set(E item) {
+			checkForComodification();
+			if (lastReturned == null)
+				throw new IllegalStateException();
+			
+			lastReturned.data = item;
+		}
+		
+		//adds at the cursor so next() is unaffected and previous() gives the new item
+		public void add(E item) {
+			checkForComodification();
+			
+			if (next == null)
+				addLast(item);
+			else
+				linkBefore(next, item);
+			
+			nextIndex++;
+			lastReturned = null;
+			expectedModCount = modCount;
+		}
+		
+		//adds right before the node last given by next() or previous()
+		public void addBefore(E item) {
+			checkForComodification();
+			if (lastReturned == null)
+				throw new IllegalStateException();
+			
+			//new node is always in front of the cursor
+			linkBefore(lastReturned, item);
+			nextIndex++;
+			expectedModCount = modCount;
+		}
+		
+		//adds right after the node last given by next() or previous(), next() gives it if going forward
+		public void addAfter(E item) {
+			checkForComodification();
+			if (lastReturned == null)
+				throw new IllegalStateException();
+			
+			ListNode added = linkAfter(lastReturned, item);
+			
+			//going forward so new node is the next one
+			if (next != lastReturned)
+				next = added;
+			expectedModCount = modCount;
+		}
+		
+		private void checkForComodification() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+		}
+	}
+	
 	//represents each spot in the linked list
 	public class ListNode {
 		private E data;
@@ -0,0 +1,417 @@
+/*
+ * Derek Hu
+ * Period 6
+ * This class simulates an Indexable Skip List, a linked list with extra express lanes of links on top of
+ * it. Every link also stores how many items it skips over, so going to an index can take the long links
+ * first and only step down when it would overshoot, which makes get, set, addAfter and removing by index
+ * log(n). It has the same methods as the Doubly Linked List, and adding to either end stays constant time.
+ */
+
+import java.util.*;
+
+public class DerekHuIndexableSkipList<E> implements Iterable<E> {
+
+	private static final int MAX_LEVEL = 32;
+
+	private ListNode head;				//sentinel before the first item, in every level
+	private ListNode[] tails;			//last node in each level, head if the level is empty
+	private int[] tailPos;				//index of each tail, minus frontOffset
+	private int frontOffset;			//added to stored indexes so adding in front shifts them all at once
+	private int levels;					//levels in use, at least 1
+	private int numElements;
+	private int modCount;				//structural changes, lets iterators fail fast
+	private Random rand;
+
+	//last node before the target in each level and its index, filled by search
+	private ListNode[] update;
+	private int[] updatePos;
+
+	public DerekHuIndexableSkipList() {
+		head = new ListNode(null, MAX_LEVEL);
+		tails = (ListNode[]) new DerekHuIndexableSkipList.ListNode[MAX_LEVEL];
+		tailPos = new int[MAX_LEVEL];
+		update = (ListNode[]) new DerekHuIndexableSkipList.ListNode[MAX_LEVEL];
+		updatePos = new int[MAX_LEVEL];
+		Arrays.fill(tails, head);
+		levels = 1;
+		rand = new Random();
+	}
+
+	public boolean isEmpty() {
+		return numElements == 0;
+	}
+
+	//adds an item to the front of the list
+	public void addFront(E item) {
+		int level = randomLevel();
+		ListNode toAdd = new ListNode(item, level);
+		growLevels(level);
+
+		//every stored index moves back one
+		frontOffset++;
+
+		for (int i = 0; i < level; i++) {
+			ListNode next = head.forward[i];
+			toAdd.forward[i] = next;
+
+			//new node skips to where next now is
+			if (next != null)
+				toAdd.width[i] = head.width[i] + frontOffset;
+			else {
+				tails[i] = toAdd;
+				tailPos[i] = -frontOffset;
+			}
+
+			head.forward[i] = toAdd;
+			head.width[i] = -frontOffset;
+		}
+
+		if (toAdd.forward[0] != null)
+			toAdd.forward[0].previous = toAdd;
+		numElements++;
+		modCount++;
+	}
+
+	//adds an item after a specified index
+	public void addAfter(int index, E item) {
+		inBound(index);
+		insertAt(index + 1, item);
+	}
+
+	//adds an item at the end of the list
+	public void addLast(E item) {
+		int level = randomLevel();
+		ListNode toAdd = new ListNode(item, level);
+		growLevels(level);
+
+		if (tails[0] != head)
+			toAdd.previous = tails[0];
+
+		//links the tail of each level the new node reaches
+		for (int i = 0; i < level; i++) {
+			ListNode tail = tails[i];
+
+			if (tail == head)
+				head.width[i] = numElements - frontOffset;
+			else
+				tail.width[i] = numElements - (tailPos[i] + frontOffset);
+
+			tail.forward[i] = toAdd;
+			tails[i] = toAdd;
+			tailPos[i] = numElements - frontOffset;
+		}
+		numElements++;
+		modCount++;
+	}
+
+	//removes the first occurrence of a specified item
+	public void remove(E item) {
+		if (isEmpty())
+			return;
+
+		int index = 0;
+
+		//searches bottom level until first occurrence is found
+		for (ListNode current = head.forward[0]; current != null; current = current.forward[0]) {
+			if (Objects.equals(current.data, item)) {
+				removeAt(index);
+				return;
+			}
+			index++;
+		}
+		throw new NoSuchElementException("The item was not found");
+	}
+
+	//removes the item at a specified index and gives it back
+	public E removeAt(int index) {
+		inBound(index);
+
+		if (index == 0)
+			return removeFront();
+
+		search(index);
+		ListNode toRem = update[0].forward[0];
+
+		for (int i = 0; i < levels; i++) {
+			ListNode prev = update[i];
+
+			//level has the removed node so its link jumps over it
+			if (prev.forward[i] == toRem) {
+				ListNode next = toRem.forward[i];
+
+				if (next != null) {
+					setWidth(prev, i, widthOf(prev, i) + toRem.width[i] - 1);
+					tailPos[i]--;
+				}
+				else {
+					tails[i] = prev;
+					tailPos[i] = updatePos[i] - frontOffset;
+				}
+				prev.forward[i] = next;
+			}
+			//level passes over the removed node
+			else if (prev.forward[i] != null) {
+				setWidth(prev, i, widthOf(prev, i) - 1);
+				tailPos[i]--;
+			}
+		}
+
+		if (toRem.forward[0] != null)
+			toRem.forward[0].previous = toRem.previous;
+		toRem.previous = null;
+
+		shrinkLevels();
+		numElements--;
+		modCount++;
+		return toRem.data;
+	}
+
+	//removes the first item
+	public void removeFirst() {
+		if (!isEmpty())
+			removeFront();
+	}
+
+	//removes the last item
+	public void removeLast() {
+		if (!isEmpty())
+			removeAt(numElements - 1);
+	}
+
+	//number of items in list
+	public int size() {
+		return numElements;
+	}
+
+	//a node is made for every item so nothing extra is held
+	public int capacity() {
+		return numElements;
+	}
+
+	public double loadFactor() {
+		return MemoryLayout.ratio(numElements, capacity());
+	}
+
+	//bytes of the list, its nodes and each node's link arrays, not the items
+	public long estimatedBytes() {
+		long bytes = MemoryLayout.shallowSize(getClass()) + 2 * MemoryLayout.referenceArray(MAX_LEVEL)
+				+ 2 * MemoryLayout.intArray(MAX_LEVEL);
+		long nodeBytes = MemoryLayout.shallowSize(ListNode.class);
+
+		//head is a node in every level
+		for (ListNode current = head; current != null; current = current.forward[0]) {
+			bytes += nodeBytes + MemoryLayout.referenceArray(current.forward.length)
+					+ MemoryLayout.intArray(current.width.length);
+		}
+		return bytes;
+	}
+
+	//gives the item at a certain index
+	public E get(int index) {
+		inBound(index);
+		return findNode(index).data;
+	}
+
+	//changes the item at a certain index
+	public void set(int index, E item) {
+		inBound(index);
+		findNode(index).data = item;
+	}
+
+	//displays list front to end
+	public void printForward() {
+		for (ListNode current = head.forward[0]; current != null; current = current.forward[0])
+			System.out.println(current.data);
+	}
+
+	//displays list end to front
+	public void printBackward() {
+		if (isEmpty())
+			return;
+
+		for (ListNode current = tails[0]; current != null; current = current.previous)
+			System.out.println(current.data);
+	}
+
+	//walks the bottom level front to end
+	public Iterator<E> iterator() {
+		return new Iterator<E>() {
+			private ListNode next = head.forward[0];
+			private int expectedModCount = modCount;
+
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			public E next() {
+				if (modCount != expectedModCount)
+					throw new ConcurrentModificationException();
+				if (next == null)
+					throw new NoSuchElementException();
+
+				E toReturn = next.data;
+				next = next.forward[0];
+				return toReturn;
+			}
+		};
+	}
+
+	//puts a new node at index, the end cases skip the search
+	private void insertAt(int index, E item) {
+		if (index == 0) {
+			addFront(item);
+			return;
+		}
+		if (index == numElements) {
+			addLast(item);
+			return;
+		}
+
+		search(index);
+		int level = randomLevel();
+		ListNode toAdd = new ListNode(item, level);
+
+		//new levels start from the head
+		for (int i = levels; i < level; i++) {
+			update[i] = head;
+			updatePos[i] = -1;
+		}
+		growLevels(level);
+
+		for (int i = 0; i < levels; i++) {
+			ListNode prev = update[i];
+			ListNode next = prev.forward[i];
+
+			//level gets the new node
+			if (i < level) {
+				if (next != null) {
+					toAdd.width[i] = updatePos[i] + widthOf(prev, i) + 1 - index;
+					tailPos[i]++;
+				}
+				else {
+					tails[i] = toAdd;
+					tailPos[i] = index - frontOffset;
+				}
+				toAdd.forward[i] = next;
+				prev.forward[i] = toAdd;
+				setWidth(prev, i, index - updatePos[i]);
+			}
+			//level passes over the new node
+			else if (next != null) {
+				setWidth(prev, i, widthOf(prev, i) + 1);
+				tailPos[i]++;
+			}
+		}
+
+		toAdd.previous = update[0];
+		toAdd.forward[0].previous = toAdd;
+		numElements++;
+		modCount++;
+	}
+
+	//unlinks the first node, stored indexes all move forward one at once
+	private E removeFront() {
+		ListNode toRem = head.forward[0];
+		frontOffset--;
+
+		//first node is the head's link in every level it has
+		for (int i = 0; i < toRem.forward.length; i++) {
+			ListNode next = toRem.forward[i];
+			head.forward[i] = next;
+
+			if (next != null)
+				head.width[i] = toRem.width[i] - 1 - frontOffset;
+			else
+				tails[i] = head;
+		}
+
+		if (head.forward[0] != null)
+			head.forward[0].previous = null;
+
+		shrinkLevels();
+		numElements--;
+		modCount++;
+		return toRem.data;
+	}
+
+	//finds the last node before index in every level
+	private void search(int index) {
+		ListNode current = head;
+		int pos = -1;
+
+		for (int i = levels - 1; i >= 0; i--) {
+			//takes the link as long as it lands before index
+			while (current.forward[i] != null && pos + widthOf(current, i) < index) {
+				pos += widthOf(current, i);
+				current = current.forward[i];
+			}
+			update[i] = current;
+			updatePos[i] = pos;
+		}
+	}
+
+	//goes down the levels to the node at index
+	private ListNode findNode(int index) {
+		ListNode current = head;
+		int pos = -1;
+
+		for (int i = levels - 1; i >= 0; i--) {
+			while (current.forward[i] != null && pos + widthOf(current, i) <= index) {
+				pos += widthOf(current, i);
+				current = current.forward[i];
+			}
+		}
+		return current;
+	}
+
+	//items skipped by the link out of node in a level, the head's are stored as its link's index
+	private int widthOf(ListNode node, int level) {
+		if (node == head)
+			return head.width[level] + frontOffset + 1;
+		return node.width[level];
+	}
+
+	private void setWidth(ListNode node, int level, int width) {
+		if (node == head)
+			head.width[level] = width - 1 - frontOffset;
+		else
+			node.width[level] = width;
+	}
+
+	//coin flips, each level up is half as likely
+	private int randomLevel() {
+		return Integer.numberOfTrailingZeros(rand.nextInt() | (1 << (MAX_LEVEL - 1))) + 1;
+	}
+
+	private void growLevels(int level) {
+		if (level > levels)
+			levels = level;
+	}
+
+	//drops empty top levels
+	private void shrinkLevels() {
+		while (levels > 1 && head.forward[levels - 1] == null)
+			levels--;
+	}
+
+	//checks the given index is in the list
+	private void inBound(int index) {
+		if (index < 0 || index >= numElements) {
+			throw new IndexOutOfBoundsException("Index is not in bounds");
+		}
+	}
+
+	//represents each spot in the list with a link and width for every level it is in
+	public class ListNode {
+		private E data;
+		private ListNode[] forward;
+		private int[] width;
+		private ListNode previous;		//bottom level only
+
+		public ListNode(E d, int level) {
+			data = d;
+			forward = (ListNode[]) new DerekHuIndexableSkipList.ListNode[level];
+			width = new int[level];
+		}
+	}
+}
\ No newline at end of file
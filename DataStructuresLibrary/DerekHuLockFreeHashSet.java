@@ -0,0 +1,384 @@
+/*
+ * Derek Hu
+ * Period 6
+ * This class simulates a hash set many threads can use at once without locks, after Cliff Click's
+ * non-blocking hash map. It is open addressing with linear probing like HashProbing, but every slot is a
+ * key and a value that only change by compare and swap. A key, once claimed in a slot, never leaves that
+ * slot, and removing only swaps the value to a tombstone, so a probe never loses its way. When the table
+ * fills up a bigger one is made, and every thread that touches the set helps move slots over a chunk at a
+ * time. A slot being moved has its value boxed so no thread can change it in the old table, which sends
+ * them on to the new one. No thread ever waits on another, so a thread that stalls cannot hold up the rest.
+ */
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+public class DerekHuLockFreeHashSet<E> {
+
+	private static final int MIN_SIZE = 16;
+	private static final int COPY_CHUNK = 1024;		//slots a helping thread moves at a time
+
+	private static final Object PRESENT = new Object();
+	private static final Object TOMBSTONE = new Object();		//value of a removed key
+	private static final Object DEAD_KEY = new Object();		//empty key slot closed off during a move
+	private static final Prime MOVED = new Prime(TOMBSTONE);	//slot is done being moved
+
+	private static final Object MATCH_ABSENT = new Object();		//what putIfMatch expects to find
+	private static final Object MATCH_NEVER_SET = new Object();
+
+	private AtomicReference<Table> top;
+	private LongAdder size = new LongAdder();
+	private AtomicInteger resizes = new AtomicInteger();
+
+	public DerekHuLockFreeHashSet() {
+		this(MIN_SIZE);
+	}
+
+	public DerekHuLockFreeHashSet(int expectedItems) {
+		int length = MIN_SIZE;
+		while (length < expectedItems * 2)
+			length *= 2;
+		top = new AtomicReference<Table>(new Table(length));
+	}
+
+	//adds item, false if it was already here
+	public boolean add(E item) {
+		return putIfMatch(top.get(), item, PRESENT, MATCH_ABSENT, false) != PRESENT;
+	}
+
+	//removes item, false if it was not here
+	public boolean remove(E item) {
+		return putIfMatch(top.get(), item, TOMBSTONE, PRESENT, false) == PRESENT;
+	}
+
+	public boolean contains(E item) {
+		return get(top.get(), item);
+	}
+
+	//number of items, exact once no thread is changing the set
+	public int size() {
+		return size.intValue();
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	//slots in the newest table
+	public int capacity() {
+		Table t = top.get();
+		while (t.next() != null)
+			t = t.next();
+		return t.length;
+	}
+
+	public double loadFactor() {
+		return MemoryLayout.ratio(size(), capacity());
+	}
+
+	//bytes of the set and every table still linked, not the items
+	public long estimatedBytes() {
+		long bytes = MemoryLayout.shallowSize(getClass()) + MemoryLayout.shallowSize(AtomicReference.class)
+				+ MemoryLayout.shallowSize(LongAdder.class) + MemoryLayout.shallowSize(AtomicInteger.class);
+
+		for (Table t = top.get(); t != null; t = t.next()) {
+			bytes += MemoryLayout.shallowSize(Table.class) + MemoryLayout.shallowSize(AtomicReferenceArray.class)
+					+ MemoryLayout.referenceArray(2 * t.length) + 3 * MemoryLayout.shallowSize(AtomicInteger.class);
+		}
+		return bytes;
+	}
+
+	//tables made to grow or clean out tombstones
+	public int resizeCount() {
+		return resizes.get();
+	}
+
+	//items in no particular order, a set changing underneath may or may not show its changes
+	public List<E> snapshot() {
+		ArrayList<E> items = new ArrayList<E>();
+		Table t = top.get();
+		while (t.next() != null)
+			t = helpCopyAll(t);
+
+		for (int i = 0; i < t.length; i++) {
+			Object key = t.key(i);
+			if (key != null && key != DEAD_KEY && contains((E) key))
+				items.add((E) key);
+		}
+		return items;
+	}
+
+	public String toString() {
+		String toReturn = "";
+
+		//prints each item
+		for (E item : snapshot())
+			toReturn += item + ",";
+
+		//remove final comma
+		if (!toReturn.equals(""))
+			toReturn = toReturn.substring(0, toReturn.length() - 1);
+
+		return toReturn;
+	}
+
+	//looks for item in t, following it to newer tables while they are being filled
+	private boolean get(Table t, Object item) {
+		int mask = t.length - 1;
+		int index = spread(item.hashCode()) & mask;
+
+		for (int probes = 0; ; probes++) {
+			Object key = t.key(index);
+
+			//never claimed, so it was never added to this table
+			if (key == null)
+				return false;
+
+			if (key == item || key.equals(item)) {
+				Object value = t.value(index);
+				if (!(value instanceof Prime))
+					return value == PRESENT;
+
+				//slot is being moved so the newer table has the answer
+				copySlotAndCheck(t, index);
+				return get(helpCopy(t), item);
+			}
+
+			//probed too far or hit a closed slot, if it is anywhere it is in the newer table
+			if (probes >= reprobeLimit(t.length) || key == DEAD_KEY)
+				return t.next() != null && get(helpCopy(t), item);
+
+			index = (index + 1) & mask;
+		}
+	}
+
+	//sets item's value to put if its value matches expect, gives back the value it had before
+	private Object putIfMatch(Table t, Object item, Object put, Object expect, boolean moving) {
+		int mask = t.length - 1;
+		int index = spread(item.hashCode()) & mask;
+		int probes = 0;
+
+		//finds item's slot or claims an empty one
+		while (true) {
+			Object key = t.key(index);
+
+			if (key == null) {
+				//removing an item that was never here
+				if (put == TOMBSTONE)
+					return TOMBSTONE;
+
+				if (t.casKey(index, null, item)) {
+					t.slotsUsed.incrementAndGet();
+					break;
+				}
+				key = t.key(index);
+			}
+
+			if (key == item || key.equals(item))
+				break;
+
+			//no room along this probe, goes to a bigger table
+			if (++probes >= reprobeLimit(t.length) || key == DEAD_KEY) {
+				if (put == TOMBSTONE && t.next() == null)
+					return TOMBSTONE;
+
+				Table newer = resize(t);
+				if (!moving)
+					helpCopy(t);
+				return putIfMatch(newer, item, put, expect, moving);
+			}
+			index = (index + 1) & mask;
+		}
+
+		while (true) {
+			Object value = t.value(index);
+
+			//a new slot in a table that is filling up starts a resize
+			if (value == null && tableFull(t, probes))
+				resize(t);
+
+			//while a newer table exists every change goes there, after this slot is moved over
+			if (value instanceof Prime || t.next() != null) {
+				copySlotAndCheck(t, index);
+				Table newer = moving ? t.next() : helpCopy(t);
+				return putIfMatch(newer, item, put, expect, moving);
+			}
+
+			if (expect == MATCH_NEVER_SET && value != null)
+				return value;
+			if (expect == MATCH_ABSENT && value == PRESENT)
+				return value;
+			if (expect == PRESENT && value != PRESENT)
+				return value == null ? TOMBSTONE : value;
+			if (value == put)
+				return value;
+
+			if (t.casValue(index, value, put)) {
+				//moving an item over does not change the size
+				if (!moving) {
+					if (put == PRESENT)
+						size.increment();
+					else if (value == PRESENT)
+						size.decrement();
+				}
+				return value;
+			}
+			//value changed, looks again
+		}
+	}
+
+	//freezes slot index of old and copies it into newer, true if this thread finished the slot
+	private boolean copySlot(Table old, int index, Table newer) {
+		//closes empty key slots so nothing new lands in the old table
+		Object key;
+		while ((key = old.key(index)) == null)
+			old.casKey(index, null, DEAD_KEY);
+
+		//boxes the value so it can no longer change here
+		Object value = old.value(index);
+		while (!(value instanceof Prime)) {
+			Prime box = value == null || value == TOMBSTONE ? MOVED : new Prime(value);
+			if (old.casValue(index, value, box)) {
+				if (box == MOVED)
+					return true;
+				value = box;
+				break;
+			}
+			value = old.value(index);
+		}
+		if (value == MOVED)
+			return false;
+
+		//a newer change already in the new table wins over the copy
+		putIfMatch(newer, key, PRESENT, MATCH_NEVER_SET, true);
+
+		while (value != MOVED) {
+			if (old.casValue(index, value, MOVED))
+				return true;
+			value = old.value(index);
+		}
+		return false;
+	}
+
+	//moves one slot and counts it if this thread finished it
+	private void copySlotAndCheck(Table t, int index) {
+		if (copySlot(t, index, t.next())) {
+			t.copyDone.incrementAndGet();
+			promote(t);
+		}
+	}
+
+	//makes the next table if no thread has yet
+	private Table resize(Table t) {
+		if (t.next() != null)
+			return t.next();
+
+		//grows when mostly live items, same size when mostly tombstones
+		int live = size();
+		int length = t.length;
+		if (live >= t.length / 4)
+			length = t.length * 2;
+		if (live >= t.length / 2)
+			length = t.length * 4;
+
+		if (t.next.compareAndSet(null, new Table(length)))
+			resizes.incrementAndGet();
+		return t.next();
+	}
+
+	//moves one chunk of t into its next table, gives back the next table
+	private Table helpCopy(Table t) {
+		Table newer = t.next();
+
+		if (t.copyDone.get() < t.length) {
+			//chunks wrap around so a stalled helper's chunk gets done by someone else
+			int start = t.copyIndex.getAndAdd(COPY_CHUNK) & (t.length - 1);
+			int end = Math.min(start + COPY_CHUNK, t.length);
+			int done = 0;
+
+			for (int i = start; i < end; i++) {
+				if (copySlot(t, i, newer))
+					done++;
+			}
+			if (done > 0)
+				t.copyDone.addAndGet(done);
+		}
+		promote(t);
+		return newer;
+	}
+
+	//finishes moving every slot of t, used when a full pass is needed
+	private Table helpCopyAll(Table t) {
+		while (t.copyDone.get() < t.length)
+			helpCopy(t);
+		promote(t);
+		return t.next();
+	}
+
+	//makes the newer table the top once every slot is moved, and again if that one is done too
+	private void promote(Table t) {
+		while (t.next() != null && t.copyDone.get() == t.length && top.compareAndSet(t, t.next()))
+			t = t.next();
+	}
+
+	//claimed slots past about a quarter of the table with a long probe means it is time to grow
+	private boolean tableFull(Table t, int probes) {
+		return probes >= 10 && t.slotsUsed.get() >= reprobeLimit(t.length);
+	}
+
+	private static int reprobeLimit(int length) {
+		return 10 + (length >> 2);
+	}
+
+	//mixes high bits down so the mask uses all of the hash
+	private static int spread(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x85EBCA6B;
+		return hash ^ (hash >>> 13);
+	}
+
+	//keys and values side by side, key of slot i at 2i and value at 2i + 1
+	private static class Table {
+		private final int length;
+		private final AtomicReferenceArray<Object> slots;
+		private final AtomicInteger slotsUsed = new AtomicInteger();
+		private final AtomicInteger copyIndex = new AtomicInteger();
+		private final AtomicInteger copyDone = new AtomicInteger();
+		private final AtomicReference<Table> next = new AtomicReference<Table>();
+
+		private Table(int n) {
+			length = n;
+			slots = new AtomicReferenceArray<Object>(2 * n);
+		}
+
+		//newer table being filled from this one, null if none
+		private Table next() {
+			return next.get();
+		}
+
+		private Object key(int i) {
+			return slots.get(2 * i);
+		}
+
+		private Object value(int i) {
+			return slots.get(2 * i + 1);
+		}
+
+		private boolean casKey(int i, Object expect, Object update) {
+			return slots.compareAndSet(2 * i, expect, update);
+		}
+
+		private boolean casValue(int i, Object expect, Object update) {
+			return slots.compareAndSet(2 * i + 1, expect, update);
+		}
+	}
+
+	//a value frozen while its slot is moved
+	private static class Prime {
+		private final Object value;
+
+		private Prime(Object v) {
+			value = v;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,287 @@
+/*
+ * Derek Hu
+ * Period 6
+ * Persistent Balanced Binary Search Tree never changes a node once it is made. An insert or remove copies
+ * only the nodes on the path from the root to the change and shares every other subtree with the old
+ * version, so each change makes a new version in log(n) time. Readers grab the newest version with one
+ * read and can search or iterate it without locks while the writer keeps making new versions.
+ */
+
+import java.util.*;
+
+public class DerekHuPersistentBST<E extends Comparable<E>> {
+
+	//newest version, readers only ever read this once
+	private volatile Snapshot current;
+
+	public DerekHuPersistentBST() {
+		current = new Snapshot(null, 0);
+	}
+
+	//newest version of the tree, stays the same no matter what the writer does next
+	public Snapshot snapshot() {
+		return current;
+	}
+
+	public boolean isEmpty() {
+		return current.isEmpty();
+	}
+
+	public int size() {
+		return current.size();
+	}
+
+	//locates minimum value in newest version
+	public E findMin() {
+		return current.findMin();
+	}
+
+	public boolean contains(E item) {
+		return current.contains(item);
+	}
+
+	//nodes in the newest version, duplicates share a node
+	public int capacity() {
+		return countNodes(current.root);
+	}
+
+	//every node is always in use
+	public double loadFactor() {
+		int nodes = capacity();
+		return MemoryLayout.ratio(nodes, nodes);
+	}
+
+	//bytes of the newest version, older snapshots share most of it so they are not counted
+	public long estimatedBytes() {
+		return MemoryLayout.shallowSize(getClass()) + MemoryLayout.shallowSize(Snapshot.class)
+				+ countNodes(current.root) * MemoryLayout.shallowSize(TreeNode.class);
+	}
+
+	private int countNodes(TreeNode r) {
+		if (r == null)
+			return 0;
+		return 1 + countNodes(r.left) + countNodes(r.right);
+	}
+
+	//puts item in a new version and publishes it
+	public synchronized Snapshot insert(E item) {
+		Snapshot old = current;
+		Snapshot newVersion = new Snapshot(insertHelper(old.root, item), old.size + 1);
+		current = newVersion;
+		return newVersion;
+	}
+
+	//removes item in a new version and publishes it
+	public synchronized Snapshot remove(E item) {
+		Snapshot old = current;
+		Snapshot newVersion = new Snapshot(removeHelper(old.root, item), old.size - 1);
+		current = newVersion;
+		return newVersion;
+	}
+
+	private TreeNode insertHelper(TreeNode r, E item) {
+		//finds insertion spot
+		if (r == null)
+			return new TreeNode(item, 1, null, null);
+
+		int comparison = r.data.compareTo(item);
+
+		//sees if item is equal, less, or greater than current
+		if (comparison == 0)
+			return new TreeNode(r.data, r.count + 1, r.left, r.right);
+		else if (comparison > 0)
+			return balance(r.data, r.count, insertHelper(r.left, item), r.right);
+		else
+			return balance(r.data, r.count, r.left, insertHelper(r.right, item));
+	}
+
+	private TreeNode removeHelper(TreeNode r, E item) {
+		if (r == null)
+			throw new NoSuchElementException("No Node Found");
+
+		int comparison = r.data.compareTo(item);
+
+		//less than or greater than current node
+		if (comparison > 0)
+			return balance(r.data, r.count, removeHelper(r.left, item), r.right);
+		else if (comparison < 0)
+			return balance(r.data, r.count, r.left, removeHelper(r.right, item));
+
+		//more than one
+		if (r.count > 1)
+			return new TreeNode(r.data, r.count - 1, r.left, r.right);
+
+		//0 or 1 kids
+		if (r.left == null)
+			return r.right;
+		if (r.right == null)
+			return r.left;
+
+		//2 kids, successor takes this spot with all its copies
+		TreeNode success = findMinHelper(r.right);
+		return balance(success.data, success.count, r.left, removeMinNode(r.right));
+	}
+
+	//copies path to the minimum node without it
+	private TreeNode removeMinNode(TreeNode r) {
+		if (r.left == null)
+			return r.right;
+		return balance(r.data, r.count, removeMinNode(r.left), r.right);
+	}
+
+	private TreeNode findMinHelper(TreeNode r) {
+		if (r == null)
+			return null;
+
+		//farthest left node
+		while (r.left != null)
+			r = r.left;
+		return r;
+	}
+
+	//builds a new node from parts, rotating if the heights are off by more than one
+	private TreeNode balance(E data, int count, TreeNode left, TreeNode right) {
+		int differential = height(right) - height(left);
+
+		//go left
+		if (differential < -1) {
+			//left left
+			if (height(left.left) >= height(left.right))
+				return new TreeNode(left.data, left.count, left.left,
+						new TreeNode(data, count, left.right, right));
+
+			//left right
+			TreeNode finalRoot = left.right;
+			return new TreeNode(finalRoot.data, finalRoot.count,
+					new TreeNode(left.data, left.count, left.left, finalRoot.left),
+					new TreeNode(data, count, finalRoot.right, right));
+		}
+		//go right
+		else if (differential > 1) {
+			//right right
+			if (height(right.right) >= height(right.left))
+				return new TreeNode(right.data, right.count,
+						new TreeNode(data, count, left, right.left), right.right);
+
+			//right left
+			TreeNode finalRoot = right.left;
+			return new TreeNode(finalRoot.data, finalRoot.count,
+					new TreeNode(data, count, left, finalRoot.left),
+					new TreeNode(right.data, right.count, finalRoot.right, right.right));
+		}
+		return new TreeNode(data, count, left, right);
+	}
+
+	private int height(TreeNode r) {
+		if (r == null)
+			return 0;
+		return r.height;
+	}
+
+	//one frozen version of the tree
+	public class Snapshot implements Iterable<E> {
+
+		private final TreeNode root;
+		private final int size;			//counts duplicates
+
+		private Snapshot(TreeNode r, int s) {
+			root = r;
+			size = s;
+		}
+
+		public boolean isEmpty() {
+			return root == null;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		//locates minimum value in this version
+		public E findMin() {
+			if (root == null)
+				throw new NoSuchElementException("Tree is empty");
+			return findMinHelper(root).data;
+		}
+
+		//checks if item is in this version
+		public boolean contains(E item) {
+			TreeNode current = root;
+
+			//walks down one side each step
+			while (current != null) {
+				int comparison = current.data.compareTo(item);
+
+				if (comparison == 0)
+					return true;
+				else if (comparison > 0)
+					current = current.left;
+				else
+					current = current.right;
+			}
+			return false;
+		}
+
+		//in order walk, duplicates repeated
+		public Iterator<E> iterator() {
+			return new InOrderIterator(root);
+		}
+	}
+
+	//in order walk using its own stack since nodes have no parent links
+	private class InOrderIterator implements Iterator<E> {
+
+		private ArrayDeque<TreeNode> path = new ArrayDeque<TreeNode>();
+		private int repeat;				//copies of top node already given
+
+		public InOrderIterator(TreeNode r) {
+			pushLeft(r);
+		}
+
+		public boolean hasNext() {
+			return !path.isEmpty();
+		}
+
+		public E next() {
+			if (path.isEmpty())
+				throw new NoSuchElementException();
+
+			TreeNode top = path.peek();
+			repeat++;
+
+			//done with every copy of this node
+			if (repeat == top.count) {
+				repeat = 0;
+				path.pop();
+				pushLeft(top.right);
+			}
+			return top.data;
+		}
+
+		//goes as far left as possible saving the way back
+		private void pushLeft(TreeNode r) {
+			while (r != null) {
+				path.push(r);
+				r = r.left;
+			}
+		}
+	}
+
+	//simulates each node on the binary tree, never changed after it is made
+	public class TreeNode {
+
+		private final E data;
+		private final TreeNode left;
+		private final TreeNode right;
+		private final int count;
+		private final int height;
+
+		public TreeNode(E d, int c, TreeNode l, TreeNode r) {
+			data = d;
+			count = c;
+			left = l;
+			right = r;
+			height = Math.max(DerekHuPersistentBST.this.height(l), DerekHuPersistentBST.this.height(r)) + 1;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,148 @@
+/*
+ * Derek Hu
+ * Period 6
+ * Striped Cache lets many threads share a bounded cache. The keys are split by hash into a number of
+ * stripes, each one its own cache with its own lock and an equal share of the limit, so threads only wait
+ * on each other when their keys land in the same stripe. Eviction happens inside each stripe, so the
+ * policy is followed per stripe instead of across the whole cache.
+ */
+
+import java.util.*;
+
+public class DerekHuStripedCache<K, V> {
+
+	private DerekHuCache<K, V>[] stripes;
+	private int mask;
+
+	public DerekHuStripedCache(int maxEntries, DerekHuCache.Policy policy, int numStripes) {
+		this(maxEntries, policy, null, numStripes);
+	}
+
+	public DerekHuStripedCache(long maxWeight, DerekHuCache.Policy policy, DerekHuCache.Weigher<K, V> weigher,
+			int numStripes) {
+		//rounds stripes up to a power of two
+		int count = 1;
+		while (count < numStripes)
+			count *= 2;
+		if (maxWeight < count)
+			throw new IllegalArgumentException("Limit must be at least the number of stripes");
+
+		stripes = (DerekHuCache<K, V>[]) new DerekHuCache[count];
+		mask = count - 1;
+
+		//splits the limit evenly
+		for (int i = 0; i < count; i++)
+			stripes[i] = new DerekHuCache<K, V>(maxWeight / count, policy, weigher);
+	}
+
+	public V get(K key) {
+		DerekHuCache<K, V> stripe = stripeFor(key);
+		synchronized (stripe) {
+			return stripe.get(key);
+		}
+	}
+
+	public boolean containsKey(K key) {
+		DerekHuCache<K, V> stripe = stripeFor(key);
+		synchronized (stripe) {
+			return stripe.containsKey(key);
+		}
+	}
+
+	public void put(K key, V value) {
+		DerekHuCache<K, V> stripe = stripeFor(key);
+		synchronized (stripe) {
+			stripe.put(key, value);
+		}
+	}
+
+	public V remove(K key) {
+		DerekHuCache<K, V> stripe = stripeFor(key);
+		synchronized (stripe) {
+			return stripe.remove(key);
+		}
+	}
+
+	public int size() {
+		int total = 0;
+		for (DerekHuCache<K, V> stripe : stripes) {
+			synchronized (stripe) {
+				total += stripe.size();
+			}
+		}
+		return total;
+	}
+
+	public long hitCount() {
+		long total = 0;
+		for (DerekHuCache<K, V> stripe : stripes) {
+			synchronized (stripe) {
+				total += stripe.hitCount();
+			}
+		}
+		return total;
+	}
+
+	public long missCount() {
+		long total = 0;
+		for (DerekHuCache<K, V> stripe : stripes) {
+			synchronized (stripe) {
+				total += stripe.missCount();
+			}
+		}
+		return total;
+	}
+
+	public long evictionCount() {
+		long total = 0;
+		for (DerekHuCache<K, V> stripe : stripes) {
+			synchronized (stripe) {
+				total += stripe.evictionCount();
+			}
+		}
+		return total;
+	}
+
+	//hits over all lookups, 0 if there were none
+	public double hitRate() {
+		long hits = hitCount();
+		long lookups = hits + missCount();
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	//buckets across all stripes
+	public int capacity() {
+		int total = 0;
+		for (DerekHuCache<K, V> stripe : stripes) {
+			synchronized (stripe) {
+				total += stripe.capacity();
+			}
+		}
+		return total;
+	}
+
+	public double loadFactor() {
+		return MemoryLayout.ratio(size(), capacity());
+	}
+
+	//bytes of every stripe plus the stripe array
+	public long estimatedBytes() {
+		long total = MemoryLayout.shallowSize(getClass()) + MemoryLayout.referenceArray(stripes.length);
+		for (DerekHuCache<K, V> stripe : stripes) {
+			synchronized (stripe) {
+				total += stripe.estimatedBytes();
+			}
+		}
+		return total;
+	}
+
+	public int stripeCount() {
+		return stripes.length;
+	}
+
+	//top bits pick the stripe so they do not line up with the bucket bits inside it
+	private DerekHuCache<K, V> stripeFor(K key) {
+		int hash = key.hashCode() * 0x9E3779B9;
+		return stripes[(hash >>> 16) & mask];
+	}
+}
\ No newline at end of file
@@ -0,0 +1,353 @@
+/*
+ * Derek Hu
+ * Period 6
+ * This class simulates an Unrolled Linked List, a doubly linked list where each node holds a small array
+ * of items instead of just one. It has the same methods as the Doubly Linked List, but there are far fewer
+ * nodes to allocate and step through, so indexing skips a whole chunk at a time and iterating reads items
+ * that sit next to each other in memory. Nodes split when they fill up and merge when they get too empty.
+ */
+
+import java.util.*;
+
+public class DerekHuUnrolledLinkedList<E> implements Iterable<E> {
+
+	private static final int DEFAULT_CHUNK = 64;
+
+	private ListNode front;
+	private ListNode end;
+	private int numElements;
+	private int chunkSize;			//most items a node can hold
+	private int modCount;			//structural changes, lets iterators fail fast
+
+	//node and spot in it found by the last locate
+	private ListNode foundNode;
+	private int foundOffset;
+
+	public DerekHuUnrolledLinkedList() {
+		this(DEFAULT_CHUNK);
+	}
+
+	public DerekHuUnrolledLinkedList(int chunkSize) {
+		if (chunkSize < 4)
+			throw new IllegalArgumentException("Chunk size must be at least 4");
+		this.chunkSize = chunkSize;
+	}
+
+	public boolean isEmpty() {
+		return numElements == 0;
+	}
+
+	//adds an item to the front of the list
+	public void addFront(E item) {
+		//front node is full so a new one goes before it
+		if (front == null || front.count == chunkSize) {
+			ListNode newNode = new ListNode(null, front);
+			if (front != null)
+				front.previous = newNode;
+			else
+				end = newNode;
+			front = newNode;
+		}
+		insertAt(front, 0, item);
+	}
+
+	//adds an item after a specified index
+	public void addAfter(int index, E item) {
+		inBound(index);
+		locate(index);
+		insertAt(foundNode, foundOffset + 1, item);
+	}
+
+	//adds an item at the end of the list
+	public void addLast(E item) {
+		//end node is full so a new one goes after it
+		if (end == null || end.count == chunkSize) {
+			ListNode newNode = new ListNode(end, null);
+			if (end != null)
+				end.next = newNode;
+			else
+				front = newNode;
+			end = newNode;
+		}
+		insertAt(end, end.count, item);
+	}
+
+	//removes the first occurrence of a specified item
+	public void remove(E item) {
+		if (isEmpty())
+			return;
+
+		//searches node by node
+		for (ListNode current = front; current != null; current = current.next) {
+			for (int i = 0; i < current.count; i++) {
+				if (Objects.equals(current.items[i], item)) {
+					removeAt(current, i);
+					return;
+				}
+			}
+		}
+		throw new NoSuchElementException("The item was not found");
+	}
+
+	//removes the first item
+	public void removeFirst() {
+		if (!isEmpty())
+			removeAt(front, 0);
+	}
+
+	//removes the last item
+	public void removeLast() {
+		if (!isEmpty())
+			removeAt(end, end.count - 1);
+	}
+
+	//number of items in list
+	public int size() {
+		return numElements;
+	}
+
+	//item spots in all the nodes
+	public int capacity() {
+		int nodes = 0;
+		for (ListNode current = front; current != null; current = current.next)
+			nodes++;
+		return nodes * chunkSize;
+	}
+
+	//fraction of item spots in use
+	public double loadFactor() {
+		return MemoryLayout.ratio(numElements, capacity());
+	}
+
+	//bytes of the list and its nodes, not the items
+	public long estimatedBytes() {
+		long nodeBytes = MemoryLayout.shallowSize(ListNode.class) + MemoryLayout.referenceArray(chunkSize);
+		return MemoryLayout.shallowSize(getClass()) + (long) (capacity() / chunkSize) * nodeBytes;
+	}
+
+	//packs every node full so the fewest nodes are used
+	public void trimToSize() {
+		if (isEmpty())
+			return;
+
+		ListNode fill = front;
+		int fillCount = 0;
+
+		//slides every item down into the earliest free spot
+		for (ListNode current = front; current != null; current = current.next) {
+			for (int i = 0; i < current.count; i++) {
+				if (fillCount == chunkSize) {
+					fill = fill.next;
+					fillCount = 0;
+				}
+				Object item = current.items[i];
+				current.items[i] = null;
+				fill.items[fillCount++] = item;
+			}
+		}
+
+		//cuts off the now empty nodes
+		for (ListNode current = front; current != fill; current = current.next)
+			current.count = chunkSize;
+		fill.count = fillCount;
+		fill.next = null;
+		end = fill;
+		modCount++;
+	}
+
+	//gives the item at a certain index
+	public E get(int index) {
+		inBound(index);
+		locate(index);
+		return (E) foundNode.items[foundOffset];
+	}
+
+	//changes the item at a certain index
+	public void set(int index, E item) {
+		inBound(index);
+		locate(index);
+		foundNode.items[foundOffset] = item;
+	}
+
+	//displays list front to end
+	public void printForward() {
+		for (E item : this)
+			System.out.println(item);
+	}
+
+	//displays list end to front
+	public void printBackward() {
+		for (ListNode current = end; current != null; current = current.previous) {
+			for (int i = current.count - 1; i >= 0; i--)
+				System.out.println(current.items[i]);
+		}
+	}
+
+	//walks the list front to end
+	public Iterator<E> iterator() {
+		return new Iterator<E>() {
+			private ListNode node = front;
+			private int offset;
+			private int expectedModCount = modCount;
+
+			public boolean hasNext() {
+				return node != null && offset < node.count;
+			}
+
+			public E next() {
+				if (modCount != expectedModCount)
+					throw new ConcurrentModificationException();
+				if (!hasNext())
+					throw new NoSuchElementException();
+
+				E toReturn = (E) node.items[offset];
+				offset++;
+
+				//done with this chunk
+				if (offset == node.count) {
+					node = node.next;
+					offset = 0;
+				}
+				return toReturn;
+			}
+		};
+	}
+
+	//checks the given index is in the list
+	private void inBound(int index) {
+		if (index < 0 || index >= numElements) {
+			throw new IndexOutOfBoundsException("Index is not in bounds");
+		}
+	}
+
+	//finds the node holding index by skipping whole chunks from the closer end
+	private void locate(int index) {
+		//index further than halfway point
+		if (index > numElements / 2) {
+			ListNode current = end;
+			int start = numElements - end.count;
+
+			//count chunks from end to index
+			while (index < start) {
+				current = current.previous;
+				start -= current.count;
+			}
+			foundNode = current;
+			foundOffset = index - start;
+		}
+		//index before halfway
+		else {
+			ListNode current = front;
+
+			//counts chunks from front to index
+			while (index >= current.count) {
+				index -= current.count;
+				current = current.next;
+			}
+			foundNode = current;
+			foundOffset = index;
+		}
+	}
+
+	//puts item at offset in node, splitting the node first if it is full
+	private void insertAt(ListNode node, int offset, E item) {
+		if (node.count == chunkSize) {
+			ListNode right = split(node);
+
+			//spot moved into the new right half
+			if (offset > node.count) {
+				offset -= node.count;
+				node = right;
+			}
+		}
+
+		System.arraycopy(node.items, offset, node.items, offset + 1, node.count - offset);
+		node.items[offset] = item;
+		node.count++;
+		numElements++;
+		modCount++;
+	}
+
+	//moves the upper half of a node into a new node right after it
+	private ListNode split(ListNode node) {
+		ListNode right = new ListNode(node, node.next);
+		int half = node.count / 2;
+
+		right.count = node.count - half;
+		System.arraycopy(node.items, half, right.items, 0, right.count);
+		Arrays.fill(node.items, half, node.count, null);
+		node.count = half;
+
+		//links in new node
+		if (node.next != null)
+			node.next.previous = right;
+		else
+			end = right;
+		node.next = right;
+
+		return right;
+	}
+
+	//takes out the item at offset and fixes nodes that got too empty
+	private void removeAt(ListNode node, int offset) {
+		System.arraycopy(node.items, offset + 1, node.items, offset, node.count - offset - 1);
+		node.count--;
+		node.items[node.count] = null;
+		numElements--;
+		modCount++;
+
+		//nothing left so node goes away
+		if (node.count == 0)
+			unlink(node);
+		//less than half full so refill from the next node
+		else if (node.count < chunkSize / 2 && node.next != null) {
+			ListNode next = node.next;
+
+			//both fit in one
+			if (node.count + next.count <= chunkSize) {
+				System.arraycopy(next.items, 0, node.items, node.count, next.count);
+				node.count += next.count;
+				unlink(next);
+			}
+			//even them out
+			else {
+				int toMove = (next.count - node.count) / 2;
+				System.arraycopy(next.items, 0, node.items, node.count, toMove);
+				System.arraycopy(next.items, toMove, next.items, 0, next.count - toMove);
+				Arrays.fill(next.items, next.count - toMove, next.count, null);
+				node.count += toMove;
+				next.count -= toMove;
+			}
+		}
+	}
+
+	//severs a node's connections
+	private void unlink(ListNode node) {
+		if (node.previous != null)
+			node.previous.next = node.next;
+		else
+			front = node.next;
+
+		if (node.next != null)
+			node.next.previous = node.previous;
+		else
+			end = node.previous;
+
+		node.next = null;
+		node.previous = null;
+	}
+
+	//represents a chunk of items in the list
+	public class ListNode {
+		private Object[] items;
+		private int count;
+		private ListNode next;
+		private ListNode previous;
+
+		public ListNode(ListNode p, ListNode n) {
+			previous = p;
+			next = n;
+			items = new Object[chunkSize];
+		}
+	}
+}
\ No newline at end of file
@@ -6,47 +6,162 @@
  */
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class HashChaining<E> {
 	
+	//LinkedList's node holds item, next and previous
+	private static final long LIST_NODE_BYTES = MemoryLayout.align(MemoryLayout.OBJECT_HEADER + 3 * MemoryLayout.REFERENCE);
+	
 	private LinkedList<E>[] table;
+	private int numElements;
+	private DerekHuBloomFilter<E> filter;		//null unless the table was made with one
 	
 	public HashChaining(int tblSize) {
+		//bucket lists are made when first needed
 		table = new LinkedList[tblSize];
-		
-		//creates list for each bucket
-		for (int bucket = 0; bucket < tblSize; bucket++)
-			table[bucket] = new LinkedList<E>();
+	}
+	
+	//puts a filter sized for expectedItems in front of the table so most lookups for missing items skip the chains
+	public HashChaining(int tblSize, int expectedItems, double falsePositiveRate) {
+		this(tblSize);
+		filter = new DerekHuBloomFilter<E>(expectedItems, falsePositiveRate);
+	}
+	
+	//a loaded snapshot, every bucket list is already filled in
+	HashChaining(LinkedList<E>[] buckets, int count, DerekHuBloomFilter<E> f) {
+		table = buckets;
+		numElements = count;
+		filter = f;
 	}
 	
 	//adds item to hash table using chaining
 	public boolean add(E item) {	
-		table[hashCode(item)].add(item);
+		int bucket = hashCode(item);
+		
+		//first item in bucket
+		if (table[bucket] == null)
+			table[bucket] = new LinkedList<E>();
+		
+		table[bucket].add(item);
+		numElements++;
+		if (filter != null)
+			filter.add(item);
 		return true;
 	}
 	
+	//adds every item using up to parallelism threads, each filling its own range of buckets without locks,
+	//items end up in the same order as adding them one at a time
+	public boolean addAll(E[] items, int parallelism) {
+		ForkJoinPool pool = BulkLoad.pool(parallelism);
+		try {
+			int regions = BulkLoad.regions(parallelism, table.length);
+			BulkLoad.Groups groups = BulkLoad.partition(items, regions,
+					item -> BulkLoad.regionOf(hashCode((E) item), regions, table.length), pool);
+
+			BulkLoad.forEach(regions, region -> {
+				for (int i = groups.start(region); i < groups.end(region); i++) {
+					E item = (E) groups.item(i);
+					int bucket = hashCode(item);
+					if (table[bucket] == null)
+						table[bucket] = new LinkedList<E>();
+					table[bucket].add(item);
+				}
+			}, pool);
+
+			numElements += groups.size();
+			if (filter != null)
+				filter.addAll(groups.items(), pool);
+			return groups.size() > 0;
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	public boolean addAll(Collection<? extends E> items, int parallelism) {
+		return addAll((E[]) items.toArray(), parallelism);
+	}
+	
 	//if item exists in list at hash value index
 	public boolean contains(E item) {	
-		return table[hashCode(item)].contains(item);
+		//filter is sure it is not here
+		if (filter != null && !filter.mightContain(item))
+			return false;
+		
+		LinkedList<E> chain = table[hashCode(item)];
+		boolean found = chain != null && chain.contains(item);
+		
+		if (!found && filter != null)
+			filter.recordFalsePositive();
+		return found;
 	}
 	
 	//removes item if it exists from corresponding bucket list
 	public boolean remove(E item) {
 		if (contains(item)) {
 			table[hashCode(item)].remove(item);		
+			numElements--;
+			if (filter != null)
+				filter.remove(item);
 			return true;
 		}
 		return false;
 	}
 	
+	//number of items in table
+	public int size() {
+		return numElements;
+	}
+	
+	//number of buckets
+	public int capacity() {
+		return table.length;
+	}
+	
+	//average items per bucket
+	public double loadFactor() {
+		return MemoryLayout.ratio(numElements, table.length);
+	}
+	
+	//bytes of the table, its bucket lists and their nodes, not the items
+	public long estimatedBytes() {
+		long bytes = MemoryLayout.shallowSize(getClass()) + MemoryLayout.referenceArray(table.length);
+		
+		for (LinkedList<E> chain : table) {
+			if (chain != null)
+				bytes += MemoryLayout.shallowSize(LinkedList.class) + chain.size() * LIST_NODE_BYTES;
+		}
+		return filter == null ? bytes : bytes + filter.estimatedBytes();
+	}
+	
+	//the filter in front of the table with its hit rate counts, null if there is none
+	public DerekHuBloomFilter<E> filter() {
+		return filter;
+	}
+	
+	//the bucket array itself so a snapshot can write it as is
+	LinkedList<E>[] buckets() {
+		return table;
+	}
+	
+	//drops bucket lists that have gone empty
+	public void trimToSize() {
+		for (int bucket = 0; bucket < table.length; bucket++) {
+			if (table[bucket] != null && table[bucket].isEmpty())
+				table[bucket] = null;
+		}
+	}
+	
 	//the total steps is the total length of all the buckets of the table added up, so if there was four buckets each of length 3 then it would take 12 steps
 	public String toString() {
 		String toReturn = "";
 		
 		//each bucket and prints entire list in bucket
 		for (int bucket = 0; bucket < table.length; bucket++) {
-			for (E element : table[bucket])
-				toReturn += element + ",";
+			if (table[bucket] != null) {
+				for (E element : table[bucket])
+					toReturn += element + ",";
+			}
 		}
 		
 		//removes final comma
@@ -6,17 +6,34 @@
  */
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class HashProbing <E>{
 
 	private E[] table;
 	private Probeable probeFunction;
+	private int numElements;
+	private DerekHuBloomFilter<E> filter;		//null unless the table was made with one
 	
 	public HashProbing(int tblSize, Probeable p){
 		table = (E[]) new Object[tblSize];
 		probeFunction = p;
 	}
 	
+	//puts a filter in front of the table so most lookups for missing items skip probing
+	public HashProbing(int tblSize, Probeable p, double falsePositiveRate){
+		this(tblSize, p);
+		filter = new DerekHuBloomFilter<E>(tblSize, falsePositiveRate);
+	}
+	
+	//a loaded snapshot, every item is already in the slot probing put it in
+	HashProbing(E[] slots, int count, Probeable p, DerekHuBloomFilter<E> f){
+		table = slots;
+		numElements = count;
+		probeFunction = p;
+		filter = f;
+	}
+	
 	//uses probing to add item to next open index
 	public boolean add(E item) {
 		int index = hashCode(item);
@@ -26,6 +43,9 @@ public class HashProbing <E>{
 			//can add
 			if (table[index] == null) {
 				table[index] = item;
+				numElements++;
+				if (filter != null)
+					filter.add(item);
 				return true;
 			}
 			
@@ -34,8 +54,76 @@ public class HashProbing <E>{
 		return false;
 	}
 	
+	//adds every item using up to parallelism threads, each filling its own range of slots without locks,
+	//an item whose probe runs out of its range is added afterwards one at a time, true if every item fit
+	public boolean addAll(E[] items, int parallelism) {
+		ForkJoinPool pool = BulkLoad.pool(parallelism);
+		try {
+			int regions = BulkLoad.regions(parallelism, table.length);
+			BulkLoad.Groups groups = BulkLoad.partition(items, regions,
+					item -> BulkLoad.regionOf(hashCode((E) item), regions, table.length), pool);
+			ArrayList<E>[] overflow = new ArrayList[regions];
+			
+			BulkLoad.forEach(regions, region -> {
+				int low = BulkLoad.regionStart(region, regions, table.length);
+				int high = BulkLoad.regionStart(region + 1, regions, table.length);
+				overflow[region] = new ArrayList<E>();
+				
+				for (int i = groups.start(region); i < groups.end(region); i++) {
+					E item = (E) groups.item(i);
+					if (!addWithin(item, low, high)) {
+						overflow[region].add(item);
+						groups.drop(i);
+					}
+				}
+			}, pool);
+			
+			//the filter gets what the threads added, the overflow pass adds the rest to both
+			int skipped = 0;
+			for (ArrayList<E> left : overflow)
+				skipped += left.size();
+			numElements += groups.size() - skipped;
+			if (filter != null)
+				filter.addAll(groups.items(), pool);
+			
+			boolean allAdded = true;
+			for (ArrayList<E> left : overflow) {
+				for (E item : left)
+					allAdded &= add(item);
+			}
+			return allAdded;
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	public boolean addAll(Collection<? extends E> items, int parallelism) {
+		return addAll((E[]) items.toArray(), parallelism);
+	}
+	
+	//probes like add but gives up as soon as the probe leaves slots low to high - 1
+	private boolean addWithin(E item, int low, int high) {
+		int index = hashCode(item);
+		
+		for (int bucket = 0; bucket < table.length; bucket++) {
+			if (index < low || index >= high)
+				return false;
+			
+			if (table[index] == null) {
+				table[index] = item;
+				return true;
+			}
+			index = probeFunction.probe(index) % table.length;
+		}
+		return false;
+	}
+	
 	//uses hash value and probing to check item exists
 	public boolean contains(E item) {
+		//filter is sure it is not here
+		if (filter != null && !filter.mightContain(item))
+			return false;
+		
 		int index = hashCode(item);
 		
 		//quits after worst scenario
@@ -46,11 +134,17 @@ public class HashProbing <E>{
 			
 			index = probeFunction.probe(index) % table.length;
 		}
+		
+		if (filter != null)
+			filter.recordFalsePositive();
 		return false;
 	}
 	
 	//searches for item using probing then removes
 	public boolean remove(E item) {
+		if (filter != null && !filter.mightContain(item))
+			return false;
+		
 		int index = hashCode(item);
 		
 		//quits after worst scenario
@@ -58,14 +152,51 @@ public class HashProbing <E>{
 			//removes if exists
 			if (table[index] != null && table[index].equals(item)) {
 				table[index] = null;
+				numElements--;
+				if (filter != null)
+					filter.remove(item);
 				return true;
 			}
 			
 			index = probeFunction.probe(index) % table.length;
 		}
+		
+		if (filter != null)
+			filter.recordFalsePositive();
 		return false;
 	}
 	
+	//number of items in table
+	public int size() {
+		return numElements;
+	}
+	
+	//number of slots
+	public int capacity() {
+		return table.length;
+	}
+	
+	//fraction of slots filled
+	public double loadFactor() {
+		return MemoryLayout.ratio(numElements, table.length);
+	}
+	
+	//bytes of the table, its slot array and filter, not the items or probe function
+	public long estimatedBytes() {
+		long bytes = MemoryLayout.shallowSize(getClass()) + MemoryLayout.referenceArray(table.length);
+		return filter == null ? bytes : bytes + filter.estimatedBytes();
+	}
+	
+	//the filter in front of the table with its hit rate counts, null if there is none
+	public DerekHuBloomFilter<E> filter() {
+		return filter;
+	}
+	
+	//the slot array itself so a snapshot can write it as is
+	E[] slots() {
+		return table;
+	}
+	
 	//total number of steps taken is the same as the length of the hash table
 	public String toString() {
 		String toReturn = "";
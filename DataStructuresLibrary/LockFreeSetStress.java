@@ -0,0 +1,381 @@
+/*
+ * Derek Hu
+ * Period 6
+ * Lock Free Set Stress checks that the lock free hash set is correct under many threads and measures how
+ * it scales. The stress part runs short rounds where threads hammer a few keys on a tiny set, so resizes
+ * happen in the middle, and records when every call started and finished. Linearizability only has to be
+ * checked one key at a time, so for each key it searches for an order of the calls that fits their times
+ * and gives the results they got, the way Wing and Gong's checker does. It also checks totals after large
+ * runs. The scaling part runs a lookup heavy mix at 1 to 64 threads next to locked HashChaining and
+ * HashProbing and ConcurrentHashMap's key set.
+ *
+ * java LockFreeSetStress stress [rounds]
+ * java LockFreeSetStress scale [threads,...] [seconds per point]
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class LockFreeSetStress {
+
+	private static final int ADD = 0;
+	private static final int REMOVE = 1;
+	private static final int CONTAINS = 2;
+
+	//one call, its result and when it started and finished
+	private static class Call {
+		private int type;
+		private int key;
+		private boolean result;
+		private long invoked;
+		private long returned;
+
+		private Call(int t, int k, boolean r, long i, long ret) {
+			type = t;
+			key = k;
+			result = r;
+			invoked = i;
+			returned = ret;
+		}
+	}
+
+	//the three set calls, so the same runs can use any set
+	private interface IntSet {
+		boolean add(Integer key);
+		boolean remove(Integer key);
+		boolean contains(Integer key);
+	}
+
+	public static void main(String[] args) throws Exception {
+		String mode = args.length > 0 ? args[0] : "stress";
+
+		if (mode.equals("stress"))
+			stress(args.length > 1 ? Integer.parseInt(args[1]) : 2000);
+		else if (mode.equals("scale")) {
+			int[] threads = {1, 2, 4, 8, 16, 32, 64};
+			if (args.length > 1) {
+				String[] parts = args[1].split(",");
+				threads = new int[parts.length];
+				for (int i = 0; i < parts.length; i++)
+					threads[i] = Integer.parseInt(parts[i]);
+			}
+			scale(threads, args.length > 2 ? Double.parseDouble(args[2]) : 1);
+		}
+		else
+			System.out.println("java LockFreeSetStress stress [rounds] | scale [threads,...] [seconds]");
+	}
+
+	private static void stress(int rounds) throws Exception {
+		checkerCatchesBadHistory();
+
+		Random rand = new Random();
+		long calls = 0;
+		for (int round = 0; round < rounds; round++) {
+			int threads = 2 + rand.nextInt(7);
+			calls += linearizabilityRound(threads, 3, 5);
+		}
+		System.out.println("linearizable: " + rounds + " rounds, " + calls + " checked calls");
+
+		int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+		disjointRanges(threads, 200000);
+		sharedKeys(threads, 64, 200000);
+		System.out.println("all checks passed");
+	}
+
+	//threads make calls on a few watched keys while filler keys force resizes, then each key is checked
+	private static long linearizabilityRound(int threads, int keys, int callsPerThread) throws Exception {
+		DerekHuLockFreeHashSet<Integer> set = new DerekHuLockFreeHashSet<Integer>(1);
+		List<Call> history = Collections.synchronizedList(new ArrayList<Call>());
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] workers = new Thread[threads];
+
+		for (int t = 0; t < threads; t++) {
+			int id = t;
+			workers[t] = new Thread(() -> {
+				Random rand = new Random();
+				awaitQuietly(start);
+
+				for (int i = 0; i < callsPerThread; i++) {
+					//filler keys are different for every thread and never checked
+					for (int f = rand.nextInt(8); f > 0; f--)
+						set.add(1000 + id * 1000 + i * 10 + f);
+
+					int type = rand.nextInt(3);
+					int key = rand.nextInt(keys);
+					long invoked = System.nanoTime();
+					boolean result = type == ADD ? set.add(key) : type == REMOVE ? set.remove(key) : set.contains(key);
+					long returned = System.nanoTime();
+					history.add(new Call(type, key, result, invoked, returned));
+				}
+			});
+			workers[t].start();
+		}
+		start.countDown();
+		for (Thread w : workers)
+			w.join();
+
+		for (int key = 0; key < keys; key++) {
+			List<Call> calls = new ArrayList<Call>();
+			for (Call c : history) {
+				if (c.key == key)
+					calls.add(c);
+			}
+			if (!linearizable(calls, 0L, false, new HashSet<Long>()))
+				throw new IllegalStateException("Not linearizable for key " + key + ": " + describe(calls));
+		}
+		return history.size();
+	}
+
+	//true if the calls not in done can be put in an order that respects their times and results
+	private static boolean linearizable(List<Call> calls, long done, boolean present, HashSet<Long> seen) {
+		if (done == (1L << calls.size()) - 1)
+			return true;
+		if (!seen.add(done << 1 | (present ? 1 : 0)))
+			return false;
+
+		//a call can go next only if no other remaining call finished before it started
+		long firstReturn = Long.MAX_VALUE;
+		for (int i = 0; i < calls.size(); i++) {
+			if ((done & 1L << i) == 0)
+				firstReturn = Math.min(firstReturn, calls.get(i).returned);
+		}
+
+		for (int i = 0; i < calls.size(); i++) {
+			Call c = calls.get(i);
+			if ((done & 1L << i) != 0 || c.invoked > firstReturn)
+				continue;
+
+			boolean expected;
+			boolean after;
+			if (c.type == ADD) {
+				expected = !present;
+				after = true;
+			}
+			else if (c.type == REMOVE) {
+				expected = present;
+				after = false;
+			}
+			else {
+				expected = present;
+				after = present;
+			}
+
+			if (c.result == expected && linearizable(calls, done | 1L << i, after, seen))
+				return true;
+		}
+		return false;
+	}
+
+	//a remove that succeeds after an add of the same key finished cannot be followed by a true contains
+	private static void checkerCatchesBadHistory() {
+		List<Call> bad = new ArrayList<Call>();
+		bad.add(new Call(ADD, 0, true, 0, 10));
+		bad.add(new Call(REMOVE, 0, true, 20, 30));
+		bad.add(new Call(CONTAINS, 0, true, 40, 50));
+		if (linearizable(bad, 0L, false, new HashSet<Long>()))
+			throw new IllegalStateException("Checker accepted a history that is not linearizable");
+
+		List<Call> overlapping = new ArrayList<Call>();
+		overlapping.add(new Call(ADD, 0, true, 0, 30));
+		overlapping.add(new Call(CONTAINS, 0, false, 10, 20));
+		if (!linearizable(overlapping, 0L, false, new HashSet<Long>()))
+			throw new IllegalStateException("Checker rejected a linearizable history");
+	}
+
+	//every thread adds its own range then removes the odd keys, so the result is known exactly
+	private static void disjointRanges(int threads, int perThread) throws Exception {
+		DerekHuLockFreeHashSet<Integer> set = new DerekHuLockFreeHashSet<Integer>();
+		runAll(threads, id -> {
+			int base = id * perThread;
+			for (int i = 0; i < perThread; i++) {
+				if (!set.add(base + i))
+					throw new IllegalStateException("Fresh key reported present " + (base + i));
+			}
+			for (int i = 1; i < perThread; i += 2) {
+				if (!set.remove(base + i))
+					throw new IllegalStateException("Added key missing " + (base + i));
+			}
+		});
+
+		for (int key = 0; key < threads * perThread; key++) {
+			if (set.contains(key) != (key % perThread % 2 == 0))
+				throw new IllegalStateException("Wrong membership for " + key);
+		}
+		if (set.size() != threads * ((perThread + 1) / 2) || set.snapshot().size() != set.size())
+			throw new IllegalStateException("Wrong size " + set.size());
+
+		System.out.println("disjoint ranges: " + threads + " threads, size " + set.size() + ", resizes "
+				+ set.resizeCount());
+	}
+
+	//threads fight over a few keys, successful adds minus removes must say whether each key is left
+	private static void sharedKeys(int threads, int keys, int callsPerThread) throws Exception {
+		DerekHuLockFreeHashSet<Integer> set = new DerekHuLockFreeHashSet<Integer>(1);
+		AtomicLongArray net = new AtomicLongArray(keys);
+
+		runAll(threads, id -> {
+			Random rand = new Random(id);
+			for (int i = 0; i < callsPerThread; i++) {
+				int key = rand.nextInt(keys);
+				if (rand.nextBoolean()) {
+					if (set.add(key))
+						net.incrementAndGet(key);
+				}
+				else if (set.remove(key))
+					net.decrementAndGet(key);
+			}
+		});
+
+		int present = 0;
+		for (int key = 0; key < keys; key++) {
+			long count = net.get(key);
+			if (count != 0 && count != 1 || set.contains(key) != (count == 1))
+				throw new IllegalStateException("Key " + key + " has net " + count + " adds");
+			present += count;
+		}
+		if (set.size() != present)
+			throw new IllegalStateException("Size " + set.size() + " but " + present + " present");
+
+		System.out.println("shared keys: " + threads + " threads, " + keys + " keys, " + present + " left");
+	}
+
+	//lookup heavy mix over a prefilled key range at each thread count
+	private static void scale(int[] threadCounts, double seconds) throws Exception {
+		int range = 1 << 16;
+		System.out.println("90% contains, 5% add, 5% remove over " + range + " keys, "
+				+ Runtime.getRuntime().availableProcessors() + " cpus");
+		System.out.printf("%-32s", "threads");
+		for (int t : threadCounts)
+			System.out.printf("%10d", t);
+		System.out.println("   (million ops/s)");
+
+		String[] names = {"DerekHuLockFreeHashSet", "ConcurrentHashMap.newKeySet", "synchronized HashChaining",
+				"synchronized HashProbing+filter"};
+
+		for (String name : names) {
+			System.out.printf("%-32s", name);
+			for (int threads : threadCounts) {
+				IntSet set = create(name, range);
+				for (int key = 0; key < range; key += 2)
+					set.add(key);
+				System.out.printf("%10.2f", throughput(set, threads, range, seconds) / 1e6);
+			}
+			System.out.println();
+		}
+	}
+
+	private static IntSet create(String name, int range) {
+		if (name.equals("DerekHuLockFreeHashSet")) {
+			DerekHuLockFreeHashSet<Integer> s = new DerekHuLockFreeHashSet<Integer>();
+			return new IntSet() {
+				public boolean add(Integer key) { return s.add(key); }
+				public boolean remove(Integer key) { return s.remove(key); }
+				public boolean contains(Integer key) { return s.contains(key); }
+			};
+		}
+		if (name.equals("ConcurrentHashMap.newKeySet")) {
+			Set<Integer> s = ConcurrentHashMap.newKeySet();
+			return new IntSet() {
+				public boolean add(Integer key) { return s.add(key); }
+				public boolean remove(Integer key) { return s.remove(key); }
+				public boolean contains(Integer key) { return s.contains(key); }
+			};
+		}
+		if (name.equals("synchronized HashChaining")) {
+			HashChaining<Integer> s = new HashChaining<Integer>(range);
+			return new IntSet() {
+				public synchronized boolean add(Integer key) { return !s.contains(key) && s.add(key); }
+				public synchronized boolean remove(Integer key) { return s.remove(key); }
+				public synchronized boolean contains(Integer key) { return s.contains(key); }
+			};
+		}
+
+		//misses scan the whole probing table, the filter keeps that rare
+		HashProbing<Integer> s = new HashProbing<Integer>(range * 2, index -> index + 1, 0.01);
+		return new IntSet() {
+			public synchronized boolean add(Integer key) { return !s.contains(key) && s.add(key); }
+			public synchronized boolean remove(Integer key) { return s.remove(key); }
+			public synchronized boolean contains(Integer key) { return s.contains(key); }
+		};
+	}
+
+	private static double throughput(IntSet set, int threads, int range, double seconds) throws Exception {
+		LongAdder ops = new LongAdder();
+		long nanos = (long) (seconds * 1e9);
+		Integer[] keys = new Integer[range];
+		for (int i = 0; i < range; i++)
+			keys[i] = i;
+
+		long start = System.nanoTime();
+		runAll(threads, id -> {
+			ThreadLocalRandom rand = ThreadLocalRandom.current();
+			long end = System.nanoTime() + nanos;
+			long count = 0;
+
+			while (System.nanoTime() < end) {
+				for (int i = 0; i < 256; i++) {
+					Integer key = keys[rand.nextInt(range)];
+					int roll = rand.nextInt(100);
+					if (roll < 90)
+						set.contains(key);
+					else if (roll < 95)
+						set.add(key);
+					else
+						set.remove(key);
+				}
+				count += 256;
+			}
+			ops.add(count);
+		});
+		return ops.sum() * 1e9 / (System.nanoTime() - start);
+	}
+
+	private interface Task {
+		void run(int id) throws Exception;
+	}
+
+	//runs task on threads threads all starting together and rethrows the first failure
+	private static void runAll(int threads, Task task) throws Exception {
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread[] workers = new Thread[threads];
+
+		for (int t = 0; t < threads; t++) {
+			int id = t;
+			workers[t] = new Thread(() -> {
+				awaitQuietly(start);
+				try {
+					task.run(id);
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			});
+			workers[t].start();
+		}
+		start.countDown();
+		for (Thread w : workers)
+			w.join();
+
+		if (failure.get() instanceof Exception)
+			throw (Exception) failure.get();
+		if (failure.get() != null)
+			throw new IllegalStateException(failure.get());
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static String describe(List<Call> calls) {
+		String toReturn = "";
+		String[] names = {"add", "remove", "contains"};
+		for (Call c : calls)
+			toReturn += names[c.type] + "=" + c.result + " [" + c.invoked + "," + c.returned + "] ";
+		return toReturn;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,190 @@
+/*
+ * Derek Hu
+ * Period 6
+ * Memory Layout estimates how many bytes objects and arrays take on the heap so each data structure can
+ * report its own footprint. Object sizes come from the actual fields of the class, found with reflection,
+ * so hidden fields like an inner class's link to its outer object are counted too. Sizes follow HotSpot:
+ * an object header, then the fields, rounded up to 8 bytes, with 4 byte references when compressed
+ * references are on. The elements stored in a structure are not counted, only the structure itself.
+ * Running main builds each structure and compares its estimate to the heap it actually used, the median
+ * of a few builds so one collection at the wrong time does not count. Each structure has a tolerance, and
+ * main throws after the table if any estimate is further off than that.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.function.*;
+
+public class MemoryLayout {
+
+	private static final int ALIGNMENT = 8;
+	private static final int BUILDS = 3;			//times each structure is measured, the median counts
+
+	public static final int REFERENCE;
+	public static final int OBJECT_HEADER;
+	public static final int ARRAY_HEADER;
+
+	private static HashMap<Class<?>, Long> shallowSizes = new HashMap<Class<?>, Long>();
+
+	//asks the jvm whether references and class pointers are compressed
+	static {
+		boolean compressedOops = true;
+		boolean compressedClasses = true;
+
+		try {
+			com.sun.management.HotSpotDiagnosticMXBean hotspot =
+					ManagementFactory.getPlatformMXBean(com.sun.management.HotSpotDiagnosticMXBean.class);
+			compressedOops = Boolean.parseBoolean(hotspot.getVMOption("UseCompressedOops").getValue());
+			compressedClasses = Boolean.parseBoolean(hotspot.getVMOption("UseCompressedClassPointers").getValue());
+		} catch (RuntimeException | LinkageError e) {
+			//not hotspot, keep the usual defaults
+		}
+
+		REFERENCE = compressedOops ? 4 : 8;
+		OBJECT_HEADER = compressedClasses ? 12 : 16;
+		ARRAY_HEADER = compressedClasses ? 16 : 24;
+	}
+
+	//rounds up to the next multiple of 8
+	public static long align(long bytes) {
+		return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+
+	//bytes of one object of type, not counting anything it points to
+	public static synchronized long shallowSize(Class<?> type) {
+		Long known = shallowSizes.get(type);
+		if (known != null)
+			return known;
+
+		long fieldBytes = 0;
+
+		//adds fields of the class and every superclass
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			for (Field f : c.getDeclaredFields()) {
+				if (!Modifier.isStatic(f.getModifiers()))
+					fieldBytes += fieldSize(f.getType());
+			}
+		}
+
+		long size = align(OBJECT_HEADER + fieldBytes);
+		shallowSizes.put(type, size);
+		return size;
+	}
+
+	public static long referenceArray(int length) {
+		return align(ARRAY_HEADER + (long) length * REFERENCE);
+	}
+
+	public static long intArray(int length) {
+		return align(ARRAY_HEADER + 4L * length);
+	}
+
+	public static long longArray(int length) {
+		return align(ARRAY_HEADER + 8L * length);
+	}
+
+	//used slots over allocated slots, 0 when nothing is allocated
+	public static double ratio(long used, long capacity) {
+		return capacity == 0 ? 0 : (double) used / capacity;
+	}
+
+	private static int fieldSize(Class<?> type) {
+		if (type == long.class || type == double.class)
+			return 8;
+		if (type == int.class || type == float.class)
+			return 4;
+		if (type == short.class || type == char.class)
+			return 2;
+		if (type == byte.class || type == boolean.class)
+			return 1;
+		return REFERENCE;
+	}
+
+	//builds each structure from shared elements and compares estimate to measured heap
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		Integer[] items = new Integer[n];
+		for (int i = 0; i < n; i++)
+			items[i] = i;
+
+		System.out.println("compressed references: " + (REFERENCE == 4) + ", items: " + n);
+		System.out.printf("%-26s %14s %14s %8s %10s%n", "structure", "estimated", "measured", "ratio", "tolerance");
+		ArrayList<String> wrong = new ArrayList<String>();
+
+		measure("DerekHuDoublyLinkedList", items, DerekHuDoublyLinkedList<Integer>::new,
+				DerekHuDoublyLinkedList::addLast, DerekHuDoublyLinkedList::estimatedBytes, 0.01, wrong);
+		measure("DerekHuUnrolledLinkedList", items, DerekHuUnrolledLinkedList<Integer>::new,
+				DerekHuUnrolledLinkedList::addLast, DerekHuUnrolledLinkedList::estimatedBytes, 0.01, wrong);
+		measure("DerekHuIndexableSkipList", items, DerekHuIndexableSkipList<Integer>::new,
+				DerekHuIndexableSkipList::addLast, DerekHuIndexableSkipList::estimatedBytes, 0.01, wrong);
+		measure("CircularQueue", items, CircularQueue<Integer>::new,
+				CircularQueue::add, CircularQueue::estimatedBytes, 0.01, wrong);
+		measure("ArrayStack", items, ArrayStack<Integer>::new,
+				ArrayStack::push, ArrayStack::estimatedBytes, 0.01, wrong);
+		measure("DerekHuArrayHeap", items, DerekHuArrayHeap<Integer>::new,
+				DerekHuArrayHeap::add, DerekHuArrayHeap::estimatedBytes, 0.01, wrong);
+		measure("DerekHuBalancedBST", items, DerekHuBalancedBST<Integer>::new,
+				DerekHuBalancedBST::insert, DerekHuBalancedBST::estimatedBytes, 0.01, wrong);
+		measure("DerekHuPersistentBST", items, DerekHuPersistentBST<Integer>::new,
+				DerekHuPersistentBST::insert, DerekHuPersistentBST::estimatedBytes, 0.01, wrong);
+		measure("DerekHuBTree", items, DerekHuBTree<Integer>::new,
+				DerekHuBTree::insert, DerekHuBTree::estimatedBytes, 0.01, wrong);
+		measure("HashChaining", items, () -> new HashChaining<Integer>(n / 2),
+				HashChaining::add, HashChaining::estimatedBytes, 0.01, wrong);
+		measure("HashProbing", items, () -> new HashProbing<Integer>(n * 2, index -> index + 1),
+				HashProbing::add, HashProbing::estimatedBytes, 0.01, wrong);
+		measure("DerekHuCache", items, () -> new DerekHuCache<Integer, Integer>(n, DerekHuCache.Policy.LFU),
+				(cache, item) -> cache.put(item, item), DerekHuCache::estimatedBytes, 0.02, wrong);
+
+		if (!wrong.isEmpty())
+			throw new IllegalStateException("Estimates outside their tolerance: " + wrong);
+	}
+
+	//builds one structure a few times, measuring each while it is still reachable, and adds name to wrong if
+	//the build with the median ratio is off by more than tolerance, a fraction of what was measured
+	private static <T> void measure(String name, Integer[] items, Supplier<T> create, BiConsumer<T, Integer> add,
+			ToLongFunction<T> estimate, double tolerance, ArrayList<String> wrong) {
+		long[] estimated = new long[BUILDS];
+		long[] measured = new long[BUILDS];
+		double[] ratios = new double[BUILDS];
+		for (int build = 0; build < BUILDS; build++) {
+			long before = usedHeap();
+			T structure = create.get();
+
+			for (Integer item : items)
+				add.accept(structure, item);
+
+			measured[build] = usedHeap() - before;
+			estimated[build] = estimate.applyAsLong(structure);
+			ratios[build] = (double) estimated[build] / measured[build];
+		}
+
+		//the build whose ratio is the median
+		double[] sorted = ratios.clone();
+		Arrays.sort(sorted);
+		int median = 0;
+		while (ratios[median] != sorted[BUILDS / 2])
+			median++;
+
+		System.out.printf("%-26s %14d %14d %8.3f %9.1f%%%n", name, estimated[median], measured[median], ratios[median],
+				tolerance * 100);
+		if (Math.abs(ratios[median] - 1) > tolerance)
+			wrong.add(name);
+	}
+
+	//heap in use after letting the collector settle
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
\ No newline at end of file
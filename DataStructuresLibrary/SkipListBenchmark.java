@@ -0,0 +1,136 @@
+/*
+ * Derek Hu
+ * Period 6
+ * Times the Indexable Skip List against the Doubly Linked List at growing sizes. Each size is built with
+ * addLast, then random get, set, addAfter and removeAt calls are timed. The linked list only gets a few
+ * positional calls at big sizes since each one walks half the list. After each size the linked list also
+ * gets one pass of its list iterator that removes every even number and adds after every odd one, the
+ * edits a cursor makes in constant time.
+ * Usage: java -Xmx4g SkipListBenchmark [sizes...]      default sizes are 100000 1000000 10000000
+ */
+
+import java.util.*;
+
+public class SkipListBenchmark {
+
+	private static final int SKIP_OPS = 200000;
+	private static final int LIST_OPS = 200;
+
+	public static void main(String[] args) {
+		int[] sizes = {100000, 1000000, 10000000};
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++)
+				sizes[i] = Integer.parseInt(args[i]);
+		}
+
+		System.out.printf("%-10s %-12s %12s %12s %12s %12s %12s%n",
+				"size", "list", "addLast ns", "get ns", "set ns", "addAfter ns", "removeAt ns");
+
+		for (int size : sizes) {
+			runSkipList(size);
+			runLinkedList(size);
+		}
+	}
+
+	private static void runSkipList(int size) {
+		DerekHuIndexableSkipList<Integer> list = new DerekHuIndexableSkipList<Integer>();
+		Random rand = new Random(size);
+
+		long start = System.nanoTime();
+		for (int i = 0; i < size; i++)
+			list.addLast(i);
+		double addLast = (double) (System.nanoTime() - start) / size;
+
+		long sink = 0;
+		start = System.nanoTime();
+		for (int i = 0; i < SKIP_OPS; i++)
+			sink += list.get(rand.nextInt(size));
+		double get = (double) (System.nanoTime() - start) / SKIP_OPS;
+
+		start = System.nanoTime();
+		for (int i = 0; i < SKIP_OPS; i++)
+			list.set(rand.nextInt(size), i);
+		double set = (double) (System.nanoTime() - start) / SKIP_OPS;
+
+		start = System.nanoTime();
+		for (int i = 0; i < SKIP_OPS; i++)
+			list.addAfter(rand.nextInt(list.size()), i);
+		double addAfter = (double) (System.nanoTime() - start) / SKIP_OPS;
+
+		start = System.nanoTime();
+		for (int i = 0; i < SKIP_OPS; i++)
+			sink += list.removeAt(rand.nextInt(list.size()));
+		double removeAt = (double) (System.nanoTime() - start) / SKIP_OPS;
+
+		report(size, "skip list", addLast, get, set, addAfter, removeAt, sink);
+	}
+
+	private static void runLinkedList(int size) {
+		DerekHuDoublyLinkedList<Integer> list = new DerekHuDoublyLinkedList<Integer>();
+		Random rand = new Random(size);
+
+		long start = System.nanoTime();
+		for (int i = 0; i < size; i++)
+			list.addLast(i);
+		double addLast = (double) (System.nanoTime() - start) / size;
+
+		long sink = 0;
+		start = System.nanoTime();
+		for (int i = 0; i < LIST_OPS; i++)
+			sink += list.get(rand.nextInt(size));
+		double get = (double) (System.nanoTime() - start) / LIST_OPS;
+
+		start = System.nanoTime();
+		for (int i = 0; i < LIST_OPS; i++)
+			list.set(rand.nextInt(size), i);
+		double set = (double) (System.nanoTime() - start) / LIST_OPS;
+
+		start = System.nanoTime();
+		for (int i = 0; i < LIST_OPS; i++)
+			list.addAfter(rand.nextInt(list.size()), i);
+		double addAfter = (double) (System.nanoTime() - start) / LIST_OPS;
+
+		//linked list only removes by item, which is a search plus unlink
+		start = System.nanoTime();
+		for (int i = 0; i < LIST_OPS; i++)
+			list.remove(list.get(rand.nextInt(list.size())));
+		double removeAt = (double) (System.nanoTime() - start) / LIST_OPS;
+
+		report(size, "linked list", addLast, get, set, addAfter, removeAt, sink);
+		runCursor(size);
+	}
+
+	//one pass over a fresh list, removing evens and adding after odds through the iterator
+	private static void runCursor(int size) {
+		DerekHuDoublyLinkedList<Integer> list = new DerekHuDoublyLinkedList<Integer>();
+		for (int i = 0; i < size; i++)
+			list.addLast(i);
+
+		long start = System.nanoTime();
+		ListIterator<Integer> cursor = list.listIterator();
+		while (cursor.hasNext()) {
+			int item = cursor.next();
+			if (item % 2 == 0)
+				cursor.remove();
+			else
+				cursor.add(-item);
+		}
+		double millis = (System.nanoTime() - start) / 1e6;
+
+		if (list.size() != size)
+			throw new IllegalStateException("Cursor pass left " + list.size() + " items, expected " + size);
+		System.out.printf("%-10d %-12s %12.1f ms for one pass removing evens and adding after odds%n",
+				size, "cursor", millis);
+	}
+
+	private static void report(int size, String name, double addLast, double get, double set,
+			double addAfter, double removeAt, long sink) {
+		System.out.printf("%-10d %-12s %12.1f %12.1f %12.1f %12.1f %12.1f%n",
+				size, name, addLast, get, set, addAfter, removeAt);
+
+		//keeps the reads from being optimized away
+		if (sink == 42)
+			System.out.println();
+	}
+}
\ No newline at end of file
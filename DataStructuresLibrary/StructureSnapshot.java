@@ -0,0 +1,533 @@
+/*
+ * Derek Hu
+ * Period 6
+ * Structure Snapshot saves a hash table or balanced tree to a file and loads it back without adding the
+ * items again one at a time. Hash tables are written as their slot arrays, empty slots and all, so loading
+ * puts every item straight back in the slot it came from with no hashing, probing or comparing. The tree is
+ * written smallest item first, and loading builds it from the middle out in one pass with no rotations.
+ * The file is a small header followed by blocks of up to 1MB, each with its own CRC32, streamed through a
+ * FileChannel so saving and loading run at about the speed of the disk. Items are turned into bytes by an
+ * ElementCodec, with built in ones for ints, longs and strings. The hash tables keep each item where its
+ * hashCode put it, so their items need a hashCode that is the same every run, like Integer, Long and String.
+ *
+ * java StructureSnapshot [items] [file]	times saving and loading against adding every item again
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+public class StructureSnapshot {
+
+	private static final int MAGIC = 0x44485353;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;			//magic, version, kind, checksum
+	private static final int BLOCK_HEADER = 8;			//payload length, checksum
+	private static final int BLOCK_SIZE = 1 << 20;
+
+	private static final int PROBING = 1;
+	private static final int CHAINING = 2;
+	private static final int TREE = 3;
+
+	//turns items into bytes and back, size is how many bytes write will use
+	public interface ElementCodec<E> {
+		String name();
+		int size(E item);
+		void write(ByteBuffer buf, E item);
+		E read(ByteBuffer buf);
+	}
+
+	public static final ElementCodec<Integer> INTEGERS = new ElementCodec<Integer>() {
+		public String name() { return "int"; }
+		public int size(Integer item) { return 4; }
+		public void write(ByteBuffer buf, Integer item) { buf.putInt(item); }
+		public Integer read(ByteBuffer buf) { return buf.getInt(); }
+	};
+
+	public static final ElementCodec<Long> LONGS = new ElementCodec<Long>() {
+		public String name() { return "long"; }
+		public int size(Long item) { return 8; }
+		public void write(ByteBuffer buf, Long item) { buf.putLong(item); }
+		public Long read(ByteBuffer buf) { return buf.getLong(); }
+	};
+
+	//utf 8 bytes after their length
+	public static final ElementCodec<String> STRINGS = new ElementCodec<String>() {
+		public String name() { return "utf8"; }
+		public int size(String item) { return 4 + item.length() * 3; }
+		public void write(ByteBuffer buf, String item) {
+			byte[] bytes = item.getBytes(StandardCharsets.UTF_8);
+			buf.putInt(bytes.length);
+			buf.put(bytes);
+		}
+		public String read(ByteBuffer buf) {
+			byte[] bytes = new byte[buf.getInt()];
+			buf.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	};
+
+	//slots in groups of 64, each group is a bit set of the full slots then their items
+	public static <E> void save(Path file, HashProbing<E> table, ElementCodec<E> codec) throws IOException {
+		try (Writer<E> out = new Writer<E>(file, PROBING, codec)) {
+			E[] slots = table.slots();
+			out.putInt(slots.length);
+			out.putInt(table.size());
+			saveFilter(out, table.filter());
+
+			for (int start = 0; start < slots.length; start += 64) {
+				int end = Math.min(start + 64, slots.length);
+				out.putLong(occupied(slots, start, end));
+
+				for (int i = start; i < end; i++) {
+					if (slots[i] != null)
+						out.putElement(slots[i]);
+				}
+			}
+			out.finish();
+		}
+	}
+
+	//the probe function is not saved, it has to be the one the table was built with
+	public static <E> HashProbing<E> loadProbing(Path file, ElementCodec<E> codec, Probeable p) throws IOException {
+		try (Reader<E> in = new Reader<E>(file, PROBING, codec)) {
+			E[] slots = (E[]) new Object[in.getInt()];
+			int count = in.getInt();
+			DerekHuBloomFilter<E> filter = loadFilter(in);
+
+			for (int start = 0; start < slots.length; start += 64) {
+				long full = in.getLong();
+				for (; full != 0; full &= full - 1)
+					slots[start + Long.numberOfTrailingZeros(full)] = in.getElement();
+			}
+			in.finish();
+			return new HashProbing<E>(slots, count, p, filter);
+		}
+	}
+
+	//buckets in groups of 64 like the probing table, each bucket in use has its length then its items
+	public static <E> void save(Path file, HashChaining<E> table, ElementCodec<E> codec) throws IOException {
+		try (Writer<E> out = new Writer<E>(file, CHAINING, codec)) {
+			LinkedList<E>[] buckets = table.buckets();
+			out.putInt(buckets.length);
+			out.putInt(table.size());
+			saveFilter(out, table.filter());
+
+			for (int start = 0; start < buckets.length; start += 64) {
+				int end = Math.min(start + 64, buckets.length);
+				long full = 0;
+				for (int i = start; i < end; i++) {
+					if (buckets[i] != null && !buckets[i].isEmpty())
+						full |= 1L << (i - start);
+				}
+				out.putLong(full);
+
+				for (; full != 0; full &= full - 1) {
+					LinkedList<E> chain = buckets[start + Long.numberOfTrailingZeros(full)];
+					out.putInt(chain.size());
+					for (E item : chain)
+						out.putElement(item);
+				}
+			}
+			out.finish();
+		}
+	}
+
+	public static <E> HashChaining<E> loadChaining(Path file, ElementCodec<E> codec) throws IOException {
+		try (Reader<E> in = new Reader<E>(file, CHAINING, codec)) {
+			LinkedList<E>[] buckets = new LinkedList[in.getInt()];
+			int count = in.getInt();
+			DerekHuBloomFilter<E> filter = loadFilter(in);
+
+			for (int start = 0; start < buckets.length; start += 64) {
+				long full = in.getLong();
+				for (; full != 0; full &= full - 1) {
+					LinkedList<E> chain = new LinkedList<E>();
+					for (int length = in.getInt(); length > 0; length--)
+						chain.add(in.getElement());
+					buckets[start + Long.numberOfTrailingZeros(full)] = chain;
+				}
+			}
+			in.finish();
+			return new HashChaining<E>(buckets, count, filter);
+		}
+	}
+
+	//each different item smallest first with its number of copies
+	public static <E extends Comparable<E>> void save(Path file, DerekHuBalancedBST<E> tree, ElementCodec<E> codec)
+			throws IOException {
+		try (Writer<E> out = new Writer<E>(file, TREE, codec)) {
+			E[] items = (E[]) new Comparable[tree.capacity()];
+			int[] counts = new int[items.length];
+			int n = tree.inOrder(items, counts);
+
+			out.putInt(n);
+			for (int i = 0; i < n; i++) {
+				out.putElement(items[i]);
+				out.putInt(counts[i]);
+			}
+			out.finish();
+		}
+	}
+
+	public static <E extends Comparable<E>> DerekHuBalancedBST<E> loadTree(Path file, ElementCodec<E> codec)
+			throws IOException {
+		try (Reader<E> in = new Reader<E>(file, TREE, codec)) {
+			int n = in.getInt();
+			E[] items = (E[]) new Comparable[n];
+			int[] counts = new int[n];
+
+			for (int i = 0; i < n; i++) {
+				items[i] = in.getElement();
+				counts[i] = in.getInt();
+
+				//out of order means the codec does not match how the items compare
+				if (i > 0 && items[i - 1].compareTo(items[i]) >= 0)
+					throw new IOException("Snapshot items are not in sorted order");
+			}
+			in.finish();
+
+			DerekHuBalancedBST<E> tree = new DerekHuBalancedBST<E>();
+			tree.buildSorted(items, counts, n);
+			return tree;
+		}
+	}
+
+	//bit i is set if slot start + i has an item
+	private static long occupied(Object[] slots, int start, int end) {
+		long full = 0;
+		for (int i = start; i < end; i++) {
+			if (slots[i] != null)
+				full |= 1L << (i - start);
+		}
+		return full;
+	}
+
+	//the filter's counters as they are, or a length of 0 for no filter
+	private static void saveFilter(Writer<?> out, DerekHuBloomFilter<?> filter) throws IOException {
+		if (filter == null) {
+			out.putInt(0);
+			return;
+		}
+
+		long[] counters = filter.counters();
+		out.putInt(counters.length);
+		out.putInt(filter.hashCount());
+		out.putDouble(filter.expectedFalsePositiveRate());
+		for (long word : counters)
+			out.putLong(word);
+	}
+
+	private static <E> DerekHuBloomFilter<E> loadFilter(Reader<E> in) throws IOException {
+		int length = in.getInt();
+		if (length == 0)
+			return null;
+
+		int hashes = in.getInt();
+		double rate = in.getDouble();
+		long[] counters = new long[length];
+		for (int i = 0; i < length; i++)
+			counters[i] = in.getLong();
+		return new DerekHuBloomFilter<E>(counters, hashes, rate);
+	}
+
+	//fills one block at a time and writes it with its checksum when it is full, into a temporary file that
+	//only replaces the real one once it is complete, so a save that fails never leaves half a snapshot
+	private static class Writer<E> implements Closeable {
+		private Path file;
+		private Path partial;
+		private FileChannel channel;
+		private ElementCodec<E> codec;
+		private ByteBuffer header = ByteBuffer.allocateDirect(BLOCK_HEADER);
+		private ByteBuffer block = ByteBuffer.allocateDirect(BLOCK_SIZE);
+		private CRC32 crc = new CRC32();
+
+		private Writer(Path file, int kind, ElementCodec<E> codec) throws IOException {
+			this.file = file;
+			this.codec = codec;
+			partial = file.resolveSibling(file.getFileName() + ".partial");
+			channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+
+			ByteBuffer start = ByteBuffer.allocate(HEADER_SIZE);
+			start.putInt(MAGIC).putInt(VERSION).putInt(kind);
+			start.putInt(checksum(start.array(), 12));
+			start.flip();
+			writeFully(start);
+
+			//the codec name so loading with a different one fails instead of reading garbage
+			byte[] name = codec.name().getBytes(StandardCharsets.UTF_8);
+			putInt(name.length);
+			room(name.length);
+			block.put(name);
+		}
+
+		private void putInt(int value) throws IOException {
+			room(4);
+			block.putInt(value);
+		}
+
+		private void putLong(long value) throws IOException {
+			room(8);
+			block.putLong(value);
+		}
+
+		private void putDouble(double value) throws IOException {
+			room(8);
+			block.putDouble(value);
+		}
+
+		private void putElement(E item) throws IOException {
+			room(codec.size(item));
+			codec.write(block, item);
+		}
+
+		//items never cross blocks so the reader can hand the codec a whole item
+		private void room(int bytes) throws IOException {
+			if (bytes > BLOCK_SIZE)
+				throw new IllegalArgumentException("Item of " + bytes + " bytes is bigger than a block");
+			if (block.remaining() < bytes)
+				writeBlock();
+		}
+
+		private void writeBlock() throws IOException {
+			block.flip();
+			crc.reset();
+			crc.update(block);
+			block.rewind();
+
+			header.clear();
+			header.putInt(block.remaining()).putInt((int) crc.getValue());
+			header.flip();
+
+			ByteBuffer[] both = {header, block};
+			while (header.hasRemaining() || block.hasRemaining())
+				channel.write(both);
+			block.clear();
+		}
+
+		private void writeFully(ByteBuffer buf) throws IOException {
+			while (buf.hasRemaining())
+				channel.write(buf);
+		}
+
+		//last block then an empty one marking the end, so a cut off file is caught
+		private void finish() throws IOException {
+			if (block.position() > 0)
+				writeBlock();
+			writeBlock();
+			channel.force(false);
+			channel.close();
+			Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+
+		//throws away the temporary file if finish never ran
+		public void close() throws IOException {
+			if (channel.isOpen()) {
+				channel.close();
+				Files.deleteIfExists(partial);
+			}
+		}
+	}
+
+	//reads and checks one block at a time, the codec reads items straight out of it
+	private static class Reader<E> implements Closeable {
+		private FileChannel channel;
+		private ElementCodec<E> codec;
+		private ByteBuffer header = ByteBuffer.allocateDirect(BLOCK_HEADER);
+		private ByteBuffer block = ByteBuffer.allocateDirect(BLOCK_SIZE);
+		private CRC32 crc = new CRC32();
+		private boolean ended;
+
+		private Reader(Path file, int kind, ElementCodec<E> codec) throws IOException {
+			this.codec = codec;
+			channel = FileChannel.open(file, StandardOpenOption.READ);
+			block.limit(0);
+
+			try {
+				ByteBuffer start = ByteBuffer.allocate(HEADER_SIZE);
+				readFully(start);
+				if (start.getInt(0) != MAGIC || start.getInt(12) != checksum(start.array(), 12))
+					throw new IOException("Not a snapshot file or header is corrupt");
+				if (start.getInt(4) > VERSION)
+					throw new IOException("Snapshot version " + start.getInt(4) + " is newer than this reader");
+				if (start.getInt(8) != kind)
+					throw new IOException("Snapshot holds a different kind of structure");
+
+				byte[] name = new byte[getInt()];
+				next(name.length);
+				block.get(name);
+				if (!codec.name().equals(new String(name, StandardCharsets.UTF_8)))
+					throw new IOException("Snapshot was written with the " + new String(name, StandardCharsets.UTF_8)
+							+ " codec, not " + codec.name());
+			} catch (IOException | RuntimeException e) {
+				channel.close();
+				throw e;
+			}
+		}
+
+		private int getInt() throws IOException {
+			next(4);
+			return block.getInt();
+		}
+
+		private long getLong() throws IOException {
+			next(8);
+			return block.getLong();
+		}
+
+		private double getDouble() throws IOException {
+			next(8);
+			return block.getDouble();
+		}
+
+		private E getElement() throws IOException {
+			next(1);
+			try {
+				return codec.read(block);
+			} catch (BufferUnderflowException e) {
+				throw new IOException("Snapshot item runs past its block", e);
+			}
+		}
+
+		//moves to the next block once this one is used up
+		private void next(int bytes) throws IOException {
+			if (block.hasRemaining())
+				return;
+
+			readBlock();
+			if (ended || block.remaining() < bytes)
+				throw new IOException("Snapshot ends early");
+		}
+
+		private void readBlock() throws IOException {
+			header.clear();
+			readFully(header);
+			int length = header.getInt(0);
+			if (length < 0 || length > BLOCK_SIZE)
+				throw new IOException("Corrupt block length " + length);
+
+			block.clear();
+			block.limit(length);
+			readFully(block);
+
+			crc.reset();
+			crc.update(block);
+			block.flip();
+			if ((int) crc.getValue() != header.getInt(4))
+				throw new IOException("Corrupt block at byte " + (channel.position() - length - BLOCK_HEADER));
+			ended = length == 0;
+		}
+
+		//everything was read and the end marker is next
+		private void finish() throws IOException {
+			if (block.hasRemaining())
+				throw new IOException("Snapshot has more data than its structure");
+			readBlock();
+			if (!ended)
+				throw new IOException("Snapshot has more data than its structure");
+		}
+
+		private void readFully(ByteBuffer buf) throws IOException {
+			while (buf.hasRemaining()) {
+				if (channel.read(buf) < 0)
+					throw new IOException("Snapshot ends early");
+			}
+			buf.flip();
+		}
+
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	private static int checksum(byte[] bytes, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, length);
+		return (int) crc.getValue();
+	}
+
+	//builds each structure by adding, saves it, loads it back and checks the two match
+	public static void main(String[] args) throws IOException {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		Path file = args.length > 1 ? Paths.get(args[1]) : Files.createTempFile("snapshot", ".bin");
+		Random rand = new Random(42);
+		int[] keys = new int[n];
+		for (int i = 0; i < n; i++)
+			keys[i] = rand.nextInt();
+
+		System.out.printf("%-26s %10s %10s %10s %10s%n", "structure", "add (ms)", "save (ms)", "load (ms)", "MB");
+
+		long start = System.nanoTime();
+		HashProbing<Integer> probing = new HashProbing<Integer>(n * 2, index -> index + 1, 0.01);
+		for (int key : keys)
+			probing.add(key);
+		long built = System.nanoTime();
+		save(file, probing, INTEGERS);
+		long saved = System.nanoTime();
+		HashProbing<Integer> probingCopy = loadProbing(file, INTEGERS, index -> index + 1);
+		report("HashProbing+filter", file, start, built, saved, System.nanoTime());
+		check(Arrays.equals(probing.slots(), probingCopy.slots()) && probingCopy.contains(keys[n / 2]));
+
+		start = System.nanoTime();
+		HashChaining<Integer> chaining = new HashChaining<Integer>(n);
+		for (int key : keys)
+			chaining.add(key);
+		built = System.nanoTime();
+		save(file, chaining, INTEGERS);
+		saved = System.nanoTime();
+		HashChaining<Integer> chainingCopy = loadChaining(file, INTEGERS);
+		report("HashChaining", file, start, built, saved, System.nanoTime());
+		check(Arrays.equals(chaining.buckets(), chainingCopy.buckets()) && chainingCopy.size() == n);
+
+		start = System.nanoTime();
+		DerekHuBalancedBST<Integer> tree = new DerekHuBalancedBST<Integer>();
+		for (int key : keys)
+			tree.insert(key);
+		built = System.nanoTime();
+		save(file, tree, INTEGERS);
+		saved = System.nanoTime();
+		DerekHuBalancedBST<Integer> treeCopy = loadTree(file, INTEGERS);
+		report("DerekHuBalancedBST", file, start, built, saved, System.nanoTime());
+		check(sameOrder(tree, treeCopy) && treeCopy.contains(keys[n / 2]));
+
+		//a flipped byte in the middle has to be caught
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xFF}), channel.size() / 2);
+		}
+		try {
+			loadTree(file, INTEGERS);
+			check(false);
+		} catch (IOException e) {
+			System.out.println("corrupt file rejected: " + e.getMessage());
+		}
+
+		if (args.length < 2)
+			Files.delete(file);
+	}
+
+	private static void report(String name, Path file, long start, long built, long saved, long loaded)
+			throws IOException {
+		System.out.printf("%-26s %10.1f %10.1f %10.1f %10.1f%n", name, (built - start) / 1e6, (saved - built) / 1e6,
+				(loaded - saved) / 1e6, Files.size(file) / 1e6);
+	}
+
+	private static <E extends Comparable<E>> boolean sameOrder(DerekHuBalancedBST<E> a, DerekHuBalancedBST<E> b) {
+		Object[] itemsA = new Object[a.capacity()];
+		Object[] itemsB = new Object[b.capacity()];
+		int[] countsA = new int[itemsA.length];
+		int[] countsB = new int[itemsB.length];
+		a.inOrder(itemsA, countsA);
+		b.inOrder(itemsB, countsB);
+		return Arrays.equals(itemsA, itemsB) && Arrays.equals(countsA, countsB);
+	}
+
+	private static void check(boolean ok) {
+		if (!ok)
+			throw new IllegalStateException("Loaded structure does not match the saved one");
+	}
+}
\ No newline at end of file
@@ -0,0 +1,96 @@
+/*
+ * Derek Hu
+ * Period 6
+ * Compares the Balanced BST against the B+ Tree on the same random keys. For each tree it reports how
+ * much heap the tree holds after being built and the average time of a lookup, so the cost of one node
+ * per key can be seen next to the array packed nodes.
+ * Usage: java TreeComparison [numKeys] [fanout]
+ */
+
+import java.util.*;
+
+public class TreeComparison {
+
+	private static final int LOOKUPS = 1000000;
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) {
+		int numKeys = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int fanout = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+
+		Random rand = new Random(42);
+		Integer[] keys = new Integer[numKeys];
+		for (int i = 0; i < numKeys; i++)
+			keys[i] = rand.nextInt();
+
+		//probes are half hits and half misses
+		Integer[] probes = new Integer[LOOKUPS];
+		for (int i = 0; i < LOOKUPS; i++)
+			probes[i] = i % 2 == 0 ? keys[rand.nextInt(numKeys)] : rand.nextInt();
+
+		System.out.println("keys: " + numKeys + ", fanout: " + fanout);
+		System.out.printf("%-12s %14s %12s %14s%n", "tree", "heap bytes", "bytes/key", "ns/lookup");
+
+		//avl
+		long before = usedHeap();
+		DerekHuBalancedBST<Integer> avl = new DerekHuBalancedBST<Integer>();
+		for (Integer key : keys)
+			avl.insert(key);
+		long avlBytes = usedHeap() - before;
+
+		double avlNanos = Double.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++)
+			avlNanos = Math.min(avlNanos, timeLookups(avl::contains, probes));
+		report("AVL", avlBytes, numKeys, avlNanos);
+		avl = null;
+
+		//b+ tree
+		before = usedHeap();
+		DerekHuBTree<Integer> btree = new DerekHuBTree<Integer>(fanout);
+		for (Integer key : keys)
+			btree.insert(key);
+		long btreeBytes = usedHeap() - before;
+
+		double btreeNanos = Double.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++)
+			btreeNanos = Math.min(btreeNanos, timeLookups(btree::contains, probes));
+		report("B+ tree", btreeBytes, numKeys, btreeNanos);
+		System.out.println("b+ tree height: " + btree.height());
+	}
+
+	//average nanoseconds for one contains call
+	private static double timeLookups(java.util.function.Predicate<Integer> lookup, Integer[] probes) {
+		int found = 0;
+		long start = System.nanoTime();
+
+		for (Integer probe : probes) {
+			if (lookup.test(probe))
+				found++;
+		}
+		long elapsed = System.nanoTime() - start;
+
+		//keeps the loop from being optimized away
+		if (found < 0)
+			System.out.println(found);
+		return (double) elapsed / probes.length;
+	}
+
+	private static void report(String name, long bytes, int numKeys, double nanos) {
+		System.out.printf("%-12s %14d %12.1f %14.1f%n", name, bytes, (double) bytes / numKeys, nanos);
+	}
+
+	//heap in use after letting the collector settle
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
\ No newline at end of file
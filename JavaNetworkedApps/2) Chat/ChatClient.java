@@ -2,6 +2,11 @@
  * Jiali W. Derek H.
  * Creates a client that allows clients to communicate through a chatbox. 
  * Messages are seen by all clients and a friendlist is displayed.
+ * After the key it says hello, and if the server answers the same way both sides switch to frames.
+ * An older server just passes the hello on to everyone, so seeing it come back means lines it is.
+ * On frames the server says who is here, so the friend list follows its roster and what people say is
+ * only shown. The name the server gave us comes in its own frame too, never from chat text, which anyone
+ * could have typed. On lines the list is still worked out from the names in front of messages.
  */
 
 import java.io.*;
@@ -19,9 +24,12 @@ public class ChatClient extends JFrame {
 	private DefaultListModel<String> friendModel;
 	private String secretKey;			
 	
-	private Scanner reader;				
-	private PrintWriter writer;	
+	private DataInputStream reader;				
+	private OutputStream writer;	
 	private Socket sock;		
+	private boolean frames;					//talking in frames instead of lines
+	private ArrayList<String> early = new ArrayList<String>();		//messages that came during hello
+	private HashSet<String> roster = new HashSet<String>();			//friends, kept beside the list to look up
 
 	private final String SERVER_IP = "10.104.13.75";
 	private final int SERVER_PORT = 4242;
@@ -89,15 +97,32 @@ public class ChatClient extends JFrame {
 		Scanner keyboard = new Scanner(System.in);
 		System.out.print("Enter your name: ");
 		name = keyboard.nextLine();
+		//the server turns these away
+		while (name.trim().equalsIgnoreCase("server") || name.contains(":")) {
+			System.out.print("Names cannot be server or have a colon, enter another: ");
+			name = keyboard.nextLine();
+		}
 
 		setTitle("Chat Client - " +name);
 
 		//Set up all instance variable
 		try {
 			sock = new Socket(SERVER_IP, SERVER_PORT);
-			reader = new Scanner(sock.getInputStream());
-			writer = new PrintWriter(sock.getOutputStream());
-			secretKey = reader.nextLine();
+			reader = new DataInputStream(new BufferedInputStream(sock.getInputStream()));
+			writer = new BufferedOutputStream(sock.getOutputStream());
+			secretKey = ChatMessage.readLine(reader);
+
+			//waits for the answer to hello, or for the hello itself to come back from an older server
+			String hello = name + ": " + ChatMessage.HELLO_LINE;
+			send(hello);
+			String line;
+			while ((line = ChatMessage.readLine(reader)) != null && !line.equals(hello)) {
+				if (line.equals(ChatMessage.HELLO_LINE)) {
+					frames = true;
+					break;
+				}
+				early.add(line);
+			}
 		} 
 		catch (IOException e) {
 			e.printStackTrace();
@@ -105,14 +130,30 @@ public class ChatClient extends JFrame {
 		
 	}
 	
+	//one line to the server, as a frame once hello went through
+	private void send(String line) throws IOException {
+		new ChatMessage(line).writeTo(writer, frames);
+	}
+
+	//next message from the server, null once it hangs up
+	private ChatMessage nextMessage() throws IOException {
+		if (frames)
+			return ChatMessage.read(reader);
+		String line = ChatMessage.readLine(reader);
+		return line == null ? null : new ChatMessage(line);
+	}
+
 	//Send button, sends message to server
 	public class SendButtonListener implements ActionListener {
 
 		//this method extracts the text from the textField and sends it to the server.
 		public void actionPerformed(ActionEvent ev) {
 
-			writer.println(name + ": " + outgoing.getText());
-			writer.flush();
+			try {
+				send(name + ": " + outgoing.getText());
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
 
 			// clears out the text and resets the cursor
 			outgoing.setText("");
@@ -128,8 +169,7 @@ public class ChatClient extends JFrame {
 		public void actionPerformed(ActionEvent ev){
 
 			try{
-				writer.println(name+":logoff:"+secretKey);
-				writer.flush();
+				send(name+":logoff:"+secretKey);
 				
 				sock.close();				
 
@@ -147,28 +187,76 @@ public class ChatClient extends JFrame {
 	class IncomingReader implements Runnable {
 		public void run() {
 			//Read in message from other clients sent from the server
-			while(reader.hasNextLine()) {
+			try {
+				for (String receivedLine : early)
+					show(new ChatMessage(receivedLine));
+				ChatMessage message;
+				while((message = nextMessage()) != null)
+					show(message);
+			} catch (IOException e) {
+				//server went away
+			}
+		}
+
+		private void show(ChatMessage message) {
+			String receivedLine = message.text();
+			switch (message.type()) {
+				case ChatMessage.TEXT:
+					break;
+				case ChatMessage.ROSTER:
+					roster.clear();
+					friendModel.clear();
+					for (String friend : receivedLine.split("\n"))
+						addFriend(friend);
+					return;
+				case ChatMessage.JOINED:
+					addFriend(receivedLine);
+					return;
+				case ChatMessage.LEFT:
+					if (roster.remove(receivedLine))
+						friendModel.removeElement(receivedLine);
+					return;
+				case ChatMessage.NAME:
+					//the server gave us a different name, taken or with spaces
+					name = receivedLine;
+					setTitle("Chat Client - " + name);
+					if (roster.remove(name))
+						friendModel.removeElement(name);
+					return;
+				default:
+					//log off lines are for clients without a roster
+					return;
+			}
+
+			if (frames) {
+				synchronized(incoming) {
+					incoming.append(receivedLine + "\n");
+				}
+				return;
+			}
+
+			String newFriend = receivedLine.substring(0, receivedLine.indexOf(":"));
+			//Remove friends when they log off
+			if(receivedLine.indexOf("logoff:"+secretKey) != -1) 
+				friendModel.removeElement(newFriend);
+			else {
 				
-				String receivedLine = reader.nextLine();
-				String newFriend = receivedLine.substring(0, receivedLine.indexOf(":"));
-				//Remove friends when they log off
-				if(receivedLine.indexOf("logoff:"+secretKey) != -1) 
-					friendModel.removeElement(newFriend);
-				else {
-					
-					//Update text area
-					synchronized(incoming) {
-						incoming.append(receivedLine + "\n");
-					}
-
-					//Update friends
-					if(!name.equals(newFriend) && !friendModel.contains(newFriend))
-						friendModel.addElement(newFriend);
-					
+				//Update text area
+				synchronized(incoming) {
+					incoming.append(receivedLine + "\n");
 				}
+
+				//Update friends, the server answering a command is not one
+				if(!name.equals(newFriend) && !newFriend.equals("server") && !friendModel.contains(newFriend))
+					friendModel.addElement(newFriend);
 				
 			}
 		}
+
+		private void addFriend(String friend) {
+			if (!friend.isEmpty() && !friend.equals(name) && roster.add(friend))
+				friendModel.addElement(friend);
+		}
 	}
 
 	public static void main(String[] args) {
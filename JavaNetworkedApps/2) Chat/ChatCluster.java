@@ -0,0 +1,394 @@
+/*
+ * Derek Hu
+ * Period 4
+ * Several chat servers acting as one, so clients on any of them hear everyone. Every node reads the same
+ * config file, which names each node and the host and port it listens on for the others, dials every other
+ * node and takes their calls. A message to everyone is handed to every peer with an id: the node it
+ * started on, when that node started and its number there. A node passes a message it has not seen before
+ * on to every peer but the one it came from, so messages still get everywhere while a link is down as
+ * long as some path is up, and the id lets each node keep only the first copy. For every origin a node
+ * remembers the highest number it has seen and which of the WINDOW numbers before it, like an anti-replay
+ * window, so memory does not grow with traffic, and a restarted node numbers again under its new start time.
+ * Every link has its own outbox and writer thread, so a slow peer holds up nobody, and the writer dials
+ * again every second while its peer is down. What is queued meanwhile goes out once it is back, up to
+ * PEER_QUEUE messages, after which the oldest are dropped. Each message carries the time it was sent, and
+ * the node keeps how long the last LATENCY_SAMPLES took to arrive for the report.
+ * On the wire a link starts with a version byte and the dialing node's name, then every message is:
+ *
+ *     version (byte)   origin (UTF)   start time (long)   number (long)   sent in micros (long)   frame
+ *
+ * where the frame is the message as a ChatMessage frame. The config file has one node per line and
+ * # starts a comment:
+ *
+ *     a localhost:5001
+ *     b localhost:5002
+ */
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
+
+public class ChatCluster implements Closeable {
+
+	private static final byte VERSION = 1;
+	private static final int WINDOW = 1024;					//numbers below the highest still told apart
+	private static final int PEER_QUEUE = 64 * 1024;		//messages waiting for one peer
+	private static final int BATCH = 64 * 1024;
+	private static final int LATENCY_SAMPLES = 4096;
+	private static final int RETRY_MILLIS = 1000;
+
+	private String name;
+	private long start = System.currentTimeMillis();		//tells this run's numbers from an earlier run's
+	private AtomicLong nextNumber = new AtomicLong();
+	private LinkedHashMap<String, InetSocketAddress> nodes;
+	private ArrayList<Peer> peers = new ArrayList<Peer>();
+	private Consumer<ChatMessage> deliver;
+	private ServerSocket listener;
+	private Set<Socket> callers = ConcurrentHashMap.newKeySet();
+	private volatile boolean closed;
+
+	private ConcurrentHashMap<String, Seen> seen = new ConcurrentHashMap<String, Seen>();
+	private LongAdder published = new LongAdder();
+	private LongAdder relayed = new LongAdder();
+	private LongAdder duplicates = new LongAdder();
+	private long[] latencies = new long[LATENCY_SAMPLES];		//ring of micros, newest last
+	private int latencyNext;
+	private int latencyCount;
+	private ReentrantLock latencyLock = new ReentrantLock();
+
+	//joins the cluster in config as node name, messages from other nodes are handed to deliver
+	public ChatCluster(Path config, String name, Consumer<ChatMessage> deliver) throws IOException {
+		this.name = name;
+		this.deliver = deliver;
+		nodes = readConfig(config);
+		InetSocketAddress own = nodes.get(name);
+		if (own == null)
+			throw new IOException("Node " + name + " is not in " + config);
+
+		listener = new ServerSocket(own.getPort());
+		for (Map.Entry<String, InetSocketAddress> node : nodes.entrySet()) {
+			if (!node.getKey().equals(name))
+				peers.add(new Peer(node.getKey(), node.getValue()));
+		}
+
+		Thread accepter = new Thread(this::acceptLoop, "cluster-accept");
+		accepter.setDaemon(true);
+		accepter.start();
+		for (Peer peer : peers)
+			peer.start();
+	}
+
+	//every node in the file by name, in order
+	public static LinkedHashMap<String, InetSocketAddress> readConfig(Path config) throws IOException {
+		LinkedHashMap<String, InetSocketAddress> nodes = new LinkedHashMap<String, InetSocketAddress>();
+		for (String line : Files.readAllLines(config)) {
+			int comment = line.indexOf('#');
+			if (comment >= 0)
+				line = line.substring(0, comment);
+			line = line.trim();
+			if (line.isEmpty())
+				continue;
+
+			String[] words = line.split("\\s+");
+			int colon = words.length == 2 ? words[1].lastIndexOf(':') : -1;
+			if (colon < 0)
+				throw new IOException("Cluster config lines are \"name host:port\", not \"" + line + "\"");
+			try {
+				nodes.put(words[0], new InetSocketAddress(words[1].substring(0, colon),
+						Integer.parseInt(words[1].substring(colon + 1))));
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Bad address in cluster config: " + words[1]);
+			}
+		}
+		return nodes;
+	}
+
+	//hands a message said here to every peer
+	public void publish(ChatMessage message) {
+		Relay relay = new Relay(name, start, nextNumber.getAndIncrement(), nowMicros(), message);
+		published.increment();
+		for (Peer peer : peers)
+			peer.outbox.offer(relay, false);
+	}
+
+	//what the node has done so far, for the server's report
+	public String report() {
+		int up = 0;
+		long dropped = 0;
+		for (Peer peer : peers) {
+			up += peer.socket != null ? 1 : 0;
+			dropped += peer.outbox.droppedCount();
+		}
+
+		long[] sorted;
+		latencyLock.lock();
+		try {
+			sorted = Arrays.copyOf(latencies, latencyCount);
+		} finally {
+			latencyLock.unlock();
+		}
+		Arrays.sort(sorted);
+		String latency = sorted.length == 0 ? "no relay latency yet" : String.format(
+				"relay latency p50 %d us, p99 %d us, max %d us over the last %d", sorted[sorted.length / 2],
+				sorted[(int) (sorted.length * 0.99)], sorted[sorted.length - 1], sorted.length);
+
+		return String.format("Cluster node %s: %d/%d links up, published %d, relayed in %d, %d duplicates dropped, "
+				+ "%d dropped for slow peers, %s", name, up, peers.size(), published.sum(), relayed.sum(),
+				duplicates.sum(), dropped, latency);
+	}
+
+	//stops taking calls and hangs up on every peer
+	public void close() throws IOException {
+		closed = true;
+		listener.close();
+		for (Peer peer : peers)
+			peer.close();
+		for (Socket caller : callers)
+			caller.close();
+	}
+
+	private void acceptLoop() {
+		while (!closed) {
+			try {
+				Socket caller = listener.accept();
+				Thread reader = new Thread(() -> receive(caller), "cluster-from");
+				reader.setDaemon(true);
+				reader.start();
+			} catch (IOException e) {
+				if (!closed)
+					e.printStackTrace();
+			}
+		}
+	}
+
+	//reads what one peer relays, delivering and passing on first copies
+	private void receive(Socket caller) {
+		callers.add(caller);
+		try {
+			caller.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(caller.getInputStream()));
+			String from = hello(in);
+			if (from == null)
+				return;
+			Thread.currentThread().setName("cluster-from-" + from);
+
+			int version;
+			while ((version = in.read()) >= 0) {
+				if (version != VERSION)
+					throw new IOException("Unknown relay version " + version + " from " + from);
+				String origin = in.readUTF();
+				long runStart = in.readLong();
+				long number = in.readLong();
+				long sent = in.readLong();
+				ChatMessage message = ChatMessage.read(in);
+				if (message == null)
+					break;
+
+				if (origin.equals(name) || !seen.computeIfAbsent(origin, o -> new Seen()).first(runStart, number)) {
+					duplicates.increment();
+					continue;
+				}
+				sample(nowMicros() - sent);
+				relayed.increment();
+
+				//passed on first, delivering can wait on slow clients
+				Relay relay = new Relay(origin, runStart, number, sent, message);
+				for (Peer peer : peers) {
+					if (!peer.name.equals(from) && !peer.name.equals(origin))
+						peer.outbox.offer(relay, false);
+				}
+				deliver.accept(message);
+			}
+		} catch (IOException e) {
+			//peer went away, it dials again
+		} finally {
+			callers.remove(caller);
+			try {
+				caller.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	//the name a caller gives, null if it is not a node in the config
+	private String hello(DataInputStream in) throws IOException {
+		int version = in.read();
+		String from = version == VERSION ? in.readUTF() : null;
+		if (from == null || from.equals(name) || !nodes.containsKey(from)) {
+			System.err.println("Cluster: turned away a caller that is not a peer");
+			return null;
+		}
+		return from;
+	}
+
+	private void sample(long micros) {
+		latencyLock.lock();
+		try {
+			latencies[latencyNext] = micros;
+			latencyNext = (latencyNext + 1) % latencies.length;
+			latencyCount = Math.min(latencyCount + 1, latencies.length);
+		} finally {
+			latencyLock.unlock();
+		}
+	}
+
+	//wall clock micros, so nodes on different machines can compare them as well as their clocks agree
+	private static long nowMicros() {
+		Instant now = Instant.now();
+		return now.getEpochSecond() * 1000000 + now.getNano() / 1000;
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	//one message on its way between nodes
+	private static class Relay {
+		private String origin;
+		private long start;
+		private long number;
+		private long sent;
+		private ChatMessage message;
+
+		private Relay(String origin, long start, long number, long sent, ChatMessage message) {
+			this.origin = origin;
+			this.start = start;
+			this.number = number;
+			this.sent = sent;
+			this.message = message;
+		}
+
+		private int size() {
+			return message.size() + origin.length() + 27;
+		}
+
+		private void writeTo(DataOutputStream out, WritableByteChannel channel) throws IOException {
+			out.writeByte(VERSION);
+			out.writeUTF(origin);
+			out.writeLong(start);
+			out.writeLong(number);
+			out.writeLong(sent);
+			channel.write(message.frame());
+		}
+	}
+
+	//the numbers seen from one origin, the highest and a bit for each of the WINDOW before it
+	private static class Seen {
+		private long start;
+		private long highest = -1;
+		private long[] bits = new long[WINDOW / 64];
+		private ReentrantLock lock = new ReentrantLock();
+
+		//true the first time number from the run of the origin that began at runStart comes by, anything
+		//too old to tell is taken as seen
+		private boolean first(long runStart, long number) {
+			lock.lock();
+			try {
+				if (runStart < start)
+					return false;
+				if (runStart > start) {
+					start = runStart;
+					highest = -1;
+					Arrays.fill(bits, 0);
+				}
+
+				if (number > highest) {
+					if (number - highest >= WINDOW)
+						Arrays.fill(bits, 0);
+					else {
+						for (long n = highest + 1; n < number; n++)
+							bits[index(n)] &= ~mask(n);
+					}
+					highest = number;
+				}
+				else if (highest - number >= WINDOW || (bits[index(number)] & mask(number)) != 0)
+					return false;
+
+				bits[index(number)] |= mask(number);
+				return true;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private static int index(long number) {
+			return (int) (number % WINDOW / 64);
+		}
+
+		private static long mask(long number) {
+			return 1L << (number % 64);
+		}
+	}
+
+	//the link to one peer, its writer dials until the peer answers and sends what is queued
+	private class Peer {
+		private String name;
+		private InetSocketAddress address;
+		private Outbox<Relay> outbox = new Outbox<Relay>(PEER_QUEUE, Outbox.Policy.DROP_OLDEST, Relay::size);
+		private volatile Socket socket;			//null while the link is down
+
+		private Peer(String name, InetSocketAddress address) {
+			this.name = name;
+			this.address = address;
+		}
+
+		private void start() {
+			Thread writer = new Thread(this::writeLoop, "cluster-to-" + name);
+			writer.setDaemon(true);
+			writer.start();
+		}
+
+		private void writeLoop() {
+			Relay[] batch = new Relay[ChatServer.MAX_GATHER];
+			while (!closed) {
+				try (Socket s = new Socket()) {
+					s.connect(address, RETRY_MILLIS);
+					s.setTcpNoDelay(true);
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), BATCH));
+					WritableByteChannel channel = Channels.newChannel(out);
+					out.writeByte(VERSION);
+					out.writeUTF(ChatCluster.this.name);
+					out.flush();
+					socket = s;
+					if (closed)
+						return;
+
+					//one flush sends everything waiting
+					while (outbox.awaitBatch(BATCH, 0)) {
+						int count = outbox.drainTo(batch, 0, BATCH);
+						for (int i = 0; i < count; i++) {
+							batch[i].writeTo(out, channel);
+							batch[i] = null;
+						}
+						out.flush();
+					}
+					return;
+				} catch (IOException e) {
+					//peer down or gone, what was in the batch is lost to this link but may come by another
+					socket = null;
+					if (!closed)
+						sleep(RETRY_MILLIS);
+				}
+			}
+		}
+
+		private void close() throws IOException {
+			outbox.close();
+			Socket s = socket;
+			if (s != null)
+				s.close();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,232 @@
+/*
+ * Derek Hu
+ * Period 4
+ * This runs a chat cluster on one machine and checks that clients on every node hear everything once. It
+ * writes a config file for the nodes, starts each node as its own server process, connects clients to
+ * every node and has each of them send numbered messages stamped with when they were sent. Every client
+ * counts what it gets from each sender, so a lost or doubled message shows up, and times how long messages
+ * took from clients on its own node and from clients on others. The nodes print their own relay counts
+ * and latency when they are stopped. Any more arguments are passed to every node, like --nio. The run
+ * exits with 1 if anything was missing or doubled or a client gave up waiting, so scripts can tell.
+ *
+ * java ChatClusterTest [nodes] [clients per node] [messages per client] [server flags]      default is 3 2 500
+ */
+
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+
+public class ChatClusterTest {
+
+	private static final int CHAT_PORT = 4400;
+	private static final int PEER_PORT = 5400;
+	private static final long PACE_MICROS = 2000;		//between one client's messages
+	private static final long WAIT_MILLIS = 20000;
+
+	public static void main(String[] args) throws Exception {
+		int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		int perNode = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+		int messages = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+		List<String> flags = Arrays.asList(args).subList(Math.min(args.length, 3), args.length);
+
+		Path config = Files.createTempFile("chat-cluster", ".conf");
+		ArrayList<String> lines = new ArrayList<String>();
+		for (int n = 0; n < nodes; n++)
+			lines.add("n" + n + " localhost:" + (PEER_PORT + n));
+		Files.write(config, lines);
+
+		ArrayList<Process> servers = new ArrayList<Process>();
+		ArrayList<Client> clients = new ArrayList<Client>();
+		boolean passed = true;
+		try {
+			for (int n = 0; n < nodes; n++) {
+				ArrayList<String> command = new ArrayList<String>(Arrays.asList(javaTool("java"), "-cp",
+						System.getProperty("java.class.path"), "ChatServer", "--port", CHAT_PORT + n + "",
+						"--cluster", config.toString(), "--node", "n" + n));
+				command.addAll(flags);
+				servers.add(new ProcessBuilder(command).inheritIO().start());
+			}
+
+			for (int n = 0; n < nodes; n++) {
+				for (int c = 0; c < perNode; c++)
+					clients.add(new Client("n" + n + "c" + c, n, CHAT_PORT + n, nodes * perNode, messages + 1));
+			}
+			for (Client client : clients)
+				client.start();
+
+			//the first message from everyone gets through once every link is up, nothing is timed until then
+			for (Client client : clients)
+				client.say(0);
+			for (Client client : clients)
+				passed &= client.await(1);
+			System.out.println(passed ? "every link is up" : "gave up waiting for every link");
+
+			ExecutorService senders = Executors.newFixedThreadPool(clients.size());
+			for (Client client : clients) {
+				senders.execute(() -> {
+					for (int i = 1; i <= messages; i++) {
+						client.say(i);
+						LockSupport.parkNanos(PACE_MICROS * 1000);
+					}
+				});
+			}
+			senders.shutdown();
+			senders.awaitTermination(1, TimeUnit.MINUTES);
+			boolean arrived = true;
+			for (Client client : clients)
+				arrived &= client.await(messages + 1);
+			if (!arrived)
+				System.out.println("gave up waiting for the last messages after " + WAIT_MILLIS + " ms");
+
+			passed &= arrived & report(clients, messages + 1);
+		} finally {
+			for (Client client : clients)
+				client.close();
+			//one at a time so their reports do not run together
+			for (Process server : servers) {
+				server.destroy();
+				server.waitFor(10, TimeUnit.SECONDS);
+			}
+			Files.deleteIfExists(config);
+		}
+		if (!passed) {
+			System.out.println("FAILED");
+			System.exit(1);
+		}
+	}
+
+	//only once the readers are done with what they counted, true if every client got everything once
+	private static boolean report(ArrayList<Client> clients, int expected) throws InterruptedException {
+		long missing = 0;
+		long doubled = 0;
+		ArrayList<Long> local = new ArrayList<Long>();
+		ArrayList<Long> relayed = new ArrayList<Long>();
+		for (Client client : clients) {
+			client.close();
+			client.join(1000);
+			for (int[] counts : client.counts.values()) {
+				for (int i = 1; i < counts.length; i++) {
+					missing += counts[i] == 0 ? 1 : 0;
+					doubled += Math.max(0, counts[i] - 1);
+				}
+			}
+			missing += (long) (clients.size() - client.counts.size()) * (expected - 1);
+			local.addAll(client.local);
+			relayed.addAll(client.relayed);
+		}
+
+		System.out.printf("%d clients on %d nodes, %d messages each: %d missing, %d doubled%n", clients.size(),
+				clients.get(clients.size() - 1).node + 1, expected - 1, missing, doubled);
+		System.out.printf("%-10s %10s %10s %10s %10s%n", "from", "messages", "p50 us", "p99 us", "max us");
+		print("same node", local);
+		print("other node", relayed);
+		return missing == 0 && doubled == 0;
+	}
+
+	private static void print(String name, ArrayList<Long> micros) {
+		if (micros.isEmpty())
+			return;
+		Collections.sort(micros);
+		System.out.printf("%-10s %10d %10d %10d %10d%n", name, micros.size(), micros.get(micros.size() / 2),
+				micros.get((int) (micros.size() * 0.99)), micros.get(micros.size() - 1));
+	}
+
+	private static String javaTool(String name) {
+		return Paths.get(System.getProperty("java.home"), "bin", name).toString();
+	}
+
+	//one client on a node, its reader counts what comes from each sender and how long it took
+	private static class Client extends Thread {
+		private String name;
+		private int node;
+		private int senders;
+		private Socket sock;
+		private BufferedReader in;
+		private PrintWriter out;
+		private int messages;
+		//all guarded by this, counts has how often each number came from each sender and arrived how
+		//many senders each number has come from
+		private HashMap<String, int[]> counts = new HashMap<String, int[]>();
+		private int[] arrived;
+		private ArrayList<Long> local = new ArrayList<Long>();
+		private ArrayList<Long> relayed = new ArrayList<Long>();
+
+		private Client(String name, int node, int port, int senders, int messages) throws Exception {
+			super("client-" + name);
+			setDaemon(true);
+			this.name = name;
+			this.node = node;
+			this.senders = senders;
+			this.messages = messages;
+			arrived = new int[messages];
+
+			for (int tries = 0; sock == null; tries++) {
+				try {
+					sock = new Socket("localhost", port);
+				} catch (ConnectException e) {
+					//node still starting
+					if (tries > 50)
+						throw e;
+					Thread.sleep(100);
+				}
+			}
+			in = new BufferedReader(new InputStreamReader(sock.getInputStream(), "UTF-8"));
+			out = new PrintWriter(new OutputStreamWriter(sock.getOutputStream(), "UTF-8"), true);
+			in.readLine();
+		}
+
+		//every message is "name: number sent"
+		private void say(int number) {
+			synchronized (out) {
+				out.println(name + ": " + number + " " + System.nanoTime());
+			}
+		}
+
+		public void run() {
+			try {
+				String line;
+				while ((line = in.readLine()) != null) {
+					int colon = line.indexOf(": ");
+					String[] words = line.substring(colon + 2).split(" ");
+					if (colon < 0 || words.length != 2)
+						continue;
+					String from = line.substring(0, colon);
+					int number = Integer.parseInt(words[0]);
+					long micros = (System.nanoTime() - Long.parseLong(words[1])) / 1000;
+
+					if (number < 0 || number >= messages)
+						continue;
+
+					synchronized (this) {
+						int[] seen = counts.computeIfAbsent(from, f -> new int[messages]);
+						if (++seen[number] == 1 && ++arrived[number] == senders)
+							notifyAll();
+						if (number > 0)
+							(from.startsWith("n" + node + "c") ? local : relayed).add(micros);
+					}
+				}
+			} catch (IOException | NumberFormatException e) {
+				//hung up
+			}
+		}
+
+		//waits until the message numbered number - 1 has come from every sender, false if it gave up
+		private synchronized boolean await(int number) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+			while (arrived[number - 1] < senders && System.currentTimeMillis() < deadline)
+				wait(Math.max(1, deadline - System.currentTimeMillis()));
+			return arrived[number - 1] == senders;
+		}
+
+		private void close() {
+			try {
+				sock.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
\ No newline at end of file
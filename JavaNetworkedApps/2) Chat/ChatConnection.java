@@ -0,0 +1,26 @@
+/*
+ * Derek Hu
+ * Period 4
+ * One connected chat client as the server sees it. The thread per client handler and the selector based
+ * reactor both hand the server these, so sending to everyone works the same no matter how a client is served.
+ * Every one has its own bounded outbox, so sending only queues the line and never waits on the client's socket.
+ */
+
+public interface ChatConnection {
+
+	//queues a message for this client, false if its queue is full and the sender should be held off
+	boolean send(ChatMessage message);
+
+	//queues a message past the limit without waiting, for the few the protocol cannot lose
+	void sendAlways(ChatMessage message);
+
+	//stops reading from sender until this client's queue has room again, after send said false
+	void waitForRoom(ChatConnection sender);
+
+	//the client said hello, it is read as frames from the next byte on and written to as frames right
+	//after the answer
+	void useFrames();
+
+	//hangs up on this client
+	void close();
+}
\ No newline at end of file
@@ -0,0 +1,151 @@
+/*
+ * Derek Hu
+ * Period 4
+ * This measures what each connected client costs the chat server in every mode. It starts the server in
+ * its own process, connects more and more clients that each wait for the secret key, and after each step
+ * reads the server's thread count and resident memory from /proc and its heap after a full collection from
+ * jcmd. The heap is fixed and touched up front so resident memory only grows with what lives outside it,
+ * like thread stacks. Run it on Java 21 or newer to see virtual threads, older ones fall back to platform
+ * threads and the server says so. Linux only, since it reads /proc.
+ *
+ * java ChatLoadTest [modes] [connection counts]      default is threads,virtual,nio 1000,2000,5000,10000
+ */
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.*;
+
+public class ChatLoadTest {
+
+	private static final int PORT = 4343;
+	private static final String HEAP = "512m";
+	private static final Pattern HEAP_USED = Pattern.compile("total \\d+K, used (\\d+)K");
+
+	public static void main(String[] args) throws Exception {
+		String[] modes = (args.length > 0 ? args[0] : "threads,virtual,nio").split(",");
+		String[] steps = (args.length > 1 ? args[1] : "1000,2000,5000,10000").split(",");
+
+		System.out.println("java " + System.getProperty("java.version") + ", heap " + HEAP + " fixed");
+		System.out.printf("%-8s %12s %8s %10s %10s %14s %14s%n", "mode", "connections", "threads", "heap MB",
+				"rss MB", "heap KB/conn", "rss KB/conn");
+
+		for (String mode : modes) {
+			int[] counts = new int[steps.length];
+			for (int i = 0; i < steps.length; i++)
+				counts[i] = Integer.parseInt(steps[i]);
+			run(mode, counts);
+		}
+	}
+
+	//one server process, connections added in steps and measured after each
+	private static void run(String mode, int[] counts) throws Exception {
+		ArrayList<String> command = new ArrayList<String>(Arrays.asList(javaTool("java"), "-Xms" + HEAP, "-Xmx" + HEAP,
+				"-XX:+AlwaysPreTouch", "-cp", System.getProperty("java.class.path"), "ChatServer", "--port", PORT + ""));
+		if (mode.equals("virtual"))
+			command.add("--virtual");
+		else if (mode.equals("nio"))
+			command.add("--nio");
+
+		Process server = new ProcessBuilder(command).inheritIO().start();
+		ArrayList<Socket> clients = new ArrayList<Socket>();
+
+		try {
+			connect(clients, 1);
+			long[] base = measure(server.pid());
+			print(mode, 1, base, base);
+
+			for (int count : counts) {
+				connect(clients, count);
+				print(mode, count, base, measure(server.pid()));
+			}
+		} catch (IOException e) {
+			System.out.println(mode + " stopped at " + clients.size() + " connections: " + e.getMessage());
+		} finally {
+			for (Socket s : clients)
+				s.close();
+			server.destroy();
+			server.waitFor(10, TimeUnit.SECONDS);
+		}
+	}
+
+	//opens connections until there are count, each one waits for its key so the server has set it up
+	private static void connect(ArrayList<Socket> clients, int count) throws IOException {
+		while (clients.size() < count) {
+			Socket s = null;
+			for (int tries = 0; s == null; tries++) {
+				try {
+					s = new Socket("localhost", PORT);
+				} catch (ConnectException e) {
+					//server still starting
+					if (tries > 50)
+						throw e;
+					sleep(100);
+				}
+			}
+			clients.add(s);
+
+			s.setSoTimeout(10000);
+			InputStream in = s.getInputStream();
+			while (in.read() != '\n') {
+				//skips the key
+			}
+		}
+	}
+
+	//threads, resident KB and heap used KB of the server
+	private static long[] measure(long pid) throws IOException {
+		sleep(500);
+		run(javaTool("jcmd"), pid + "", "GC.run");
+		long heap = 0;
+
+		//every generation or heap line is "total ...K, used ...K", whichever collector is running
+		for (String line : run(javaTool("jcmd"), pid + "", "GC.heap_info")) {
+			Matcher used = HEAP_USED.matcher(line);
+			if (used.find())
+				heap += Long.parseLong(used.group(1));
+		}
+
+		long threads = 0;
+		long rss = 0;
+		for (String line : Files.readAllLines(Paths.get("/proc/" + pid + "/status"))) {
+			if (line.startsWith("Threads:"))
+				threads = Long.parseLong(line.substring(8).trim());
+			else if (line.startsWith("VmRSS:"))
+				rss = Long.parseLong(line.substring(6, line.length() - 2).trim());
+		}
+		return new long[] {threads, rss, heap};
+	}
+
+	private static void print(String mode, int count, long[] base, long[] now) {
+		int added = Math.max(1, count - 1);
+		System.out.printf("%-8s %12d %8d %10.1f %10.1f %14.1f %14.1f%n", mode, count, now[0], now[2] / 1024.0,
+				now[1] / 1024.0, (double) (now[2] - base[2]) / added, (double) (now[1] - base[1]) / added);
+	}
+
+	private static List<String> run(String... command) throws IOException {
+		Process p = new ProcessBuilder(command).redirectErrorStream(true).start();
+		ArrayList<String> lines = new ArrayList<String>();
+		try (BufferedReader out = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = out.readLine()) != null)
+				lines.add(line);
+		}
+		return lines;
+	}
+
+	private static String javaTool(String name) {
+		return Paths.get(System.getProperty("java.home"), "bin", name).toString();
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
\ No newline at end of file
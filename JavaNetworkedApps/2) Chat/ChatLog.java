@@ -0,0 +1,367 @@
+/*
+ * Derek Hu
+ * Period 4
+ * Everything said to everyone, kept on disk so it outlasts the server. The log is a folder of segments,
+ * each a file of a fixed size mapped into memory and named after the number of the first message in it.
+ * A message is appended by copying it into the mapped file, which is only memory until the operating
+ * system writes it out, so a committer thread forces the newest segment to disk every few milliseconds.
+ * One force covers every message appended since the last one, which is group commit. A segment that fills
+ * up is handed to the committer too, so appending never waits for a disk. Messages are:
+ *
+ *     size (int, the whole record)   crc32 of the text (int)   time in millis (long)   text (UTF-8)
+ *
+ * and a size of 0 is where the segment ends. Beside each segment is an index, also mapped, holding the
+ * time, position and number in the segment of every message that starts at least INDEX_EVERY bytes after
+ * the last one indexed.
+ * Finding where a time starts is a binary search over the segments' first times, a binary search over
+ * that segment's index and then a scan of at most INDEX_EVERY bytes. A replay that is cut off keeps the
+ * newest messages, found the same way by their numbers, so asking for the last hour never shows only the
+ * start of it. On start the last segment is only
+ * read from its last good index entry on, to find where writing left off.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
+import java.util.zip.*;
+
+public class ChatLog implements Closeable {
+
+	private static final int HEADER = 16;
+	private static final int INDEX_EVERY = 4096;			//bytes of log between index entries
+	private static final int INDEX_ENTRY = 16;				//time (long), position (int), number (int)
+	private static final String LOG = ".log";
+	private static final String INDEX = ".index";
+
+	private Path folder;
+	private int segmentBytes;
+	private long commitNanos;
+	private ArrayList<Segment> segments = new ArrayList<Segment>();
+	private ArrayList<Segment> filled = new ArrayList<Segment>();	//full segments the committer has not forced
+	private long nextNumber;								//number the next message gets
+	private long lastTime;
+
+	private ReentrantLock lock = new ReentrantLock();
+	private Condition appended = lock.newCondition();
+	private boolean dirty;									//appended to since the last force
+	private boolean closed;
+	private long commits;
+	private Thread committer;
+
+	//opens the log in folder, making it if it is new, and starts committing every commitMillis
+	public ChatLog(Path folder, int segmentBytes, long commitMillis) throws IOException {
+		if (segmentBytes < HEADER + INDEX_EVERY)
+			throw new IllegalArgumentException("Segments must be at least " + (HEADER + INDEX_EVERY) + " bytes");
+		this.folder = folder;
+		this.segmentBytes = segmentBytes;
+		this.commitNanos = commitMillis * 1000000;
+		Files.createDirectories(folder);
+
+		ArrayList<Long> numbers = new ArrayList<Long>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, "*" + LOG)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				numbers.add(Long.parseLong(name.substring(0, name.length() - LOG.length())));
+			}
+		}
+		Collections.sort(numbers);
+		for (long first : numbers)
+			segments.add(new Segment(first));
+
+		if (segments.isEmpty())
+			segments.add(new Segment(0));
+		Segment last = segments.get(segments.size() - 1);
+		last.recover();
+		nextNumber = last.first + last.count;
+		lastTime = last.lastTime;
+
+		committer = new Thread(this::commitLoop, "chat-log-commit");
+		committer.setDaemon(true);
+		committer.start();
+	}
+
+	//adds a message at the end of the log, it is on disk within the commit time
+	public void append(String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		int size = HEADER + bytes.length;
+		if (size > segmentBytes - 4)
+			throw new IOException("Message of " + bytes.length + " bytes is too big for a segment");
+
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length);
+
+		lock.lock();
+		try {
+			if (closed)
+				throw new IOException("Chat log is closed");
+
+			Segment last = segments.get(segments.size() - 1);
+			if (last.end + size > segmentBytes - 4) {
+				//the committer forces the finished segment along with the next commit
+				filled.add(last);
+				last = new Segment(nextNumber);
+				segments.add(last);
+			}
+
+			//time never runs backwards in the log, so binary searches work even if the clock does
+			lastTime = Math.max(lastTime, System.currentTimeMillis());
+			last.append(bytes, (int) crc.getValue(), lastTime);
+			nextNumber++;
+			dirty = true;
+			appended.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//hands each the newest limit messages from time on, oldest first
+	public int replay(long time, int limit, Consumer<String> each) {
+		ArrayList<Segment> from;
+		long number;
+		lock.lock();
+		try {
+			//the newest limit messages are the ones from this number on
+			number = Math.max(0, nextNumber - limit);
+
+			//the last segment that starts before time and at or before number, messages before it are all
+			//older. One that starts at time may follow messages from the same millisecond at the end of the
+			//segment before it
+			int low = 0;
+			int high = segments.size() - 1;
+			while (low < high) {
+				int middle = (low + high + 1) >>> 1;
+				if (segments.get(middle).firstTime() < time && segments.get(middle).first <= number)
+					low = middle;
+				else
+					high = middle - 1;
+			}
+			from = new ArrayList<Segment>(segments.subList(low, segments.size()));
+		} finally {
+			lock.unlock();
+		}
+
+		int sent = 0;
+		for (Segment segment : from) {
+			sent += segment.replay(time, number, limit - sent, each);
+			if (sent == limit)
+				break;
+		}
+		return sent;
+	}
+
+	//messages in the log
+	public long size() {
+		lock.lock();
+		try {
+			return nextNumber;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//times the log has been forced, every one covering all the appends since the one before
+	public long commits() {
+		lock.lock();
+		try {
+			return commits;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//commits what is left and stops the committer
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			if (closed)
+				return;
+			closed = true;
+			appended.signal();
+		} finally {
+			lock.unlock();
+		}
+		try {
+			committer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (Segment segment : filled)
+			segment.force();
+		filled.clear();
+		segments.get(segments.size() - 1).force();
+	}
+
+	//waits for something to be appended, gives more appends the commit time to join it, then one force
+	//makes all of them durable. Segments that filled meanwhile are forced first, outside the lock
+	private void commitLoop() {
+		while (true) {
+			Segment last;
+			ArrayList<Segment> full;
+			lock.lock();
+			try {
+				while (!dirty && !closed)
+					appended.awaitUninterruptibly();
+				if (closed)
+					return;
+
+				long wait = commitNanos;
+				while (wait > 0 && !closed)
+					wait = appended.awaitNanos(wait);
+				dirty = false;
+				commits++;
+				last = segments.get(segments.size() - 1);
+				full = filled;
+				filled = new ArrayList<Segment>();
+			} catch (InterruptedException e) {
+				return;
+			} finally {
+				lock.unlock();
+			}
+			for (Segment segment : full)
+				segment.force();
+			last.force();
+		}
+	}
+
+	private static MappedByteBuffer map(Path file, int bytes) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			//mappings stay valid after the channel is closed
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+		}
+	}
+
+	//one log file and its index
+	private class Segment {
+		private long first;						//number of its first message
+		private MappedByteBuffer log;
+		private MappedByteBuffer index;
+		private volatile int end;				//where the next message goes, readers see up to here
+		private int entries;
+		private int lastIndexed = -INDEX_EVERY;
+		private long count;
+		private long lastTime;
+
+		private Segment(long first) throws IOException {
+			this.first = first;
+			String name = String.format("%020d", first);
+			log = map(folder.resolve(name + LOG), segmentBytes);
+			index = map(folder.resolve(name + INDEX), (segmentBytes / INDEX_EVERY + 1) * INDEX_ENTRY);
+
+			//a full segment never moves again, so the index says where it ends well enough for reading
+			while (entries * INDEX_ENTRY < index.capacity() && index.getLong(entries * INDEX_ENTRY) != 0)
+				entries++;
+			if (entries > 0)
+				end = segmentBytes;
+		}
+
+		//the first message's time, the first message is always indexed
+		private long firstTime() {
+			return entries == 0 ? Long.MAX_VALUE : index.getLong(0);
+		}
+
+		private void append(byte[] bytes, int crc, long time) {
+			int at = end;
+			ByteBuffer record = log.duplicate();
+			record.position(at + 4);
+			record.putInt(crc).putLong(time).put(bytes);
+			record.putInt(0);						//marks the end, in case this is an old file being reused
+			log.putInt(at, HEADER + bytes.length);	//size last so a torn record looks like the end
+
+			if (at - lastIndexed >= INDEX_EVERY) {
+				index.putLong(entries * INDEX_ENTRY, time).putInt(entries * INDEX_ENTRY + 8, at)
+						.putInt(entries * INDEX_ENTRY + 12, (int) count);
+				entries++;
+				lastIndexed = at;
+			}
+			count++;
+			lastTime = time;
+			end = at + HEADER + bytes.length;
+		}
+
+		//finds the end by reading on from the last index entry that points at a good message, and drops
+		//index entries past it
+		private void recover() {
+			int start = entries;
+			while (start > 0 && !valid(index.getInt((start - 1) * INDEX_ENTRY + 8)))
+				start--;
+			int at = start == 0 ? 0 : index.getInt((start - 1) * INDEX_ENTRY + 8);
+			count = start == 0 ? 0 : index.getInt((start - 1) * INDEX_ENTRY + 12);
+			for (int i = start; i < entries; i++)
+				index.putLong(i * INDEX_ENTRY, 0).putInt(i * INDEX_ENTRY + 8, 0).putInt(i * INDEX_ENTRY + 12, 0);
+			entries = start;
+			lastIndexed = start == 0 ? -INDEX_EVERY : at;
+
+			while (valid(at)) {
+				lastTime = log.getLong(at + 8);
+				at += log.getInt(at);
+				count++;
+			}
+			end = at;
+		}
+
+		//a whole message whose text matches its crc starts at at
+		private boolean valid(int at) {
+			if (at < 0 || at + HEADER > segmentBytes)
+				return false;
+			int size = log.getInt(at);
+			if (size < HEADER || at + size > segmentBytes)
+				return false;
+
+			byte[] bytes = new byte[size - HEADER];
+			ByteBuffer record = log.duplicate();
+			record.position(at + HEADER);
+			record.get(bytes);
+			CRC32 crc = new CRC32();
+			crc.update(bytes, 0, bytes.length);
+			return (int) crc.getValue() == log.getInt(at + 4);
+		}
+
+		//messages from time on numbered from on, starting from the last index entry before both
+		private int replay(long time, long from, int limit, Consumer<String> each) {
+			int stop = end;
+			int low = 0;
+			int high = entries - 1;
+			int at = 0;
+			long number = first;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				if (index.getLong(middle * INDEX_ENTRY) < time && first + index.getInt(middle * INDEX_ENTRY + 12) <= from) {
+					at = index.getInt(middle * INDEX_ENTRY + 8);
+					number = first + index.getInt(middle * INDEX_ENTRY + 12);
+					low = middle + 1;
+				}
+				else
+					high = middle - 1;
+			}
+
+			ByteBuffer reader = log.duplicate();
+			int sent = 0;
+			while (sent < limit && at + HEADER <= stop) {
+				int size = reader.getInt(at);
+				if (size < HEADER)
+					break;
+				if (number >= from && reader.getLong(at + 8) >= time) {
+					byte[] bytes = new byte[size - HEADER];
+					reader.position(at + HEADER);
+					reader.get(bytes);
+					each.accept(new String(bytes, StandardCharsets.UTF_8));
+					sent++;
+				}
+				at += size;
+				number++;
+			}
+			return sent;
+		}
+
+		private void force() {
+			log.force();
+			index.force();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,138 @@
+/*
+ * Derek Hu
+ * Period 4
+ * One message on its way to clients, encoded at most once however many clients get it. A client that
+ * says "/hello binary 1" right after the key is answered with the same line and from then on both sides
+ * send frames instead of lines: a version byte, a type byte, the payload length as an int and the payload
+ * in UTF-8. Clients that never say hello keep getting plain lines. The encoded bytes are kept in read only
+ * buffers and every client is handed a duplicate, which shares the bytes and only has its own position.
+ * Clients on frames also hear who is here from the server: their own name and the whole roster once, right
+ * after the answer to hello, then a frame for everyone who joins or leaves. Names in a roster are one per
+ * line. Only the server sends frames of those types, so unlike a chat line nobody else can fake one.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+
+public class ChatMessage {
+
+	public static final byte VERSION = 1;
+	public static final byte TEXT = 1;				//a chat line
+	public static final byte HELLO = 2;				//the answer to hello, always a line, frames follow it, never dropped
+	public static final byte ROSTER = 3;			//everyone here by name
+	public static final byte JOINED = 4;			//one name
+	public static final byte LEFT = 5;
+	public static final byte LOGOFF = 6;			//a client's log off line, only clients on lines need it
+	public static final byte NAME = 7;				//the name the server gave the one client it goes to
+	public static final int HEADER = 6;
+	public static final int MAX_LENGTH = 1024 * 1024;
+	public static final String HELLO_LINE = "/hello binary " + VERSION;
+
+	private byte type;
+	private String text;
+	private volatile ByteBuffer line;				//encoded when first wanted, a race only encodes twice
+	private volatile ByteBuffer frame;
+
+	public ChatMessage(String text) {
+		this(TEXT, text);
+	}
+
+	public ChatMessage(byte type, String text) {
+		this.type = type;
+		this.text = text;
+	}
+
+	public byte type() {
+		return type;
+	}
+
+	public String text() {
+		return text;
+	}
+
+	//about how many bytes it takes up, close enough for outbox budgets
+	public int size() {
+		return text.length() + HEADER;
+	}
+
+	//the message as a line, a duplicate for one client to write
+	public ByteBuffer line() {
+		ByteBuffer b = line;
+		if (b == null) {
+			b = ByteBuffer.wrap((text + "\n").getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+			line = b;
+		}
+		return b.duplicate();
+	}
+
+	//the message as a frame, a duplicate for one client to write
+	public ByteBuffer frame() {
+		ByteBuffer b = frame;
+		if (b == null) {
+			byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+			ByteBuffer f = ByteBuffer.allocate(HEADER + payload.length);
+			f.put(VERSION).put(type).putInt(payload.length).put(payload).flip();
+			b = f.asReadOnlyBuffer();
+			frame = b;
+		}
+		return b.duplicate();
+	}
+
+	public ByteBuffer encoded(boolean frames) {
+		return frames ? frame() : line();
+	}
+
+	//sends the message on a stream, for clients
+	public void writeTo(OutputStream out, boolean frames) throws IOException {
+		Channels.newChannel(out).write(encoded(frames));
+		out.flush();
+	}
+
+	//payload length of the frame whose header starts at bytes[start], -1 if it is not a frame this reads
+	public static int frameLength(byte[] bytes, int start) {
+		if (bytes[start] != VERSION)
+			return -1;
+		int length = ByteBuffer.wrap(bytes, start + 2, 4).getInt();
+		return length < 0 || length > MAX_LENGTH ? -1 : length;
+	}
+
+	//the next frame, null at the end of the stream
+	public static ChatMessage read(DataInputStream in) throws IOException {
+		int version = in.read();
+		if (version < 0)
+			return null;
+		if (version != VERSION)
+			throw new IOException("Unknown frame version " + version);
+
+		byte type = in.readByte();
+		int length = in.readInt();
+		if (length < 0 || length > MAX_LENGTH)
+			throw new IOException("Frame of " + length + " bytes");
+		byte[] payload = new byte[length];
+		in.readFully(payload);
+		return new ChatMessage(type, new String(payload, StandardCharsets.UTF_8));
+	}
+
+	//the next line without its line ending, null at the end of the stream, reads no further than the
+	//newline so frames right after it are left for read
+	public static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) != '\n') {
+			if (b < 0) {
+				if (bytes.size() == 0)
+					return null;
+				break;
+			}
+			if (bytes.size() == MAX_LENGTH)
+				throw new IOException("Line longer than " + MAX_LENGTH + " bytes");
+			bytes.write(b);
+		}
+
+		byte[] line = bytes.toByteArray();
+		int length = line.length > 0 && line[line.length - 1] == '\r' ? line.length - 1 : line.length;
+		return new String(line, 0, length, StandardCharsets.UTF_8);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,484 @@
+/*
+ * Derek Hu
+ * Period 4
+ * This runs many chat clients on one thread with a Selector instead of giving each its own thread. The
+ * thread waits for any of its sockets to have bytes to read or room to write. Reads all go into one buffer
+ * per reactor and are cut into lines as they arrive, and only a client that sent half a line holds on to a
+ * buffer, borrowed from a pool, until the rest shows up. Sends from any thread are queued on the client
+ * and written when its socket has room, so a slow client never makes the reactor wait. The reactor cannot
+ * wait for a full outbox either, so under the block policy the line goes in anyway and whoever sent it is
+ * not read from again until that outbox is half empty, which holds the sender back the same way.
+ * A client with something to write sends all of it in one gathering write. With a linger time the reactor
+ * leaves a client's writes switched off that long after its first queued line, unless its batch fills first.
+ * A client that said hello is read as frames, which are cut out of the shared buffer the same way lines
+ * are, and written to from the same encoded message every other client gets.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class ChatReactor implements Runnable {
+
+	private static final int READ_SIZE = 64 * 1024;
+	private static final int LINE_SIZE = 4 * 1024;			//pooled buffer for a half read line
+	private static final int MAX_LINE = 1024 * 1024;		//longer lines get the client dropped
+	private static final int MAX_POOLED = 1024;
+
+	private ChatServer server;
+	private Selector selector;
+	private ByteBuffer readBuffer = ByteBuffer.allocate(READ_SIZE);
+	private ArrayDeque<ByteBuffer> pool = new ArrayDeque<ByteBuffer>();
+	private ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	private ByteBuffer[] gather = new ByteBuffer[ChatServer.MAX_GATHER];	//one write's worth, any client
+	private ChatMessage[] batch = new ChatMessage[ChatServer.MAX_GATHER];
+	private ArrayDeque<Connection> lingering = new ArrayDeque<Connection>();	//by when they write, oldest first
+	private volatile boolean running = true;
+	private Thread owner;
+
+	public ChatReactor(ChatServer s) throws IOException {
+		server = s;
+		selector = Selector.open();
+	}
+
+	//hands a newly accepted socket to this reactor, safe from any thread
+	public void register(SocketChannel channel) {
+		runLater(() -> {
+			try {
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				Connection client = new Connection(channel);
+				client.key = channel.register(selector, SelectionKey.OP_READ, client);
+				server.connected(client);
+			} catch (IOException e) {
+				closeQuietly(channel);
+			}
+		});
+	}
+
+	//starts the reactor on its own thread
+	public Thread start(String name) {
+		owner = new Thread(this, name);
+		owner.start();
+		return owner;
+	}
+
+	public void stop() {
+		running = false;
+		selector.wakeup();
+	}
+
+	//waits for sockets that are ready and serves them
+	public void run() {
+		try {
+			while (running) {
+				//sleeps only until the next lingering client is due
+				Connection next = lingering.peek();
+				if (next == null)
+					selector.select();
+				else {
+					long wait = next.writeAt - System.nanoTime();
+					if (wait <= 0)
+						selector.selectNow();
+					else
+						selector.select((wait + 999999) / 1000000);
+				}
+
+				Runnable task;
+				while ((task = tasks.poll()) != null)
+					task.run();
+
+				long now = System.nanoTime();
+				while (!lingering.isEmpty() && lingering.peek().writeAt - now <= 0)
+					lingering.poll().writeNow();
+
+				for (SelectionKey key : selector.selectedKeys()) {
+					Connection client = (Connection) key.attachment();
+					if (key.isValid() && key.isWritable())
+						client.write();
+					if (key.isValid() && key.isReadable())
+						client.read();
+				}
+				selector.selectedKeys().clear();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			for (SelectionKey key : selector.keys())
+				((Connection) key.attachment()).close();
+			closeQuietly(selector);
+		}
+	}
+
+	//runs task on the reactor thread, selector keys may only be changed there
+	private void runLater(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	private ByteBuffer borrow() {
+		ByteBuffer buf = pool.poll();
+		return buf != null ? buf : ByteBuffer.allocate(LINE_SIZE);
+	}
+
+	private void giveBack(ByteBuffer buf) {
+		buf.clear();
+		if (buf.capacity() == LINE_SIZE && pool.size() < MAX_POOLED)
+			pool.add(buf);
+	}
+
+	private static void closeQuietly(Closeable c) {
+		try {
+			c.close();
+		} catch (IOException e) {
+			//already gone
+		}
+	}
+
+	//a client served by this reactor
+	public class Connection implements ChatConnection {
+
+		private SocketChannel channel;
+		private SelectionKey key;
+		private ByteBuffer partial;						//start of a line still being read, null if none
+		private Outbox<ChatMessage> outbox = server.newOutbox();
+		private boolean writeWanted;					//there is something to write, OP_WRITE is on or lingering
+		private boolean hurried;						//batch filled while lingering, writing now
+		private boolean lingers;						//waiting for more to write, reactor thread only
+		private long writeAt;
+		private ByteBuffer[] unsent;					//what the last write left behind, null if nothing
+		private boolean readsFrames;					//reactor thread only, like writesFrames
+		private boolean writesFrames;
+		private boolean closed;
+		private HashSet<Connection> waiting = new HashSet<Connection>();	//senders held off by this outbox
+		private int holds;								//outboxes this one is held off by, reactor thread only
+
+		private Connection(SocketChannel c) {
+			channel = c;
+		}
+
+		//queues the message and asks the reactor to write it once the socket has room
+		public boolean send(ChatMessage message) {
+			Outbox.Offer offered = outbox.offer(message, false);
+			if (offered == Outbox.Offer.DISCONNECT) {
+				System.err.println("Disconnecting a client whose outbox is full");
+				close();
+				return true;
+			}
+			wantWrite();
+			return offered != Outbox.Offer.OVER_LIMIT;
+		}
+
+		public void sendAlways(ChatMessage message) {
+			outbox.put(message);
+			wantWrite();
+		}
+
+		//called on the reactor thread while it reads the hello, so the bytes after it are read as frames.
+		//write switches to frames when it takes the answer out, so it is put where drop-oldest cannot
+		//throw it away
+		public void useFrames() {
+			readsFrames = true;
+			sendAlways(new ChatMessage(ChatMessage.HELLO, ChatMessage.HELLO_LINE));
+		}
+
+		//the first line waits out the linger time unless the batch is already full, a full batch cuts
+		//short a wait already going
+		private void wantWrite() {
+			boolean full = outbox.bytes() >= server.batchBytes();
+			Runnable schedule;
+			synchronized (this) {
+				if (closed)
+					return;
+				if (!writeWanted) {
+					writeWanted = true;
+					schedule = server.lingerNanos() > 0 && !full ? this::writeLater : this::writeNow;
+				}
+				else if (full && !hurried) {
+					hurried = true;
+					schedule = this::writeNow;
+				}
+				else
+					return;
+			}
+			runLater(schedule);
+		}
+
+		//only clients of a reactor can be held off, a thread per client sender waits in send instead
+		public void waitForRoom(ChatConnection sender) {
+			if (!(sender instanceof Connection))
+				return;
+
+			Connection held = (Connection) sender;
+			synchronized (this) {
+				if (closed || !waiting.add(held))
+					return;
+			}
+			held.onReactor(() -> {
+				held.holds++;
+				held.updateInterest();
+			});
+
+			//the writer may have made room before sender was on the list
+			if (outbox.hasRoom())
+				letWaitingGo();
+		}
+
+		public void close() {
+			onReactor(this::closeNow);
+		}
+
+		//runs task on the thread of the reactor serving this client
+		private void onReactor(Runnable task) {
+			if (Thread.currentThread() == owner)
+				task.run();
+			else
+				runLater(task);
+		}
+
+		//reads unless held off, writes while there is something queued and not lingering, reactor thread only
+		private void updateInterest() {
+			if (!key.isValid())
+				return;
+			synchronized (this) {
+				boolean writing = writeWanted && !lingers;
+				key.interestOps((holds > 0 ? 0 : SelectionKey.OP_READ) | (writing ? SelectionKey.OP_WRITE : 0));
+			}
+		}
+
+		//gives more lines the linger time to show up before writing
+		private void writeLater() {
+			lingers = true;
+			writeAt = System.nanoTime() + server.lingerNanos();
+			lingering.add(this);
+		}
+
+		private void writeNow() {
+			lingers = false;
+			updateInterest();
+		}
+
+		//every sender held off by this outbox can be read from again
+		private void letWaitingGo() {
+			Connection[] senders;
+			synchronized (this) {
+				if (waiting.isEmpty())
+					return;
+				senders = waiting.toArray(new Connection[waiting.size()]);
+				waiting.clear();
+			}
+			for (Connection sender : senders) {
+				sender.onReactor(() -> {
+					sender.holds--;
+					sender.updateInterest();
+				});
+			}
+		}
+
+		//reads whatever arrived and passes on each finished line or frame
+		private void read() {
+			readBuffer.clear();
+			int count;
+			try {
+				count = channel.read(readBuffer);
+			} catch (IOException e) {
+				count = -1;
+			}
+			if (count < 0) {
+				closeNow();
+				return;
+			}
+			readBuffer.flip();
+
+			//a hello switches to frames partway through
+			byte[] bytes = readBuffer.array();
+			int start = 0;
+			while (start < readBuffer.limit() && !closed) {
+				int used = readsFrames ? frameFrom(bytes, start, readBuffer.limit()) : lineFrom(bytes, start, readBuffer.limit());
+				if (used < 0)
+					return;
+				start += used;
+			}
+		}
+
+		//takes bytes up to the next newline, passing on the line if that finishes it and holding on to
+		//the start of it if not, returns how many bytes it took or -1 if the client was dropped
+		private int lineFrom(byte[] bytes, int start, int end) {
+			int i = start;
+			while (i < end && bytes[i] != '\n')
+				i++;
+
+			if (i == end) {
+				if (partial == null)
+					partial = borrow();
+				return keep(bytes, start, end - start) ? end - start : -1;
+			}
+
+			if (partial == null)
+				lineRead(bytes, start, i - start);
+			else {
+				if (!keep(bytes, start, i - start))
+					return -1;
+				lineRead(partial.array(), 0, partial.position());
+				giveBack(partial);
+				partial = null;
+			}
+			return i + 1 - start;
+		}
+
+		//takes bytes of the next frame, passing it on if they finish it, a whole frame in the read buffer is
+		//used right where it is
+		private int frameFrom(byte[] bytes, int start, int end) {
+			if (partial == null) {
+				int length = end - start >= ChatMessage.HEADER ? ChatMessage.frameLength(bytes, start) : 0;
+				if (length < 0) {
+					closeNow();
+					return -1;
+				}
+				if (end - start >= ChatMessage.HEADER + length) {
+					frameRead(bytes, start, length);
+					return ChatMessage.HEADER + length;
+				}
+				partial = borrow();
+			}
+
+			//the header first so the length is known, then the rest of the frame
+			int used = 0;
+			while (true) {
+				int have = partial.position();
+				int total = ChatMessage.HEADER;
+				if (have >= ChatMessage.HEADER) {
+					int length = ChatMessage.frameLength(partial.array(), 0);
+					if (length < 0) {
+						closeNow();
+						return -1;
+					}
+					total += length;
+				}
+
+				if (have == total) {
+					frameRead(partial.array(), 0, total - ChatMessage.HEADER);
+					giveBack(partial);
+					partial = null;
+					return used;
+				}
+				int take = Math.min(total - have, end - start - used);
+				if (take == 0)
+					return used;
+				if (!keep(bytes, start + used, take))
+					return -1;
+				used += take;
+			}
+		}
+
+		//adds bytes to the half read line, growing it past the pooled size if it has to
+		private boolean keep(byte[] bytes, int start, int length) {
+			if (partial.remaining() < length) {
+				int needed = partial.position() + length;
+				if (needed > MAX_LINE + ChatMessage.HEADER) {
+					closeNow();
+					return false;
+				}
+				ByteBuffer bigger = ByteBuffer.allocate(Math.max(needed, partial.capacity() * 2));
+				partial.flip();
+				bigger.put(partial);
+				giveBack(partial);
+				partial = bigger;
+			}
+			partial.put(bytes, start, length);
+			return true;
+		}
+
+		private void lineRead(byte[] bytes, int start, int length) {
+			//same as Scanner.nextLine with windows line endings
+			if (length > 0 && bytes[start + length - 1] == '\r')
+				length--;
+			server.received(this, new String(bytes, start, length, StandardCharsets.UTF_8));
+		}
+
+		//clients only send text frames, anything else is skipped
+		private void frameRead(byte[] bytes, int start, int length) {
+			if (bytes[start + 1] == ChatMessage.TEXT)
+				server.received(this, new String(bytes, start + ChatMessage.HEADER, length, StandardCharsets.UTF_8));
+		}
+
+		//writes queued lines a batch at a time until they are gone or the socket is full
+		private void write() {
+			try {
+				while (true) {
+					//whatever the last write left goes out before anything new
+					int count;
+					if (unsent != null) {
+						count = unsent.length;
+						System.arraycopy(unsent, 0, gather, 0, count);
+						unsent = null;
+					}
+					else {
+						count = outbox.drainTo(batch, 0, server.batchBytes());
+						if (count == 0) {
+							synchronized (this) {
+								if (outbox.isEmpty()) {
+									writeWanted = false;
+									hurried = false;
+									updateInterest();
+									break;
+								}
+							}
+							continue;
+						}
+
+						//every client gets a duplicate of the same bytes
+						for (int i = 0; i < count; i++) {
+							gather[i] = batch[i].encoded(writesFrames);
+							if (batch[i].type() == ChatMessage.HELLO)
+								writesFrames = true;
+							batch[i] = null;
+						}
+					}
+
+					channel.write(gather, 0, count);
+					int sent = 0;
+					while (sent < count && !gather[sent].hasRemaining())
+						sent++;
+					server.wrote(sent, 1);
+
+					//socket is full, OP_WRITE stays on
+					if (sent < count)
+						unsent = Arrays.copyOfRange(gather, sent, count);
+					Arrays.fill(gather, 0, count, null);
+					if (unsent != null)
+						break;
+				}
+			} catch (IOException e) {
+				Arrays.fill(gather, null);
+				Arrays.fill(batch, null);
+				closeNow();
+				return;
+			}
+			if (outbox.hasRoom())
+				letWaitingGo();
+		}
+
+		private void closeNow() {
+			synchronized (this) {
+				if (closed)
+					return;
+				closed = true;
+			}
+			outbox.close();
+			unsent = null;
+			lingering.remove(this);
+			letWaitingGo();
+			if (partial != null) {
+				giveBack(partial);
+				partial = null;
+			}
+			key.cancel();
+			closeQuietly(channel);
+			server.disconnected(this);
+		}
+	}
+}
\ No newline at end of file
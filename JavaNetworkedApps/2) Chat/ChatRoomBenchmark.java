@@ -0,0 +1,92 @@
+/*
+ * Derek Hu
+ * Period 4
+ * This measures what a room message costs the chat server against a message to everyone. It connects
+ * clients that live in memory, so only the server's own work is timed and not the network, puts them in
+ * rooms evenly and then times messages sent to a room and messages sent to everyone. A room message
+ * should cost about as much as the room has members, however many clients are connected.
+ *
+ * java ChatRoomBenchmark [clients] [rooms] [room messages]      default is 10000 1000 200000
+ */
+
+import java.util.*;
+import java.util.function.*;
+
+public class ChatRoomBenchmark {
+
+	public static void main(String[] args) {
+		int clients = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int rooms = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		int messages = args.length > 2 ? Integer.parseInt(args[2]) : 200000;
+
+		ChatServer server = new ChatServer();
+		Counting[] everyone = new Counting[clients];
+		for (int i = 0; i < clients; i++) {
+			everyone[i] = new Counting();
+			server.connected(everyone[i]);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < clients; i++)
+			server.received(everyone[i], "user" + i + ": /join room" + i % rooms);
+		long joinNanos = System.nanoTime() - start;
+
+		IntSummaryStatistics sizes = new IntSummaryStatistics();
+		for (int count : server.roomCounts().values())
+			sizes.accept(count);
+		System.out.printf("%d clients joined %d rooms in %.1f ms, members per room min %d avg %.1f max %d%n",
+				clients, sizes.getCount(), joinNanos / 1e6, sizes.getMin(), sizes.getAverage(), sizes.getMax());
+		System.out.printf("%-12s %10s %10s %14s %20s%n", "to", "messages", "ms", "us/message", "deliveries/message");
+
+		//warms up both paths before timing them
+		for (int round = 0; round < 2; round++) {
+			boolean print = round == 1;
+			time("room", messages, everyone, print, i ->
+					server.received(everyone[i % clients], "user" + i % clients + ": /to room" + i % clients % rooms + " hi"));
+			time("everyone", Math.max(1, messages / rooms), everyone, print, i ->
+					server.received(everyone[i % clients], "user" + i % clients + ": hi"));
+		}
+	}
+
+	private static void time(String name, int messages, Counting[] everyone, boolean print, IntConsumer send) {
+		long before = delivered(everyone);
+		long start = System.nanoTime();
+		for (int i = 0; i < messages; i++)
+			send.accept(i);
+		long nanos = System.nanoTime() - start;
+
+		if (print)
+			System.out.printf("%-12s %10d %10.1f %14.2f %20.1f%n", name, messages, nanos / 1e6, nanos / 1e3 / messages,
+					(double) (delivered(everyone) - before) / messages);
+	}
+
+	private static long delivered(Counting[] everyone) {
+		long total = 0;
+		for (Counting client : everyone)
+			total += client.received;
+		return total;
+	}
+
+	//a client that only counts what it is sent, after encoding it like a real one would
+	private static class Counting implements ChatConnection {
+		private long received;
+
+		public boolean send(ChatMessage message) {
+			received += message.line().remaining() > 0 ? 1 : 0;
+			return true;
+		}
+
+		public void sendAlways(ChatMessage message) {
+			send(message);
+		}
+
+		public void waitForRoom(ChatConnection sender) {
+		}
+
+		public void useFrames() {
+		}
+
+		public void close() {
+		}
+	}
+}
\ No newline at end of file
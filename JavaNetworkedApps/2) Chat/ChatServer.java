@@ -3,96 +3,799 @@
  * Period 4
  * This program acts as the server to transmit messages between clients in a chatting interface.
  * Will accept infinite clients and send messages between everyone.
+ * By default every client gets its own thread. With --virtual those are virtual threads, which cost a
+ * few KB each instead of a whole stack. With --nio a few selector threads serve every client instead.
+ * Both need far less memory per client once there are thousands, and clients cannot tell the difference
+ * since every mode speaks the same lines. Stopping the server closes every client and waits for their
+ * handlers to finish.
+ * Sending to everyone only puts the line in each client's outbox, which its own writer empties, so a
+ * client that stops reading holds up nobody else. Its outbox holds --queue lines and --slow says what to do
+ * when it fills: drop-oldest throws away its oldest line, disconnect hangs up on it, and block makes the
+ * sender wait (with --nio the sender is not read from until the outbox is half empty).
+ * Writers send everything waiting in an outbox, up to --batch bytes, with one gathering write instead of a
+ * write per line. --linger makes a writer wait that many milliseconds for a batch to fill before sending,
+ * fewer writes for a little latency. The server counts lines and writes and says how many write calls
+ * batching saved when it stops, and every --stats seconds if asked.
+ * Clients that say hello get length prefixed frames instead of lines, see ChatMessage. Either way a message
+ * is encoded once and every client's outbox gets the same bytes.
+ * Messages go to everyone unless they are sent to a room. "/join room" and "/leave room" change which
+ * rooms a client is in, "/to room text" reaches only that room's members and "/rooms" lists every room
+ * with how many are in it. Rooms are kept as sets of members looked up by name, so a room message costs
+ * as much as the room is big, not as many clients as are connected. A room goes away with its last member.
+ * The name in front of a client's first line becomes its name on the server, and every line after goes
+ * out under that name whatever the client puts in front, or with it in front if the line has none. Lines
+ * from a client that has not given a name yet are turned away. A name already taken gets a number added
+ * and the client is told. "server" is kept for the server's own lines and names cannot have a colon, so
+ * nobody can pass their lines off as the server's. "/msg name text" looks the name up and goes to that one
+ * client only.
+ * Clients on frames get their own name and the roster when they say hello and then a frame whenever someone joins
+ * or leaves, so they never have to work out who is here from what is said. A log off line goes out as
+ * its own kind of frame, which those clients skip, while clients on lines still get it as before.
+ * The last --history messages to everyone are kept in a ring and a new client gets them right after the
+ * key, queued together so they go out in one write. With --log every message to everyone is also kept on
+ * disk in a ChatLog, and "/history minutes" or "/history 2024-05-01T18:30" sends a client what was said
+ * since then. The ring and the log are added to in the same step that picks who hears a message, so a
+ * client that joins meanwhile gets it once, either from the ring or live.
+ * With --cluster several servers act as one, each started with the same config file and its own --node
+ * name, see ChatCluster. Messages to everyone reach the clients of every node, while rooms, private
+ * messages, names and presence stay with the node a client is on. The report adds how many messages
+ * were relayed and how long they took.
+ *
+ * java ChatServer [--virtual] [--nio [reactors]] [--queue lines] [--slow drop-oldest|disconnect|block]
+ *                 [--batch bytes] [--linger ms] [--stats seconds] [--history messages]
+ *                 [--log folder] [--segment MB] [--commit ms] [--cluster file --node name]
  */
 
 import java.io.*;
 import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.time.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
 
 public class ChatServer {
-	private ArrayList<PrintWriter> clientOutputStreams;  
+	private static final int PORT = 4242;
+	private static final int QUEUE = 1024;
+	private static final int BATCH = 64 * 1024;
+	private static final int MAX_ROOM_NAME = 64;
+	private static final int MAX_NAME = 32;
+	private static final String SERVER_NAME = "server";		//in front of every line the server says itself
+	private static final int HISTORY = 50;
+	private static final int HISTORY_MINUTES = 60;
+	public static final int MAX_GATHER = 1024;		//buffers one gathering write takes, the usual IOV_MAX
+
+	//copied on every join and leave, so sending to everyone never locks and never sees it change
+	private CopyOnWriteArrayList<ChatConnection> clientOutputStreams;  
+	private ConcurrentHashMap<String, Set<ChatConnection>> rooms = new ConcurrentHashMap<String, Set<ChatConnection>>();
+	private ConcurrentHashMap<ChatConnection, Set<String>> joined = new ConcurrentHashMap<ChatConnection, Set<String>>();
+	private ConcurrentHashMap<String, ChatConnection> byName = new ConcurrentHashMap<String, ChatConnection>();
+	private ConcurrentHashMap<ChatConnection, String> names = new ConcurrentHashMap<ChatConnection, String>();
+	private HashSet<ChatConnection> framed = new HashSet<ChatConnection>();		//told about presence
+	private ReentrantLock presenceLock = new ReentrantLock();		//names change and framed clients hear it in one step
 	private String secretKey;
 
-	public  ChatServer() {
+	private int port = PORT;
+	private int reactors;					//selector threads, 0 for a thread per client
+	private int queueLimit = QUEUE;			//lines waiting for one client
+	private Outbox.Policy slowPolicy = Outbox.Policy.DROP_OLDEST;
+	private int batchBytes = BATCH;			//most one write sends
+	private long lingerNanos;				//how long a writer waits for a batch to fill, 0 for not at all
+	private int statsSeconds;
+	private LongAdder linesWritten = new LongAdder();
+	private LongAdder writeCalls = new LongAdder();
+	private int historySize = HISTORY;
+	private ChatMessage[] recent = new ChatMessage[0];		//ring of the last messages to everyone
+	private int recentNext;
+	private int recentCount;
+	private ReentrantLock historyLock = new ReentrantLock();
+	private Path logFolder;
+	private int segmentMB = 64;
+	private long commitMillis = 5;
+	private ChatLog log;
+	private Path clusterConfig;
+	private String nodeName;
+	private ChatCluster cluster;
+	private boolean virtualThreads;
+	private ExecutorService handlers;
+	private ChatReactor[] loops;
+	private Closeable listener;
+	private volatile boolean running = true;
+
+	public ChatServer() {
 		//randomly generated key
 		secretKey = (int)(Math.random() * 100000) + "";
-		clientOutputStreams = new ArrayList<PrintWriter>();
-		try {
-			ServerSocket server = new ServerSocket(4242);
-			
-			//infinitely accepts and initializes
-			while (true) {
-				Socket theSock = server.accept();
-				ClientHandler threadJob = new ClientHandler(theSock);
-				Thread newThread = new Thread(threadJob);
-				newThread.start();
+		clientOutputStreams = new CopyOnWriteArrayList<ChatConnection>();
+	}
+
+	//accepts clients until stop is called
+	public void serve() {
+		//a new client's key and history have to fit in its outbox together
+		recent = new ChatMessage[Math.max(0, Math.min(historySize, queueLimit - 1))];
+		if (logFolder != null) {
+			try {
+				log = new ChatLog(logFolder, segmentMB * 1024 * 1024, commitMillis);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return;
+			}
+		}
+		if (clusterConfig != null) {
+			try {
+				cluster = new ChatCluster(clusterConfig, nodeName, this::relayed);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return;
 			}
+		}
+
+		if (statsSeconds > 0) {
+			Thread stats = new Thread(() -> {
+				while (running) {
+					sleep(statsSeconds * 1000L);
+					report();
+				}
+			}, "stats");
+			stats.setDaemon(true);
+			stats.start();
+		}
+
+		try {
+			if (reactors > 0)
+				serveNio();
+			else
+				serveThreads();
 		} catch(IOException e) {
+			if (running)
+				e.printStackTrace();
+		}
+	}
+
+	//a thread for every client
+	private void serveThreads() throws IOException {
+		handlers = handlerThreads(virtualThreads);
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(port));
+		listener = server;
+		
+		//infinitely accepts and initializes
+		while (running) {
+			SocketChannel theSock = server.accept();
+			handlers.execute(new ClientHandler(theSock));
+		}
+	}
+
+	//a few selector threads share every client, new ones are dealt out in turn
+	private void serveNio() throws IOException {
+		loops = new ChatReactor[reactors];
+		for (int i = 0; i < reactors; i++) {
+			loops[i] = new ChatReactor(this);
+			loops[i].start("reactor-" + i);
+		}
+		
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(port));
+		listener = server;
+		
+		//infinitely accepts and initializes
+		for (int next = 0; running; next = (next + 1) % reactors)
+			loops[next].register(server.accept());
+	}
+
+	//virtual threads when the jvm has them (java 21 and up), otherwise a platform thread per client
+	private static ExecutorService handlerThreads(boolean virtual) {
+		if (virtual) {
+			try {
+				return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException e) {
+				System.err.println("Virtual threads need Java 21 or newer, using platform threads");
+			}
+		}
+		return Executors.newCachedThreadPool();
+	}
+
+	//stops accepting, hangs up on every client and waits for the handlers to finish
+	public void stop() {
+		running = false;
+		try {
+			if (listener != null)
+				listener.close();
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
+
+		for (ChatConnection client : clientOutputStreams)
+			client.close();
+
+		if (loops != null) {
+			for (ChatReactor loop : loops)
+				loop.stop();
+		}
+		if (handlers != null) {
+			handlers.shutdown();
+			try {
+				if (!handlers.awaitTermination(5, TimeUnit.SECONDS))
+					handlers.shutdownNow();
+			} catch (InterruptedException e) {
+				handlers.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+		}
+		report();
+
+		if (cluster != null) {
+			try {
+				cluster.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		if (log != null) {
+			try {
+				log.close();
+				System.out.println("Chat log holds " + log.size() + " messages, forced to disk " + log.commits() + " times");
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	//lines sent against write calls made, before batching every line was its own write
+	public void report() {
+		long lines = linesWritten.sum();
+		long writes = writeCalls.sum();
+		System.out.printf("Wrote %d lines in %d writes, %d write calls saved (%.1f lines per write)%n",
+				lines, writes, lines - writes, writes == 0 ? 0.0 : (double) lines / writes);
+		if (cluster != null)
+			System.out.println(cluster.report());
+	}
+
+	//writers count every gathering write here
+	public void wrote(int lines, int writes) {
+		linesWritten.add(lines);
+		writeCalls.add(writes);
+	}
+
+	public int batchBytes() {
+		return batchBytes;
+	}
+
+	public long lingerNanos() {
+		return lingerNanos;
+	}
+
+	//the queue every client gets, sized and handled the way the server was started with
+	public Outbox<ChatMessage> newOutbox() {
+		return new Outbox<ChatMessage>(queueLimit, slowPolicy, ChatMessage::size);
+	}
+
+	//a new client gets the key before anything else, then what was said last
+	public void connected(ChatConnection client) {
+		client.send(new ChatMessage(secretKey));
+		joined.put(client, ConcurrentHashMap.newKeySet());
+
+		historyLock.lock();
+		try {
+			for (int i = 0; i < recentCount; i++)
+				client.send(recent[(recentNext - recentCount + i + recent.length) % recent.length]);
+			clientOutputStreams.add(client);
+		} finally {
+			historyLock.unlock();
+		}
+	}
+
+	//every line a client sends goes to everyone, except commands which the server handles
+	public void received(ChatConnection client, String message) {
+		int colon = message.indexOf(": ");
+		String text = colon < 0 ? message : message.substring(colon + 2);
+		String name = names.get(client);
+		if (colon >= 0 && name == null) {
+			name = claim(client, message.substring(0, colon));
+			//claim told the client why
+			if (name == null)
+				return;
+		}
+
+		//a log off goes out under the client's own name too, so nobody can log someone else off
+		if (colon < 0 && message.endsWith(":logoff:" + secretKey)) {
+			if (name != null)
+				tellEveryone(client, new ChatMessage(ChatMessage.LOGOFF, name + ":logoff:" + secretKey));
+			return;
+		}
+		if (name == null) {
+			reply(client, "start your first message with your name, like \"ana: hi\"");
+			return;
+		}
+		message = name + ": " + text;
+
+		//anything that is not a command is just chat, even if it starts with a slash
+		String[] words = text.split(" ", 3);
+		switch (words[0]) {
+			case "/hello":
+				hello(client, words);
+				break;
+			case "/join":
+				if (words.length > 1 && validRoom(client, words[1]))
+					join(client, words[1]);
+				break;
+			case "/leave":
+				if (words.length > 1)
+					leave(client, words[1]);
+				break;
+			case "/to":
+				if (words.length > 2)
+					tellRoom(client, words[1], name + ": [" + words[1] + "] " + words[2]);
+				break;
+			case "/rooms":
+				listRooms(client);
+				break;
+			case "/msg":
+				if (words.length > 2 && name != null)
+					tellOne(client, name, words[1], words[2]);
+				break;
+			case "/history":
+				history(client, words.length > 1 ? words[1] : HISTORY_MINUTES + "");
+				break;
+			default:
+				tellEveryone(client, message);
+		}
+	}
+
+	//any version this new or newer gets frames of this version
+	private void hello(ChatConnection client, String[] words) {
+		try {
+			if (words.length > 2 && words[1].equals("binary") && Integer.parseInt(words[2].trim()) >= ChatMessage.VERSION) {
+				client.useFrames();
+				subscribe(client);
+			}
+		} catch (NumberFormatException e) {
+			//not a hello after all, stays lines
+		}
+	}
+
+	public void disconnected(ChatConnection client) {
+		clientOutputStreams.remove(client);
+		Set<String> in = joined.remove(client);
+		if (in != null) {
+			for (String room : in)
+				removeMember(room, client);
+		}
+
+		//only if the name is still this client's
+		presenceLock.lock();
+		try {
+			framed.remove(client);
+			String name = names.remove(client);
+			if (name != null && byName.remove(name, client))
+				tellFramed(new ChatMessage(ChatMessage.LEFT, name));
+		} finally {
+			presenceLock.unlock();
+		}
+	}
+
+	//the client's own name and the roster right after the answer to hello, then every change in order
+	private void subscribe(ChatConnection client) {
+		presenceLock.lock();
+		try {
+			String name = names.get(client);
+			if (!joined.containsKey(client) || name == null)
+				return;
+			framed.add(client);
+			client.sendAlways(new ChatMessage(ChatMessage.NAME, name));
+			client.sendAlways(new ChatMessage(ChatMessage.ROSTER, String.join("\n", byName.keySet())));
+		} finally {
+			presenceLock.unlock();
+		}
+	}
+
+	//presenceLock is held, so every framed client hears changes in the order they happened
+	private void tellFramed(ChatMessage message) {
+		for (ChatConnection client : framed)
+			client.sendAlways(message);
 	}
 
-	//writes the message to every socket
+	//gives client the name it asked for, or with the first free number after it, names are one word so
+	//"/msg" can find them. null if the name is the server's or has a colon, which the client is told
+	private String claim(ChatConnection client, String wanted) {
+		String base = wanted.trim().replaceAll("\\s+", "_");
+		if (base.length() > MAX_NAME)
+			base = base.substring(0, MAX_NAME);
+		if (base.isEmpty())
+			base = "guest";
+		if (base.equalsIgnoreCase(SERVER_NAME) || base.contains(":")) {
+			reply(client, "you cannot be called " + base + ", names cannot be " + SERVER_NAME + " or have a colon");
+			return null;
+		}
+
+		String name = base;
+		presenceLock.lock();
+		try {
+			//hung up meanwhile, disconnected has already cleaned up after it
+			if (!joined.containsKey(client))
+				return name;
+
+			for (int n = 2; byName.putIfAbsent(name, client) != null; n++)
+				name = base + "#" + n;
+			names.put(client, name);
+			tellFramed(new ChatMessage(ChatMessage.JOINED, name));
+		} finally {
+			presenceLock.unlock();
+		}
+
+		if (!name.equals(base))
+			reply(client, "you are " + name + ", " + base + " is taken");
+		else if (!name.equals(wanted))
+			reply(client, "you are " + name);
+		return name;
+	}
+
+	//a private message, the sender sees it too so it shows up in their chat
+	public void tellOne(ChatConnection from, String name, String to, String text) {
+		ChatConnection target = byName.get(to);
+		if (target == null) {
+			reply(from, "nobody is called " + to);
+			return;
+		}
+
+		if (!target.send(new ChatMessage(name + ": (private) " + text)))
+			target.waitForRoom(from);
+		if (target != from)
+			from.send(new ChatMessage(name + ": (to " + to + ") " + text));
+	}
+
+	//answers one client only
+	public void reply(ChatConnection client, String text) {
+		client.send(new ChatMessage(SERVER_NAME + ": " + text));
+	}
+
+	private boolean validRoom(ChatConnection client, String room) {
+		if (room.length() <= MAX_ROOM_NAME)
+			return true;
+		reply(client, "room names are at most " + MAX_ROOM_NAME + " characters");
+		return false;
+	}
+
+	//puts client in room, making the room if it is new
+	public void join(ChatConnection client, String room) {
+		Set<String> in = joined.get(client);
+		if (in == null)
+			return;
+		in.add(room);
+
+		int[] count = new int[1];
+		rooms.compute(room, (name, members) -> {
+			if (members == null)
+				members = ConcurrentHashMap.newKeySet();
+			members.add(client);
+			count[0] = members.size();
+			return members;
+		});
+
+		//hung up meanwhile, and disconnected may have looked at its rooms before this one was added
+		if (joined.get(client) != in) {
+			removeMember(room, client);
+			return;
+		}
+		reply(client, "joined " + room + " (" + count[0] + (count[0] == 1 ? " member)" : " members)"));
+	}
+
+	public void leave(ChatConnection client, String room) {
+		Set<String> in = joined.get(client);
+		if (in == null || !in.remove(room)) {
+			reply(client, "not in " + room);
+			return;
+		}
+		removeMember(room, client);
+		reply(client, "left " + room);
+	}
+
+	//an empty room is taken out in the same step, so a join at the same time cannot be lost with it
+	private void removeMember(String room, ChatConnection client) {
+		rooms.computeIfPresent(room, (name, in) -> {
+			in.remove(client);
+			return in.isEmpty() ? null : in;
+		});
+	}
+
+	//queues the message for the room's members, only members may talk in a room
+	public void tellRoom(ChatConnection from, String room, String message) {
+		Set<ChatConnection> members = rooms.get(room);
+		if (members == null || !members.contains(from)) {
+			reply(from, "not in " + room);
+			return;
+		}
+
+		ChatMessage encoded = new ChatMessage(message);
+		for (ChatConnection member : members) {
+			if (!member.send(encoded))
+				member.waitForRoom(from);
+		}
+	}
+
+	//every room and how many are in it, in order of name
+	public void listRooms(ChatConnection client) {
+		TreeMap<String, Integer> counts = roomCounts();
+		if (counts.isEmpty()) {
+			reply(client, "no rooms");
+			return;
+		}
+
+		StringBuilder list = new StringBuilder("rooms:");
+		for (Map.Entry<String, Integer> room : counts.entrySet())
+			list.append(' ').append(room.getKey()).append(" (").append(room.getValue()).append(')');
+		reply(client, list.toString());
+	}
+
+	public TreeMap<String, Integer> roomCounts() {
+		TreeMap<String, Integer> counts = new TreeMap<String, Integer>();
+		for (Map.Entry<String, Set<ChatConnection>> room : rooms.entrySet())
+			counts.put(room.getKey(), room.getValue().size());
+		return counts;
+	}
+
+	//queues the message for every client
 	public void tellEveryone(String message) {
-		//writes to all clients
-		for (PrintWriter clients : clientOutputStreams) {
-			clients.println(message);
-			clients.flush();
+		tellEveryone(null, message);
+	}
+
+	//from is held off by anyone whose queue is full, null when the server itself is talking
+	public void tellEveryone(ChatConnection from, String message) {
+		tellEveryone(from, new ChatMessage(message));
+	}
+
+	//and to the clients of every other node in the cluster
+	public void tellEveryone(ChatConnection from, ChatMessage encoded) {
+		deliver(from, encoded);
+		if (cluster != null)
+			cluster.publish(encoded);
+	}
+
+	//a message to everyone said on another node, a log off line gets this node's key so clients here see it
+	private void relayed(ChatMessage message) {
+		int logoff = message.text().lastIndexOf(":logoff:");
+		if (message.type() == ChatMessage.LOGOFF && logoff >= 0)
+			message = new ChatMessage(ChatMessage.LOGOFF, message.text().substring(0, logoff) + ":logoff:" + secretKey);
+		deliver(null, message);
+	}
+
+	private void deliver(ChatConnection from, ChatMessage encoded) {
+		//the iterator is a snapshot of who is connected, taken with the message remembered
+		Iterator<ChatConnection> everyone;
+		historyLock.lock();
+		try {
+			remember(encoded);
+			everyone = clientOutputStreams.iterator();
+		} finally {
+			historyLock.unlock();
+		}
+
+		//writes to all clients, rooms or not
+		while (everyone.hasNext()) {
+			ChatConnection clients = everyone.next();
+			if (!clients.send(encoded) && from != null)
+				clients.waitForRoom(from);
+		}
+	}
+
+	//adds chat to the ring and the log, historyLock is held
+	private void remember(ChatMessage message) {
+		if (message.type() != ChatMessage.TEXT)
+			return;
+
+		if (recent.length > 0) {
+			recent[recentNext] = message;
+			recentNext = (recentNext + 1) % recent.length;
+			recentCount = Math.min(recentCount + 1, recent.length);
+		}
+
+		if (log != null) {
+			try {
+				log.append(message.text());
+			} catch (IOException e) {
+				System.err.println("Chat log: " + e.getMessage());
+			}
+		}
+	}
+
+	//what was said to everyone since minutes ago or a local date and time, from the log
+	private void history(ChatConnection client, String since) {
+		if (log == null) {
+			reply(client, "there is no chat log, the server needs --log");
+			return;
+		}
+
+		long from;
+		try {
+			if (since.contains("T"))
+				from = LocalDateTime.parse(since).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+			else
+				from = System.currentTimeMillis() - Long.parseLong(since) * 60000;
+		} catch (DateTimeException | NumberFormatException e) {
+			reply(client, "/history takes minutes or a time like 2024-05-01T18:30");
+			return;
 		}
+
+		//at most half an outbox so the replay cannot push out what comes next, the newest if there are more
+		int limit = Math.max(1, queueLimit / 2);
+		int sent = log.replay(from, limit, line -> client.send(new ChatMessage(line)));
+		if (sent == limit)
+			reply(client, "the last " + sent + " messages since " + since + ", there may be older ones");
+		else
+			reply(client, sent + (sent == 1 ? " message" : " messages") + " since " + since);
 	}
 	
-	//makes a listener for each of the clients
-	public class ClientHandler implements Runnable {
+	//makes a listener for each of the clients and a writer that empties its outbox, buffered streams and
+	//the outbox lock with a ReentrantLock rather than synchronized, so a virtual thread waiting on its
+	//socket does not hold on to a carrier thread
+	public class ClientHandler implements Runnable, ChatConnection {
 
-		private Scanner reader;
-		private Socket sock;
-		private PrintWriter theWriter;
+		private DataInputStream reader;
+		private SocketChannel sock;				//blocking, read through its stream and written a batch at a time
+		private Outbox<ChatMessage> outbox = newOutbox();
+		private ReentrantLock closeLock = new ReentrantLock();
+		private boolean closed;
+		private boolean readsFrames;			//reader thread only
 
-		public ClientHandler(Socket clientSocket) {
+		public ClientHandler(SocketChannel clientSocket) {
+			//initializes
+			sock = clientSocket;
+		}
+		
+		//transmits messages to all clients
+		public void run() {
 			try {
-				//initializes
-				sock = clientSocket;
-				reader = new Scanner(sock.getInputStream());
-				theWriter = new PrintWriter(sock.getOutputStream());
+				sock.socket().setTcpNoDelay(true);
+				reader = new DataInputStream(new BufferedInputStream(sock.socket().getInputStream()));
 				
-				synchronized(clientOutputStreams) {
-					clientOutputStreams.add(theWriter);
-				}
+				//sends key and history, queued before the writer starts so they go out together
+				connected(this);
+				handlers.execute(this::writeQueued);
 				
-				//sends key
-				theWriter.println(secretKey);
-				theWriter.flush();
+				//looking for message, lines until the client says hello and frames after
+				while (true) {
+					String message;
+					if (readsFrames) {
+						ChatMessage frame = ChatMessage.read(reader);
+						if (frame == null)
+							break;
+						if (frame.type() != ChatMessage.TEXT)
+							continue;
+						message = frame.text();
+					}
+					else if ((message = ChatMessage.readLine(reader)) == null)
+						break;
+					received(this, message);
+				}
 			} catch (IOException e) {
-				e.printStackTrace();
+				//client went away
 			}
+			closeConnections();
 		}
 		
-		//transmits messages to all clients
-		public void run() {
-			//looking for message
-			while (reader.hasNextLine()) {
-				String message = reader.nextLine();
-				tellEveryone(message);
+		//waits here for room under the block policy, the sender's own socket backs up meanwhile
+		public boolean send(ChatMessage message) {
+			if (outbox.offer(message, true) == Outbox.Offer.DISCONNECT) {
+				System.err.println("Disconnecting a client whose outbox is full");
+				closeConnections();
 			}
+			return true;
+		}
+
+		//send already waited
+		public void waitForRoom(ChatConnection sender) {
+		}
+
+		public void sendAlways(ChatMessage message) {
+			outbox.put(message);
+		}
+
+		//called on the reader thread while it handles the hello, the answer goes past the queue limit
+		//since the client waits for it. The writer switches to frames when it takes the answer out, so
+		//it is put rather than offered and drop-oldest cannot throw it away
+		public void useFrames() {
+			readsFrames = true;
+			sendAlways(new ChatMessage(ChatMessage.HELLO, ChatMessage.HELLO_LINE));
+		}
+		
+		public void close() {
 			closeConnections();
 		}
+
+		//the writer, sends whatever has built up in one gathering write
+		private void writeQueued() {
+			ChatMessage[] messages = new ChatMessage[MAX_GATHER];
+			ByteBuffer[] batch = new ByteBuffer[MAX_GATHER];
+			boolean writesFrames = false;
+			try {
+				while (outbox.awaitBatch(batchBytes, lingerNanos)) {
+					int count = outbox.drainTo(messages, 0, batchBytes);
+					for (int i = 0; i < count; i++) {
+						batch[i] = messages[i].encoded(writesFrames);
+						if (messages[i].type() == ChatMessage.HELLO)
+							writesFrames = true;
+						messages[i] = null;
+					}
+
+					int writes = 0;
+					do {
+						sock.write(batch, 0, count);
+						writes++;
+					} while (batch[count - 1].hasRemaining());
+
+					wrote(count, writes);
+					Arrays.fill(batch, 0, count, null);
+				}
+			} catch (IOException e) {
+				closeConnections();
+			}
+		}
 		
 		//closes all connections for client
 		private void closeConnections() {
+			closeLock.lock();
 			try {
-				synchronized(clientOutputStreams) {
-					reader.close();
-					theWriter.close();
-					sock.close();
-					clientOutputStreams.remove(theWriter);
-				}
+				if (closed)
+					return;
+				closed = true;
+				outbox.close();
+				sock.close();
 			} catch(IOException e) {
 				e.printStackTrace();
+			} finally {
+				closeLock.unlock();
 			}
+			disconnected(this);
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
 	}
 
 	public static void main(String[] args) {
-		new ChatServer();
+		ChatServer chat = new ChatServer();
+		
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--virtual"))
+				chat.virtualThreads = true;
+			else if (args[i].equals("--port"))
+				chat.port = Integer.parseInt(args[++i]);
+			//--nio alone means one selector thread
+			else if (args[i].equals("--nio"))
+				chat.reactors = i + 1 < args.length && !args[i + 1].startsWith("--") ? Integer.parseInt(args[++i]) : 1;
+			else if (args[i].equals("--queue"))
+				chat.queueLimit = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--slow"))
+				chat.slowPolicy = Outbox.policy(args[++i]);
+			else if (args[i].equals("--batch"))
+				chat.batchBytes = Integer.parseInt(args[++i]);
+			//fractions of a millisecond are fine
+			else if (args[i].equals("--linger"))
+				chat.lingerNanos = (long) (Double.parseDouble(args[++i]) * 1000000);
+			else if (args[i].equals("--stats"))
+				chat.statsSeconds = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--history"))
+				chat.historySize = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--log"))
+				chat.logFolder = Paths.get(args[++i]);
+			else if (args[i].equals("--segment"))
+				chat.segmentMB = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--commit"))
+				chat.commitMillis = Long.parseLong(args[++i]);
+			else if (args[i].equals("--cluster"))
+				chat.clusterConfig = Paths.get(args[++i]);
+			else if (args[i].equals("--node"))
+				chat.nodeName = args[++i];
+		}
+		
+		Runtime.getRuntime().addShutdownHook(new Thread(chat::stop));
+		chat.serve();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,217 @@
+/*
+ * Derek Hu
+ * Period 4
+ * The lines waiting to go out to one chat client. It holds a fixed number of them so a client that stops
+ * reading cannot make the server hold on to everything said since. What happens when it is full is the
+ * policy: throw away the oldest line, hang up on the client, or make whoever is sending wait. A thread per
+ * client server waits right in offer. A selector thread must never wait, so for it offer takes the line
+ * anyway and says the sender should be held off until the client catches up.
+ * The few lines the protocol cannot do without are put in past the limit instead. They do not count
+ * against it and throwing away the oldest line skips over them, so they always get to the client.
+ * Writers take lines out in batches that fit a byte budget, so everything queued for a client can go out
+ * in one gathering write instead of one write per line.
+ */
+
+import java.util.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
+
+public class Outbox<T> {
+
+	public enum Policy { DROP_OLDEST, DISCONNECT, BLOCK }
+
+	//what offer did with the line
+	public enum Offer { QUEUED, OVER_LIMIT, DISCONNECT }
+
+	private ArrayDeque<T> queue = new ArrayDeque<T>();
+	private Set<T> kept = Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());	//queued by put
+	private int capacity;
+	private Policy policy;
+	private boolean closed;
+	private long dropped;
+	private ToIntFunction<? super T> weight;		//bytes in an item
+	private long bytes;
+
+	//locks rather than synchronized so virtual threads waiting here give up their carrier thread
+	private ReentrantLock lock = new ReentrantLock();
+	private Condition notEmpty = lock.newCondition();
+	private Condition notFull = lock.newCondition();
+
+	public Outbox(int capacity, Policy policy, ToIntFunction<? super T> weight) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Outbox must hold at least one line");
+		this.capacity = capacity;
+		this.policy = policy;
+		this.weight = weight;
+	}
+
+	//adds item, mayWait says whether the calling thread is allowed to wait for room
+	public Offer offer(T item, boolean mayWait) {
+		lock.lock();
+		try {
+			while (!closed && queue.size() - kept.size() >= capacity) {
+				if (policy == Policy.DISCONNECT)
+					return Offer.DISCONNECT;
+
+				if (policy == Policy.DROP_OLDEST)
+					dropOldest();
+				else if (mayWait)
+					notFull.awaitUninterruptibly();
+				else {
+					add(item);
+					return Offer.OVER_LIMIT;
+				}
+			}
+
+			//a closed outbox quietly takes nothing
+			if (!closed)
+				add(item);
+			return Offer.QUEUED;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//queues item whatever the policy, for the few lines the protocol cannot do without, it is never
+	//dropped. An item goes in by put or by offer, not both
+	public void put(T item) {
+		lock.lock();
+		try {
+			if (!closed) {
+				add(item);
+				kept.add(item);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//the oldest item offer queued, there is one since the queue holds more than put did
+	private void dropOldest() {
+		Iterator<T> items = queue.iterator();
+		while (true) {
+			T item = items.next();
+			if (!kept.contains(item)) {
+				items.remove();
+				bytes -= weight.applyAsInt(item);
+				dropped++;
+				return;
+			}
+		}
+	}
+
+	private void add(T item) {
+		queue.add(item);
+		bytes += weight.applyAsInt(item);
+		notEmpty.signal();
+	}
+
+	//waits for something to write, then up to linger nanoseconds more for budget bytes to build up,
+	//false once the outbox is closed
+	public boolean awaitBatch(long budget, long linger) {
+		lock.lock();
+		try {
+			while (queue.isEmpty() && !closed)
+				notEmpty.awaitUninterruptibly();
+
+			long deadline = System.nanoTime() + linger;
+			while (!closed && bytes < budget && linger > 0) {
+				try {
+					linger = notEmpty.awaitNanos(deadline - System.nanoTime());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			return !closed;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//moves items into batch after the count already there until it is full or the next would go over
+	//budget bytes, an empty batch always takes one however big, returns how many batch holds now
+	public int drainTo(T[] batch, int count, long budget) {
+		lock.lock();
+		try {
+			long taken = 0;
+			for (int i = 0; i < count; i++)
+				taken += weight.applyAsInt(batch[i]);
+
+			while (count < batch.length && !queue.isEmpty()) {
+				int size = weight.applyAsInt(queue.peek());
+				if (count > 0 && taken + size > budget)
+					break;
+				T item = queue.poll();
+				if (!kept.isEmpty())
+					kept.remove(item);
+				batch[count++] = item;
+				taken += size;
+				bytes -= size;
+			}
+			notFull.signalAll();
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public boolean isEmpty() {
+		lock.lock();
+		try {
+			return queue.isEmpty();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//bytes waiting
+	public long bytes() {
+		lock.lock();
+		try {
+			return bytes;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//half empty, when senders held off by a full outbox can start again
+	public boolean hasRoom() {
+		lock.lock();
+		try {
+			return queue.size() - kept.size() <= capacity / 2;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//throws away what is left and wakes anyone waiting
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			queue.clear();
+			kept.clear();
+			bytes = 0;
+			notEmpty.signalAll();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//lines thrown away under DROP_OLDEST
+	public long droppedCount() {
+		lock.lock();
+		try {
+			return dropped;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//drop-oldest, disconnect or block
+	public static Policy policy(String name) {
+		return Policy.valueOf(name.toUpperCase().replace('-', '_'));
+	}
+}
\ No newline at end of file
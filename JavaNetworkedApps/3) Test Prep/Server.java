@@ -4,11 +4,17 @@
  * This is the server side that allows for an unlimited number of clients to connect and 
  * take the test prep. The server records the high score and reports it when each client
  * finishes their test.
+ * Each client gets its own thread, or its own virtual thread with --virtual on Java 21 and up.
+ * Stopping the server closes the listening socket and waits for tests in progress to finish.
+ *
+ * java Server [--virtual]
  */
 
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.*;
 
 public class Server {
 	
@@ -16,50 +22,111 @@ public class Server {
 	private String lead;
 	private int max;
 	private int totalMax;
+	private final Object scoreLock = new Object();
+	
+	private ExecutorService handlers;
+	private ServerSocket server;
+	private volatile boolean running = true;
 
 	public Server(){
+		this(false);
+	}
+
+	public Server(boolean virtualThreads){
 		//gets questions
 		questions = new AllQuestions("questions.txt");
+		handlers = handlerThreads(virtualThreads);
+		Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
 		
 		try {
-			ServerSocket server = new ServerSocket(4242);
+			server = new ServerSocket(4242);
 			
 			//infinitely accepts and initializes
-			while (true) {
+			while (running) {
 				Socket theSock = server.accept();
-				ClientHandler threadJob = new ClientHandler(theSock);
-				Thread newThread = new Thread(threadJob);
-				newThread.start();
+				handlers.execute(new ClientHandler(theSock));
+			}
+		} catch (IOException e) {
+			if (running)
+				e.printStackTrace();
+		}
+	}
+	
+	//virtual threads when the jvm has them (java 21 and up), otherwise a platform thread per client
+	private static ExecutorService handlerThreads(boolean virtual) {
+		if (virtual) {
+			try {
+				return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException e) {
+				System.err.println("Virtual threads need Java 21 or newer, using platform threads");
 			}
+		}
+		return Executors.newCachedThreadPool();
+	}
+	
+	//stops taking clients and gives the ones mid test a few seconds to finish
+	public void stop() {
+		running = false;
+		try {
+			if (server != null)
+				server.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		
+		handlers.shutdown();
+		try {
+			if (!handlers.awaitTermination(5, TimeUnit.SECONDS))
+				handlers.shutdownNow();
+		} catch (InterruptedException e) {
+			handlers.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
 	}
 
-	//handles the client, giving each a thread to run test
+	//handles the client, giving each a thread to run test, buffered readers and writers lock with a
+	//ReentrantLock rather than synchronized so a virtual thread waiting on its socket frees its carrier
 	private class ClientHandler implements Runnable{
 
-		private Scanner in;
-		private PrintWriter out;
+		private Socket sock;
+		private BufferedReader in;
+		private BufferedWriter out;
 		private String name;
 		
 		public ClientHandler(Socket s){
+			sock = s;
+		}
+		
+		//runs the test, a client that leaves part way just ends its handler
+		public void run(){
 			try {
-				in = new Scanner(s.getInputStream());
-				out = new PrintWriter(s.getOutputStream());
+				in = new BufferedReader(new InputStreamReader(sock.getInputStream(), StandardCharsets.UTF_8));
+				out = new BufferedWriter(new OutputStreamWriter(sock.getOutputStream(), StandardCharsets.UTF_8));
 				
 				//gets name and sends num of questions
-				name = in.nextLine();
-				out.println(questions.size() + "");
+				name = in.readLine();
+				println(questions.size() + "");
 				out.flush();
-			} catch (IOException e) {
-				e.printStackTrace();
-				System.exit(2);
+				
+				runTest();
+			} catch (IOException | RuntimeException e) {
+				//client went away
+			} finally {
+				try {
+					sock.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
 			}
 		}
 		
+		private void println(String line) throws IOException {
+			out.write(line);
+			out.write('\n');
+		}
+		
 		//runs test prep interface for a client
-		public void run(){
+		private void runTest() throws IOException {
 			int score = 0;
 			
 			//sends all the questions
@@ -67,54 +134,49 @@ public class Server {
 				Question curQuestion = questions.get(i);
 				
 				//send actual question
-				out.println(curQuestion.actualQuestion);
+				println(curQuestion.actualQuestion);
 				out.flush();
 				
 				//send choices
 				for (int j = 0; j < curQuestion.possibleAnswers.size(); j++) {
-					out.println(curQuestion.possibleAnswers.get(j));
+					println(curQuestion.possibleAnswers.get(j));
 					out.flush();
 				}
 				
 				//gets answer
-				int answer = Integer.parseInt(in.nextLine());
+				int answer = Integer.parseInt(in.readLine());
 				
 				//determines right or wrong
 				if (answer == curQuestion.correctAnswer) {
-					out.println("Correct!");
+					println("Correct!");
 					score++;
 				}
 				else 
-					out.println("Wrong!");
+					println("Wrong!");
 				
 				out.flush();
 			}
 			
-			//determines who has the highest score
-			if (score > max) {
-				synchronized(lead) {
+			//determines who has the highest score, lead starts out null so it cannot be the lock
+			String highScore;
+			synchronized(scoreLock) {
+				if (score > max) {
 					max = score;
 					totalMax = 1;
 					lead = name;
 				}
-			}
-			else if (score == max) {
-				synchronized(lead) {
+				else if (score == max)
 					totalMax++;
-				}
+				
+				if (totalMax == 1) 
+					highScore = lead + " has the high score with " + max + " correct.";
+				else 
+					highScore = totalMax + " people have the high score of " + max + " correct.";
 			}
 			
 			//sends final high score message
-			if (totalMax == 1) 
-				out.println(lead + " has the high score with " + max + " correct.");
-			else 
-				out.println(totalMax + " people have the high score of " + max + " correct.");
-			
+			println(highScore);
 			out.flush();
-		
-			//close all connections when finished
-			in.close();
-			out.close();
 		}
 	}
 
@@ -206,6 +268,6 @@ public class Server {
 
 	//starts the server
 	public static void main(String[] args){
-		new Server();
+		new Server(args.length > 0 && args[0].equals("--virtual"));
 	}
 }
\ No newline at end of file